@@ -1,7 +1,7 @@
 jest.mock('../src/NativeNfcManager');
 
 import {Platform} from 'react-native';
-import {NativeNfcManager} from '../src/NativeNfcManager';
+import {NativeNfcManager, callNative} from '../src/NativeNfcManager';
 import * as NfcError from '../src/NfcError';
 
 describe('NfcManager (android)', () => {
@@ -54,6 +54,35 @@ describe('NfcManager (android)', () => {
     );
   });
 
+  test('encoded bytes', async () => {
+    // bytes can be passed as a string, see setByteEncoding
+    await NfcManager.setByteEncoding('hex');
+    expect(callNative).toHaveBeenLastCalledWith('setByteEncoding', ['hex']);
+    try {
+      await NfcManager.mifareClassicHandlerAndroid.mifareClassicWriteBlock(
+        5,
+        '000102030405060708090A0B0C0D0E0F',
+      );
+      expect(callNative).toHaveBeenLastCalledWith('mifareClassicWriteBlock', [
+        5,
+        '000102030405060708090A0B0C0D0E0F',
+      ]);
+      await NfcManager.mifareUltralightHandlerAndroid.mifareUltralightWritePage(
+        5,
+        '00010203',
+      );
+      expect(callNative).toHaveBeenLastCalledWith('mifareUltralightWritePage', [
+        5,
+        '00010203',
+      ]);
+      await NfcManager.isoDepHandler.transceive('00A4040000');
+      expect(callNative).toHaveBeenLastCalledWith('transceive', ['00A4040000']);
+    } finally {
+      await NfcManager.setByteEncoding('array');
+    }
+    expect(callNative).toHaveBeenLastCalledWith('setByteEncoding', ['array']);
+  });
+
   test('API: setAlertMessage', async () => {
     // test if the method stub exists and can be called without exception
     await NfcManager.setAlertMessage();
@@ -0,0 +1,199 @@
+package community.revteltech.nfc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled, immutable set of AIDs served by {@link HceService}, resolving a SELECT by DF name
+ * to a registered application without allocating.
+ *
+ * AIDs are stored in a byte trie flattened into arrays: the outgoing edges of a node are contiguous
+ * and sorted, and are binary searched while walking the AID of the command. Applications are numbered
+ * in depth-first order, so the applications whose AID starts with a given (partial) AID are the
+ * contiguous range recorded on the node it leads to. First, last, next and previous occurrence
+ * (P2 b2-b1) are then plain index arithmetic within that range.
+ */
+final class AidRegistry {
+    static final int NOT_FOUND = -1;
+
+    // P2 b2-b1, file occurrence
+    private static final int FIRST_OCCURRENCE = 0x00;
+    private static final int LAST_OCCURRENCE = 0x01;
+    private static final int NEXT_OCCURRENCE = 0x02;
+
+    static final AidRegistry EMPTY = compile(new TreeMap<String, HceApplication>());
+
+    // Registered applications, in depth-first order
+    private final HceApplication[] applications;
+
+    // Nodes, the root is node 0
+    private final int[] firstEdge;
+    private final int[] edgeCount;
+    // First application in the subtree of a node and the one after its last application
+    private final int[] rangeStart;
+    private final int[] rangeEnd;
+
+    // Edges, sorted by unsigned label within a node
+    private final int[] edgeLabel;
+    private final int[] edgeTarget;
+
+    private AidRegistry(HceApplication[] applications, int[] firstEdge, int[] edgeCount,
+                        int[] rangeStart, int[] rangeEnd, int[] edgeLabel, int[] edgeTarget) {
+        this.applications = applications;
+        this.firstEdge = firstEdge;
+        this.edgeCount = edgeCount;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.edgeLabel = edgeLabel;
+        this.edgeTarget = edgeTarget;
+    }
+
+    HceApplication application(int index) {
+        return applications[index];
+    }
+
+    /**
+     * Resolve a SELECT by DF name (see {@link ApduUtil#isSelectByName}).
+     * @param currentIndex index of the currently selected application, or {@link #NOT_FOUND}
+     * @return index of the selected application, or {@link #NOT_FOUND}
+     */
+    int select(byte[] commandApdu, int currentIndex) {
+        int node = find(commandApdu, 5, commandApdu[4] & 0xFF);
+        if (node == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+
+        int start = rangeStart[node];
+        int end = rangeEnd[node];
+        if (start == end) {
+            return NOT_FOUND;
+        }
+
+        boolean currentMatches = currentIndex >= start && currentIndex < end;
+        switch (commandApdu[3] & 0x03) {
+            case FIRST_OCCURRENCE:
+                // An exact match comes first in depth-first order
+                return start;
+            case LAST_OCCURRENCE:
+                return end - 1;
+            case NEXT_OCCURRENCE:
+                if (!currentMatches) {
+                    return start;
+                }
+                return currentIndex + 1 < end ? currentIndex + 1 : NOT_FOUND;
+            default:
+                if (!currentMatches) {
+                    return end - 1;
+                }
+                return currentIndex > start ? currentIndex - 1 : NOT_FOUND;
+        }
+    }
+
+    private int find(byte[] aid, int offset, int length) {
+        int node = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int label = aid[i] & 0xFF;
+            int low = firstEdge[node];
+            int high = low + edgeCount[node] - 1;
+            int next = NOT_FOUND;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int middleLabel = edgeLabel[middle];
+                if (middleLabel < label) {
+                    low = middle + 1;
+                } else if (middleLabel > label) {
+                    high = middle - 1;
+                } else {
+                    next = edgeTarget[middle];
+                    break;
+                }
+            }
+            if (next == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            node = next;
+        }
+        return node;
+    }
+
+    /**
+     * Compile the given applications, keyed by upper case hex AID. Upper case hex strings sort like
+     * the AID bytes they encode, so the iteration order of the map is the depth-first order of the trie.
+     */
+    static AidRegistry compile(TreeMap<String, HceApplication> registered) {
+        Builder root = new Builder();
+        List<HceApplication> applications = new ArrayList<>(registered.size());
+        for (Map.Entry<String, HceApplication> entry : registered.entrySet()) {
+            Builder node = root;
+            for (byte b : ApduUtil.hexStringToByteArray(entry.getKey())) {
+                node = node.child(b & 0xFF);
+            }
+            node.terminal = true;
+            applications.add(entry.getValue());
+        }
+
+        // Number nodes breadth-first so the children of a node, hence its edges, are contiguous
+        List<Builder> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).id = i;
+            nodes.addAll(nodes.get(i).children.values());
+        }
+        root.assignRange(0);
+
+        int nodeCount = nodes.size();
+        int[] firstEdge = new int[nodeCount];
+        int[] edgeCount = new int[nodeCount];
+        int[] rangeStart = new int[nodeCount];
+        int[] rangeEnd = new int[nodeCount];
+        int[] edgeLabel = new int[nodeCount - 1];
+        int[] edgeTarget = new int[nodeCount - 1];
+        int edge = 0;
+        for (Builder node : nodes) {
+            firstEdge[node.id] = edge;
+            edgeCount[node.id] = node.children.size();
+            rangeStart[node.id] = node.rangeStart;
+            rangeEnd[node.id] = node.rangeEnd;
+            for (Map.Entry<Integer, Builder> child : node.children.entrySet()) {
+                edgeLabel[edge] = child.getKey();
+                edgeTarget[edge] = child.getValue().id;
+                edge++;
+            }
+        }
+
+        return new AidRegistry(
+                applications.toArray(new HceApplication[0]), firstEdge, edgeCount, rangeStart, rangeEnd, edgeLabel, edgeTarget);
+    }
+
+    private static final class Builder {
+        final TreeMap<Integer, Builder> children = new TreeMap<>();
+        boolean terminal;
+        int id;
+        int rangeStart;
+        int rangeEnd;
+
+        Builder child(int label) {
+            Builder child = children.get(label);
+            if (child == null) {
+                child = new Builder();
+                children.put(label, child);
+            }
+            return child;
+        }
+
+        // Number applications depth-first, the application ending at a node before its children's
+        int assignRange(int next) {
+            rangeStart = next;
+            if (terminal) {
+                next++;
+            }
+            for (Builder child : children.values()) {
+                next = child.assignRange(next);
+            }
+            rangeEnd = next;
+            return next;
+        }
+    }
+}
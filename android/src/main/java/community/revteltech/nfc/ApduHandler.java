@@ -0,0 +1,12 @@
+package community.revteltech.nfc;
+
+/**
+ * Handles one command (CLA/INS) of an {@link HceApplication}.
+ */
+public interface ApduHandler {
+    /**
+     * @param commandApdu the full command APDU, at least 4 bytes long
+     * @return the response APDU, including the status word
+     */
+    byte[] handle(byte[] commandApdu);
+}
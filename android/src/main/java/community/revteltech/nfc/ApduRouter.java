@@ -0,0 +1,72 @@
+package community.revteltech.nfc;
+
+import java.util.TreeMap;
+
+/**
+ * Routes command APDUs to the {@link HceApplication} selected by AID.
+ *
+ * SELECT by DF name (P1 = 04) switches the current application, every other command is
+ * dispatched to the current one. AIDs are resolved by a compiled {@link AidRegistry},
+ * registering an application compiles and swaps in a new one.
+ */
+final class ApduRouter {
+    private final TreeMap<String, HceApplication> registered = new TreeMap<>();
+    private volatile AidRegistry registry = AidRegistry.EMPTY;
+
+    // Only touched from the thread processing the APDUs
+    private HceApplication current = null;
+    private AidRegistry currentRegistry = null;
+    private int currentIndex = AidRegistry.NOT_FOUND;
+
+    synchronized void register(String aid, HceApplication application) {
+        registered.put(aid.toUpperCase(), application);
+        registry = AidRegistry.compile(registered);
+    }
+
+    synchronized void unregister(String aid) {
+        registered.remove(aid.toUpperCase());
+        registry = AidRegistry.compile(registered);
+    }
+
+    byte[] route(byte[] commandApdu) {
+        if (ApduUtil.isSelectByName(commandApdu)) {
+            AidRegistry registry = this.registry;
+            // Next / previous occurrence are relative to the current application, as long as the registry did not change
+            int index = registry.select(commandApdu, registry == currentRegistry ? currentIndex : AidRegistry.NOT_FOUND);
+            if (index == AidRegistry.NOT_FOUND) {
+                // Keep the current application, as for any failed selection
+                return ApduUtil.A_FILE_NOT_FOUND;
+            }
+
+            HceApplication application = registry.application(index);
+            if (current != null && current != application) {
+                current.onDeselect();
+            }
+            byte[] response = application.onSelect(commandApdu);
+            if (ApduUtil.isSuccess(response)) {
+                select(application, registry, index);
+            } else {
+                select(null, null, AidRegistry.NOT_FOUND);
+            }
+            return response;
+        }
+
+        if (current == null) {
+            return ApduUtil.A_FILE_NOT_FOUND;
+        }
+        return current.dispatch(commandApdu);
+    }
+
+    void deselect() {
+        if (current != null) {
+            current.onDeselect();
+            select(null, null, AidRegistry.NOT_FOUND);
+        }
+    }
+
+    private void select(HceApplication application, AidRegistry registry, int index) {
+        current = application;
+        currentRegistry = registry;
+        currentIndex = index;
+    }
+}
@@ -0,0 +1,77 @@
+package community.revteltech.nfc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free trace of the APDUs exchanged by {@link HceService}.
+ *
+ * The APDU thread is the only producer and the drain the only consumer, so the ring buffer only
+ * needs ordered writes of its two counters. When the consumer falls behind, new entries are
+ * dropped and counted rather than blocking the reader transaction.
+ */
+final class ApduTrace {
+    static final class Entry {
+        final long timestamp;
+        final byte[] command;
+        final byte[] response;
+
+        Entry(long timestamp, byte[] command, byte[] response) {
+            this.timestamp = timestamp;
+            this.command = command;
+            this.response = response;
+        }
+    }
+
+    interface Consumer {
+        void accept(Entry entry);
+    }
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    // Next entry to write, only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // Next entry to read, only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** @param capacity rounded up to a power of two */
+    ApduTrace(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    void record(byte[] command, byte[] response) {
+        long position = tail.get();
+        if (position - head.get() > mask) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // Responses may be served from reused buffers, keep a copy
+        entries.lazySet((int) (position & mask), new Entry(System.currentTimeMillis(), command, response.clone()));
+        tail.lazySet(position + 1);
+    }
+
+    /**
+     * Hand the pending entries to the consumer.
+     * @return the number of entries drained
+     */
+    int drain(Consumer consumer) {
+        long position = head.get();
+        long end = tail.get();
+        for (long i = position; i < end; i++) {
+            int index = (int) (i & mask);
+            Entry entry = entries.get(index);
+            entries.lazySet(index, null);
+            consumer.accept(entry);
+        }
+        head.lazySet(end);
+        return (int) (end - position);
+    }
+
+    /** Entries dropped since the last call */
+    long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+}
@@ -10,6 +10,14 @@ public class ApduUtil {
     public static final byte[] A_ERROR = {(byte) 0x6F, (byte) 0x00};
     public static final byte[] A_FILE_NOT_FOUND = {(byte) 0x6A, (byte) 0x82};
     public static final byte[] A_WRONG_LENGTH = {(byte) 0x67, (byte) 0x00};
+    public static final byte[] A_SECURITY_STATUS_NOT_SATISFIED = {(byte) 0x69, (byte) 0x82};
+    public static final byte[] A_WRONG_PARAMETERS = {(byte) 0x6B, (byte) 0x00};
+    public static final byte[] A_CLA_NOT_SUPPORTED = {(byte) 0x6E, (byte) 0x00};
+
+    // Empty NDEF file (NLEN = 0), served when there is no message to share
+    public static final byte[] EMPTY_NDEF_FILE = {(byte) 0x00, (byte) 0x00};
+
+    private static final char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
 
     // NDEF Type 4 tag application AID
     public static final String NDEF_APP_AID = "D2760000850101";
@@ -23,19 +31,19 @@ public class ApduUtil {
     private static final byte INS_SELECT = (byte) 0xA4;
     private static final byte INS_READ_BINARY = (byte) 0xB0;
 
-    // Capability Container for NDEF Type 4 tag optimized for iOS compatibility
-    private static final byte[] CAPABILITY_CONTAINER = {
-        (byte) 0x00, (byte) 0x0F, // CCLEN (15 bytes)
-        (byte) 0x20,              // Mapping version 2.0
-        (byte) 0x00, (byte) 0xF6, // MLe (maximum R-APDU data size) - increased for iOS
-        (byte) 0x00, (byte) 0xF6, // MLc (maximum C-APDU data size) - increased for iOS
-        (byte) 0x04,              // NDEF File Control TLV Tag
-        (byte) 0x06,              // Length of file control TLV
-        (byte) 0xE1, (byte) 0x04, // NDEF File ID
-        (byte) 0x20, (byte) 0x00, // Maximum NDEF file size (8KB for iOS compatibility)
-        (byte) 0x00,              // NDEF file read access (always)
-        (byte) 0xFF               // NDEF file write access (denied)
-    };
+    // Largest R-APDU / C-APDU data size advertised with short APDUs, kept below 256 for iOS compatibility
+    static final int SHORT_MAX_DATA_SIZE = 0xF6;
+    // Largest R-APDU / C-APDU data size advertised when extended-length APDUs are enabled
+    static final int EXTENDED_MAX_DATA_SIZE = 0xFFFF;
+    // Smallest MLe / MLc allowed by the Type 4 Tag specification
+    private static final int MIN_DATA_SIZE = 0x0F;
+    // Smallest and largest maximum NDEF file size allowed by the Type 4 Tag specification (mapping 2.0)
+    private static final int MIN_NDEF_FILE_SIZE = 0x0005;
+    private static final int MAX_NDEF_FILE_SIZE = 0xFFFE;
+    // Maximum NDEF file size advertised for a writable NDEF file, so readers can write more than the shared message
+    static final int WRITABLE_NDEF_FILE_SIZE = 0x2000;
+    // READ BINARY carries the offset in P1-P2 with the top bit cleared, 15 bits at most
+    static final int MAX_READ_OFFSET = 0x7FFF;
 
     public static boolean isSelectCommand(byte[] commandApdu) {
         return commandApdu != null && 
@@ -51,30 +59,33 @@ public class ApduUtil {
                commandApdu[1] == INS_READ_BINARY;
     }
 
-    public static boolean isSelectNdefApp(byte[] commandApdu) {
-        if (!isSelectCommand(commandApdu) || commandApdu.length < 12) {
-            return false;
-        }
-        
-        // Check if selecting NDEF application
-        byte[] ndefAid = hexStringToByteArray(NDEF_APP_AID);
-        if (commandApdu[4] != ndefAid.length) {
+    /** SELECT by DF name (P1 = 04), as used to select an application by AID */
+    public static boolean isSelectByName(byte[] commandApdu) {
+        if (!isSelectCommand(commandApdu) || commandApdu.length < 6 || commandApdu[2] != (byte) 0x04) {
             return false;
         }
-        
-         // Add bounds check to prevent overflow
-        if (5 + ndefAid.length > commandApdu.length) {
+        int aidLength = commandApdu[4] & 0xFF;
+        return aidLength > 0 && 5 + aidLength <= commandApdu.length;
+    }
+
+    /** AID in hex, 5 to 16 bytes long as ISO 7816-5 allows */
+    static boolean isValidAid(String aid) {
+        if (aid == null || aid.length() % 2 != 0 || aid.length() < 10 || aid.length() > 32) {
             return false;
         }
-
-        for (int i = 0; i < ndefAid.length; i++) {
-            if (commandApdu[5 + i] != ndefAid[i]) {
+        for (int i = 0; i < aid.length(); i++) {
+            if (Character.digit(aid.charAt(i), 16) < 0) {
                 return false;
             }
         }
         return true;
     }
 
+    static boolean isSuccess(byte[] responseApdu) {
+        int length = responseApdu.length;
+        return length >= 2 && responseApdu[length - 2] == A_OK[0] && responseApdu[length - 1] == A_OK[1];
+    }
+
     public static boolean isSelectFile(byte[] commandApdu, byte[] fileId) {
         if (!isSelectCommand(commandApdu) || commandApdu.length < 7) {
             return false;
@@ -100,12 +111,80 @@ public class ApduUtil {
         return isSelectFile(commandApdu, NDEF_FILE_ID);
     }
 
-    public static byte[] getCapabilityContainer() {
-        byte[] response = new byte[CAPABILITY_CONTAINER.length + 2];
-        System.arraycopy(CAPABILITY_CONTAINER, 0, response, 0, CAPABILITY_CONTAINER.length);
-        response[CAPABILITY_CONTAINER.length] = A_OK[0];
-        response[CAPABILITY_CONTAINER.length + 1] = A_OK[1];
-        return response;
+    static byte[] buildCapabilityContainer(int ndefFileSize, boolean extendedLength) {
+        return buildCapabilityContainer(ndefFileSize, extendedLength, false);
+    }
+
+    /**
+     * Build the Capability Container for an NDEF file of the given size. MLe, MLc and the maximum
+     * NDEF file size follow the actual file, so small payloads advertise small limits and large
+     * payloads can be read in as few READ BINARY as the APDU length mode allows. A writable file
+     * advertises at least {@link #WRITABLE_NDEF_FILE_SIZE} bytes and grants write access.
+     */
+    static byte[] buildCapabilityContainer(int ndefFileSize, boolean extendedLength, boolean writable) {
+        if (writable) {
+            ndefFileSize = Math.max(ndefFileSize, WRITABLE_NDEF_FILE_SIZE);
+        }
+        int maxFileSize = Math.max(MIN_NDEF_FILE_SIZE, Math.min(ndefFileSize, MAX_NDEF_FILE_SIZE));
+        int maxDataSize = extendedLength ? EXTENDED_MAX_DATA_SIZE : SHORT_MAX_DATA_SIZE;
+        int mle = Math.max(MIN_DATA_SIZE, Math.min(maxFileSize, maxDataSize));
+        int mlc = mle;
+
+        return new byte[] {
+            (byte) 0x00, (byte) 0x0F,                       // CCLEN (15 bytes)
+            (byte) 0x20,                                    // Mapping version 2.0
+            (byte) (mle >> 8), (byte) mle,                  // MLe (maximum R-APDU data size)
+            (byte) (mlc >> 8), (byte) mlc,                  // MLc (maximum C-APDU data size)
+            (byte) 0x04,                                    // NDEF File Control TLV Tag
+            (byte) 0x06,                                    // Length of file control TLV
+            NDEF_FILE_ID[0], NDEF_FILE_ID[1],               // NDEF File ID
+            (byte) (maxFileSize >> 8), (byte) maxFileSize,  // Maximum NDEF file size
+            (byte) 0x00,                                    // NDEF file read access (always)
+            (byte) (writable ? 0x00 : 0xFF)                 // NDEF file write access (always / denied)
+        };
+    }
+
+    /** Maximum NDEF file size advertised by a Capability Container built with {@link #buildCapabilityContainer} */
+    static int getMaxNdefFileSize(byte[] capabilityContainer) {
+        return ((capabilityContainer[11] & 0xFF) << 8) | (capabilityContainer[12] & 0xFF);
+    }
+
+    /** MLe advertised by a Capability Container built with {@link #buildCapabilityContainer} */
+    static int getMaxLe(byte[] capabilityContainer) {
+        return ((capabilityContainer[3] & 0xFF) << 8) | (capabilityContainer[4] & 0xFF);
+    }
+
+    /**
+     * Parse the expected response length (Le) of a command without data field, either in short form
+     * (1 byte, 00 means 256) or in extended form (00 followed by 2 bytes, 0000 means 65536).
+     */
+    static int parseLe(byte[] commandApdu) {
+        if (commandApdu.length == 7 && commandApdu[4] == 0x00) {
+            int le = ((commandApdu[5] & 0xFF) << 8) | (commandApdu[6] & 0xFF);
+            return le == 0 ? 65536 : le;
+        }
+        int le = commandApdu[4] & 0xFF;
+        return le == 0 ? 256 : le; // Le=00 means 256 bytes
+    }
+
+    /** Offset of the data field of a command with data, after a short (1 byte) or extended (3 bytes) Lc */
+    static int getDataOffset(byte[] commandApdu) {
+        return commandApdu.length >= 7 && commandApdu[4] == 0x00 ? 7 : 5;
+    }
+
+    /**
+     * Parse the length of the data field (Lc) of a command, in short or extended form.
+     * @return Lc, or -1 when the command is too short for the data field it announces
+     */
+    static int parseLc(byte[] commandApdu) {
+        if (commandApdu.length < 6) {
+            return -1;
+        }
+        int dataOffset = getDataOffset(commandApdu);
+        int lc = dataOffset == 7
+                ? ((commandApdu[5] & 0xFF) << 8) | (commandApdu[6] & 0xFF)
+                : commandApdu[4] & 0xFF;
+        return dataOffset + lc <= commandApdu.length ? lc : -1;
     }
 
     public static byte[] createNdefResponse(byte[] ndefData) {
@@ -142,41 +221,21 @@ public class ApduUtil {
         }
     }
 
-    public static byte[] handleReadBinary(byte[] commandApdu, byte[] fileData) {
-        if (commandApdu.length < 5) {
-            return A_WRONG_LENGTH;
-        }
-
-        // Parse offset (P1P2)
-        int offset = ((commandApdu[2] & 0xFF) << 8) | (commandApdu[3] & 0xFF);
-        
-        // Parse expected length (Le)
-        int expectedLength = commandApdu[4] & 0xFF;
-        if (expectedLength == 0) {
-            expectedLength = 256; // Le=00 means 256 bytes
-        }
-
-        if (offset >= fileData.length) {
-            return A_ERROR;
-        }
-
-        int actualLength = Math.min(expectedLength, fileData.length - offset);
-        byte[] response = new byte[actualLength + 2];
-        
-        System.arraycopy(fileData, offset, response, 0, actualLength);
-        response[actualLength] = A_OK[0];
-        response[actualLength + 1] = A_OK[1];
-        
-        return response;
-    }
-
     public static String bytesToHex(byte[] bytes) {
         if (bytes == null) return "null";
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X ", b));
+        if (bytes.length == 0) return "";
+        // "XX XX XX", same output as the former String.format("%02X ") loop without the formatter cost
+        char[] hexChars = new char[bytes.length * 3 - 1];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xFF;
+            int pos = i * 3;
+            hexChars[pos] = HEX_CHARS[v >>> 4];
+            hexChars[pos + 1] = HEX_CHARS[v & 0x0F];
+            if (pos + 2 < hexChars.length) {
+                hexChars[pos + 2] = ' ';
+            }
         }
-        return sb.toString().trim();
+        return new String(hexChars);
     }
 
     public static byte[] hexStringToByteArray(String hex) {
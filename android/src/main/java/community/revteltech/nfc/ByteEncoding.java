@@ -0,0 +1,130 @@
+package community.revteltech.nfc;
+
+import android.util.Base64;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Dynamic;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * How bytes cross the bridge: an array of numbers (the default), or a single base64 / hex string,
+ * which costs one string instead of one boxed element per byte.
+ *
+ * The mode applies to the bytes returned by the module and to the NDEF payloads of tag events.
+ * Bytes passed to the module are accepted either as an array or as a string in the current mode.
+ */
+final class ByteEncoding {
+    static final String ARRAY = "array";
+    static final String BASE64 = "base64";
+    static final String HEX = "hex";
+
+    private static volatile String mode = ARRAY;
+
+    private ByteEncoding() {
+    }
+
+    static String getMode() {
+        return mode;
+    }
+
+    static void setMode(String encoding) {
+        if (!ARRAY.equals(encoding) && !BASE64.equals(encoding) && !HEX.equals(encoding)) {
+            throw new IllegalArgumentException("unsupported byte encoding: " + encoding);
+        }
+        mode = encoding;
+    }
+
+    /** Bytes to pass to a callback, a WritableArray or a String depending on the mode */
+    static Object toReact(byte[] bytes) {
+        String encoding = mode;
+        if (ARRAY.equals(encoding)) {
+            WritableArray array = Arguments.createArray();
+            for (byte aByte : bytes) {
+                array.pushInt(aByte & 0xFF);
+            }
+            return array;
+        }
+        return encode(encoding, bytes);
+    }
+
+    static void putBytes(WritableMap map, String key, byte[] bytes) {
+        Object value = toReact(bytes);
+        if (value instanceof String) {
+            map.putString(key, (String) value);
+        } else {
+            map.putArray(key, (WritableArray) value);
+        }
+    }
+
+    static void pushBytes(WritableArray array, byte[] bytes) {
+        Object value = toReact(bytes);
+        if (value instanceof String) {
+            array.pushString((String) value);
+        } else {
+            array.pushArray((WritableArray) value);
+        }
+    }
+
+    static byte[] fromReact(Dynamic value) {
+        if (value.getType() == ReadableType.String) {
+            return decode(value.asString());
+        }
+        return fromReact(value.asArray());
+    }
+
+    static byte[] fromReact(ReadableMap map, String key) {
+        if (map.getType(key) == ReadableType.String) {
+            return decode(map.getString(key));
+        }
+        return fromReact(map.getArray(key));
+    }
+
+    static byte[] fromReact(ReadableArray array, int index) {
+        if (array.getType(index) == ReadableType.String) {
+            return decode(array.getString(index));
+        }
+        return fromReact(array.getArray(index));
+    }
+
+    static byte[] fromReact(ReadableArray array) {
+        int size = array.size();
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (array.getInt(i) & 0xFF);
+        }
+        return bytes;
+    }
+
+    private static String encode(String encoding, byte[] bytes) {
+        if (BASE64.equals(encoding)) {
+            return Base64.encodeToString(bytes, Base64.NO_WRAP);
+        }
+        return Util.bytesToHex(bytes);
+    }
+
+    // Strings are hex in hex mode, base64 otherwise
+    private static byte[] decode(String value) {
+        if (!HEX.equals(mode)) {
+            return Base64.decode(value, Base64.DEFAULT);
+        }
+
+        int length = value.length();
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("invalid hex string: odd length");
+        }
+        byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < length; i += 2) {
+            int high = Character.digit(value.charAt(i), 16);
+            int low = Character.digit(value.charAt(i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("invalid hex string: " + value);
+            }
+            bytes[i / 2] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
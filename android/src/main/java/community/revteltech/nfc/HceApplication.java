@@ -0,0 +1,76 @@
+package community.revteltech.nfc;
+
+/**
+ * An application emulated by {@link HceService}, selected by the reader through its AID.
+ *
+ * Commands are dispatched in O(1) from a table indexed by class (interindustry CLA 0x00-0x7F
+ * or proprietary CLA 0x80-0xFF) and INS, then checked against the full CLA the handler was
+ * registered with. Subclasses register their handlers with {@link #on} and keep their own state,
+ * reset in {@link #onSelect} / {@link #onDeselect}.
+ *
+ * Applications are registered with {@link HceService#registerApplication}. All callbacks are
+ * invoked on the thread processing the APDUs, one command at a time.
+ */
+public abstract class HceApplication {
+    private final ApduHandler[] handlers = new ApduHandler[2 * 256];
+    // CLA of each handler, and the CLA bits compared
+    private final int[] classes = new int[2 * 256];
+    private final int[] classMasks = new int[2 * 256];
+
+    private static int handlerIndex(int cla, int ins) {
+        return ((cla & 0x80) << 1) | (ins & 0xFF);
+    }
+
+    /**
+     * Register the handler of an instruction for exactly this CLA, other classes get 6E00
+     * (class not supported).
+     */
+    protected final void on(int cla, int ins, ApduHandler handler) {
+        on(cla, 0xFF, ins, handler);
+    }
+
+    /**
+     * Register the handler of an instruction for the classes matching cla on the bits of claMask,
+     * 0xF0 for instance accepting any logical channel and secure messaging of an interindustry class.
+     * An instruction has a single handler per interindustry or proprietary coding.
+     */
+    protected final void on(int cla, int claMask, int ins, ApduHandler handler) {
+        int index = handlerIndex(cla, ins);
+        handlers[index] = handler;
+        classes[index] = cla & claMask & 0xFF;
+        classMasks[index] = claMask & 0xFF;
+    }
+
+    /**
+     * Called when the reader selects this application.
+     * @return the response to the SELECT command
+     */
+    protected byte[] onSelect(byte[] commandApdu) {
+        return ApduUtil.A_OK;
+    }
+
+    /**
+     * Called when another application is selected or the link with the reader is lost.
+     */
+    protected void onDeselect() {
+    }
+
+    /**
+     * Called for commands without registered handler.
+     */
+    protected byte[] onUnknownCommand(byte[] commandApdu) {
+        return ApduUtil.A_ERROR;
+    }
+
+    final byte[] dispatch(byte[] commandApdu) {
+        int index = handlerIndex(commandApdu[0], commandApdu[1]);
+        ApduHandler handler = handlers[index];
+        if (handler == null) {
+            return onUnknownCommand(commandApdu);
+        }
+        if ((commandApdu[0] & classMasks[index]) != classes[index]) {
+            return ApduUtil.A_CLA_NOT_SUPPORTED;
+        }
+        return handler.handle(commandApdu);
+    }
+}
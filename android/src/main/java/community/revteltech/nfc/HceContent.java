@@ -0,0 +1,158 @@
+package community.revteltech.nfc;
+
+import android.nfc.NdefMessage;
+import android.nfc.NdefRecord;
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of what {@link HceService} shares: the URL list, the vCard, the active flag
+ * and the NDEF file image built from them.
+ *
+ * The service swaps whole snapshots atomically, so the APDU path always sees a consistent
+ * combination of content and NDEF image without taking a lock.
+ */
+final class HceContent {
+    private static final String TAG = "HceContent";
+
+    static final HceContent EMPTY = new HceContent(Collections.<String>emptyList(), null, false, null);
+
+    final List<String> simpleUrls;
+    final String contactVcf;
+    final boolean active;
+    final NdefFile ndefFile;
+
+    private HceContent(List<String> simpleUrls, String contactVcf, boolean active, NdefFile ndefFile) {
+        this.simpleUrls = simpleUrls;
+        this.contactVcf = contactVcf;
+        this.active = active;
+        this.ndefFile = ndefFile;
+    }
+
+    private static HceContent create(List<String> simpleUrls, String contactVcf, boolean active) {
+        List<String> urls = simpleUrls.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(simpleUrls));
+        return new HceContent(urls, contactVcf, active, buildNdefFile(urls, contactVcf));
+    }
+
+    boolean hasContent() {
+        return !simpleUrls.isEmpty() || contactVcf != null;
+    }
+
+    /** Whether the service should answer readers at all */
+    boolean isServing() {
+        return active && hasContent();
+    }
+
+    HceContent withActive(boolean active) {
+        if (this.active == active) {
+            return this;
+        }
+        return new HceContent(simpleUrls, contactVcf, active, ndefFile);
+    }
+
+    /** A vCard replaces any shared URL */
+    HceContent withContactVcf(String vcf) {
+        return create(Collections.<String>emptyList(), vcf, true);
+    }
+
+    /** URLs accumulate, and replace any shared vCard */
+    HceContent withSimpleUrl(String url) {
+        if (contactVcf == null && active && simpleUrls.contains(url)) {
+            return this;
+        }
+        List<String> urls = new ArrayList<>(simpleUrls);
+        if (!urls.contains(url)) {
+            urls.add(url);
+        }
+        return create(urls, null, true);
+    }
+
+    HceContent withoutContactVcf() {
+        // Don't deactivate if URL content still exists
+        return create(simpleUrls, null, active && !simpleUrls.isEmpty());
+    }
+
+    HceContent withoutSimpleUrls() {
+        // Don't deactivate if VCF content still exists
+        return create(Collections.<String>emptyList(), contactVcf, active && contactVcf != null);
+    }
+
+    /** Same content with the NDEF file image encoded again, after a change of the HCE options */
+    HceContent rebuilt() {
+        return create(simpleUrls, contactVcf, active);
+    }
+
+    /** Same content served with the NDEF file written by a reader, until the content changes */
+    HceContent withNdefFile(NdefFile ndefFile) {
+        return new HceContent(simpleUrls, contactVcf, active, ndefFile);
+    }
+
+    HceContent withoutContent() {
+        return new HceContent(Collections.<String>emptyList(), null, active, null);
+    }
+
+    private static NdefFile buildNdefFile(List<String> simpleUrls, String contactVcf) {
+        boolean debugLogging = HceService.isDebugLogging();
+        boolean extendedLength = HceService.isExtendedLengthApdu();
+        boolean writable = HceService.isWritableNdef();
+        try {
+            if (contactVcf != null && !contactVcf.isEmpty()) {
+                if (debugLogging) {
+                    Log.d(TAG, "Preparing NDEF with VCF: " + contactVcf);
+                }
+
+                NdefRecord vcfRecord = NdefRecord.createMime(
+                    "text/x-vcard",
+                    contactVcf.getBytes(StandardCharsets.UTF_8)
+                );
+                NdefFile ndefFile = NdefFile.fromMessage(new NdefMessage(new NdefRecord[]{vcfRecord}), extendedLength, writable);
+                if (debugLogging) {
+                    Log.d(TAG, "NDEF prepared with VCF, version: " + ndefFile.version + ", size: " + ndefFile.length());
+                }
+                return ndefFile;
+            }
+
+            if (simpleUrls.isEmpty()) {
+                if (debugLogging) {
+                    Log.d(TAG, "No URLs or VCF, clearing NDEF data");
+                }
+                return null;
+            }
+
+            if (debugLogging) {
+                Log.d(TAG, "Preparing NDEF with " + simpleUrls.size() + " URLs: " + simpleUrls);
+            }
+
+            List<NdefRecord> allRecords = new ArrayList<>();
+            for (String url : simpleUrls) {
+                if (url != null && !url.isEmpty()) {
+                    // Creates only the exact URL provided
+                    allRecords.add(NdefRecord.createUri(url));
+                }
+            }
+
+            if (allRecords.isEmpty()) {
+                if (debugLogging) {
+                    Log.d(TAG, "No valid URLs found, clearing NDEF data");
+                }
+                return null;
+            }
+
+            NdefFile ndefFile = NdefFile.fromMessage(new NdefMessage(allRecords.toArray(new NdefRecord[0])), extendedLength, writable);
+            if (debugLogging) {
+                Log.d(TAG, "NDEF prepared with " + allRecords.size() + " records from " + simpleUrls.size() + " URLs, version: " + ndefFile.version + ", size: " + ndefFile.length());
+                Log.d(TAG, "NDEF data hex: " + ApduUtil.bytesToHex(ndefFile.image));
+            }
+            return ndefFile;
+        } catch (Exception e) {
+            Log.e(TAG, "Error preparing NDEF data: " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
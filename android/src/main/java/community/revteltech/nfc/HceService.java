@@ -2,20 +2,16 @@ package community.revteltech.nfc;
 
 import android.content.ComponentName;
 import android.content.Intent;
-import android.nfc.NdefMessage;
-import android.nfc.NdefRecord;
 import android.nfc.cardemulation.CardEmulation;
 import android.nfc.cardemulation.HostApduService;
 import android.os.Bundle;
 import android.util.Log;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import android.nfc.NfcAdapter;
-import java.util.List;
 import java.util.ArrayList;
-import org.json.JSONObject;
-import org.json.JSONException;
-import org.json.JSONArray;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import android.content.Context;
 
 public class HceService extends HostApduService {
@@ -25,33 +21,46 @@ public class HceService extends HostApduService {
     public static final String ACTION_HCE_STOPPED = "community.revteltech.nfc.ACTION_HCE_STOPPED";
     public static final String EXTRA_SIMPLE_URL = "simple_url";
     public static final String EXTRA_CONTACT_VCF = "contact_vcf";
+    public static final String ACTION_NDEF_WRITTEN = "community.revteltech.nfc.ACTION_NDEF_WRITTEN";
+    public static final String EXTRA_NDEF_MESSAGE = "ndef_message";
 
-        // Static variables to maintain state across service lifecycle
-    private static List<String> staticSimpleUrls = new ArrayList<>();
-    private static boolean isServiceActive = false;
-    private static String staticContactVcf = null;
+    // Shared content, kept across service lifecycle. Written from onStartCommand and the module,
+    // read from the binder thread in processCommandApdu, so it is only ever replaced as a whole.
+    private static final AtomicReference<HceContent> content = new AtomicReference<>(HceContent.EMPTY);
+    // Serializes the writers, so each snapshot and its NDEF file is built exactly once
+    private static final Object contentLock = new Object();
 
-    private String contactVcf;
-    private LocalBroadcastManager broadcastManager;
+    // Per-APDU logging is expensive (hex dumps on every command), so it is off unless explicitly enabled
+    private static volatile boolean debugLogging = false;
+    // Advertise and serve extended-length READ BINARY, only for readers and controllers supporting it
+    private static volatile boolean extendedLengthApdu = false;
+    // Let readers write the NDEF file with UPDATE BINARY
+    private static volatile boolean writableNdef = false;
+    // APDU trace drained by the module, null unless someone subscribed to it
+    private static volatile ApduTrace apduTrace = null;
+    // Last NDEF file written by a reader, reported once the reader is gone
+    private static final AtomicReference<NdefFile> writtenNdefFile = new AtomicReference<>();
+
+    // Applications selectable by AID, the NDEF tag application is always available
+    private static final ApduRouter router = new ApduRouter();
+    // AIDs registered at runtime, in addition to the ones declared in apdu_service.xml
+    private static final List<String> dynamicAids = new ArrayList<>();
+
+    static {
+        router.register(ApduUtil.NDEF_APP_AID, new NdefTagApplication());
+    }
 
-    // NDEF state
-    private boolean ndefAppSelected = false;
-    private boolean capabilityContainerSelected = false;
-    private boolean ndefFileSelected = false;
-    private byte[] currentNdefData = null;
+    private LocalBroadcastManager broadcastManager;
 
     @Override
     public void onCreate() {
         super.onCreate();
         broadcastManager = LocalBroadcastManager.getInstance(this);
         
-        // Restore static state
-        contactVcf = staticContactVcf;
-        
         // Service is active if there's any content
-        isServiceActive = (!staticSimpleUrls.isEmpty() || staticContactVcf != null);
+        HceContent restored = updateContent(current -> current.withActive(current.hasContent()));
         
-        Log.d(TAG, "Service created - isActive: " + isServiceActive + ", hasUrls: " + staticSimpleUrls.size() + ", hasVcf: " + (staticContactVcf != null));
+        Log.d(TAG, "Service created - isActive: " + restored.active + ", hasUrls: " + restored.simpleUrls.size() + ", hasVcf: " + (restored.contactVcf != null));
         
         // Broadcast service started
         broadcastManager.sendBroadcast(new Intent(ACTION_HCE_STARTED));
@@ -60,7 +69,7 @@ public class HceService extends HostApduService {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        isServiceActive = false;
+        updateContent(current -> current.withActive(false));
         
         // Broadcast service stopped
         if (broadcastManager != null) {
@@ -68,107 +77,22 @@ public class HceService extends HostApduService {
         }
     }
 
-    private void prepareNdefData() {
-        try {
-            if (contactVcf != null && !contactVcf.isEmpty()) {
-                Log.d(TAG, "Preparing NDEF with VCF: " + contactVcf);
-                
-                NdefRecord vcfRecord = NdefRecord.createMime(
-                    "text/x-vcard",
-                    contactVcf.getBytes(StandardCharsets.UTF_8)
-                );
-                NdefMessage ndefMessage = new NdefMessage(new NdefRecord[]{vcfRecord});
-                currentNdefData = createNdefFile(ndefMessage);
-                Log.d(TAG, "NDEF prepared with VCF, size: " + currentNdefData.length);
-                return;
-            }
-            
-            if (staticSimpleUrls.isEmpty()) {
-                Log.d(TAG, "No URLs or VCF, clearing NDEF data");
-                currentNdefData = null;
-                return;
-            }
-
-            Log.d(TAG, "Preparing NDEF with " + staticSimpleUrls.size() + " URLs: " + staticSimpleUrls);
-            
-            List<NdefRecord> allRecords = new ArrayList<>();
-            for (String url : staticSimpleUrls) {
-                if (url != null && !url.isEmpty()) {
-                    List<NdefRecord> records = createUriRecords(url);
-                    allRecords.addAll(records);
-                }
-            }
-            
-            if (allRecords.isEmpty()) {
-                Log.d(TAG, "No valid URLs found, clearing NDEF data");
-                currentNdefData = null;
-                return;
-            }
-            
-            NdefMessage ndefMessage = new NdefMessage(allRecords.toArray(new NdefRecord[0]));
-            currentNdefData = createNdefFile(ndefMessage);
-            Log.d(TAG, "NDEF prepared with " + allRecords.size() + " records from " + staticSimpleUrls.size() + " URLs, size: " + currentNdefData.length);
-            Log.d(TAG, "NDEF data hex: " + bytesToHex(currentNdefData));
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error preparing NDEF data: " + e.getMessage(), e);
-            currentNdefData = null;
-        }
+    interface ContentUpdate {
+        HceContent apply(HceContent current);
     }
-    
+
     /**
-     * Create NDEF URI records based on the input URL
-     * Creates only the exact URL provided,
+     * Replace the shared content with the snapshot derived from the current one. The NDEF file image
+     * is built as part of the new snapshot, so a SELECT only has to pick up the current snapshot.
+     * Writers take turns rather than retrying, since building a snapshot encodes the whole NDEF file;
+     * readers never wait.
      */
-    private List<NdefRecord> createUriRecords(String url) {
-        List<NdefRecord> records = new ArrayList<>();
-        
-        if (url == null || url.isEmpty()) {
-            return records;
-        }
-
-        NdefRecord primaryRecord = NdefRecord.createUri(url);
-        records.add(primaryRecord);
-        Log.d(TAG, "Added URI record: " + url);
-        
-        return records;
-    }
-    
-    private byte[] createNdefFile(NdefMessage ndefMessage) {
-        try {
-            byte[] ndefBytes = ndefMessage.toByteArray();
-            
-            // Validate NDEF message is not too large (iOS has stricter limits)
-            if (ndefBytes.length > 8192) { // 8KB limit for better iOS compatibility
-                Log.w(TAG, "NDEF message too large for iOS compatibility: " + ndefBytes.length + " bytes");
-            }
-            
-            // Create proper NDEF file structure with length prefix
-            byte[] ndefFile = new byte[2 + ndefBytes.length];
-            
-            // Write length as big-endian 16-bit value
-            int length = ndefBytes.length;
-            ndefFile[0] = (byte) ((length >> 8) & 0xFF);
-            ndefFile[1] = (byte) (length & 0xFF);
-            
-            // Copy NDEF message data
-            System.arraycopy(ndefBytes, 0, ndefFile, 2, ndefBytes.length);
-            
-            Log.d(TAG, "Created NDEF file with " + length + " bytes of NDEF data");
-            return ndefFile;
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating NDEF file: " + e.getMessage(), e);
-            return new byte[]{0x00, 0x00}; // Return empty NDEF file on error
-        }
-    }
-
-    // Helper method to convert bytes to hex string for debugging
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X ", b));
+    static HceContent updateContent(ContentUpdate update) {
+        synchronized (contentLock) {
+            HceContent next = update.apply(content.get());
+            content.set(next);
+            return next;
         }
-        return sb.toString();
     }
 
     @Override
@@ -184,51 +108,27 @@ public class HceService extends HostApduService {
 
             if (hasVcfExtra) {
                 if (vcf != null && !vcf.isEmpty()) {
-                    contactVcf = vcf;
-                    staticContactVcf = vcf;
-                    staticSimpleUrls.clear();
-                    isServiceActive = true; // Activate service when setting content
-                    prepareNdefData();
-                } else {fear:
+                    // Activate service when setting content
+                    updateContent(current -> current.withContactVcf(vcf));
+                } else {
                     // Explicit clear VCF
                     Log.d(TAG, "Clearing VCF content");
-                    contactVcf = null;
-                    staticContactVcf = null;
-                    currentNdefData = null;
-                    // Don't deactivate if URL content might still exist
-                    if (staticSimpleUrls.isEmpty()) {
-                        isServiceActive = false;
-                    }
+                    updateContent(HceContent::withoutContactVcf);
                 }
             } else if (hasUrlExtra) {
                 if (url != null && !url.isEmpty()) {
-                    // Add URL to the list (accumulate)
-                    if (!staticSimpleUrls.contains(url)) {
-                        staticSimpleUrls.add(url);
-                    }
-                    contactVcf = null;
-                    staticContactVcf = null;
-                    isServiceActive = true; // Activate service when setting content
-                    prepareNdefData();
-                    Log.d(TAG, "Added URL to collection. Total URLs: " + staticSimpleUrls.size());
+                    // Add URL to the list (accumulate), activate service when setting content
+                    HceContent updated = updateContent(current -> current.withSimpleUrl(url));
+                    Log.d(TAG, "Added URL to collection. Total URLs: " + updated.simpleUrls.size());
                 } else {
                     // Explicit clear URLs
                     Log.d(TAG, "Clearing URL content");
-                    staticSimpleUrls.clear();
-                    currentNdefData = null;
-                    // Don't deactivate if VCF content might still exist
-                    if (staticContactVcf == null) {
-                        isServiceActive = false;
-                    }
+                    updateContent(HceContent::withoutSimpleUrls);
                 }
             } else if (hasUrlExtra && hasVcfExtra && url == null && vcf == null) {
                 // Both are explicitly null - clear all content and deactivate
                 Log.d(TAG, "Clearing all content and deactivating service");
-                contactVcf = null;
-                staticContactVcf = null;
-                staticSimpleUrls.clear();
-                currentNdefData = null;
-                isServiceActive = false;
+                updateContent(current -> HceContent.EMPTY);
             }
         }
         return super.onStartCommand(intent, flags, startId);
@@ -237,124 +137,168 @@ public class HceService extends HostApduService {
     @Override
     public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
         if (commandApdu == null || commandApdu.length < 4) {
-            Log.w(TAG, "Invalid APDU command received");
+            if (debugLogging) {
+                Log.w(TAG, "Invalid APDU command received");
+            }
             return ApduUtil.A_ERROR;
         }
 
-        Log.d(TAG, "Processing APDU: " + ApduUtil.bytesToHex(commandApdu));
+        if (debugLogging) {
+            Log.d(TAG, "Processing APDU: " + ApduUtil.bytesToHex(commandApdu));
+        }
 
-        // Check if HCE is actually active and has content
-        if (!isServiceActive || (staticSimpleUrls.isEmpty() && staticContactVcf == null)) {
-            Log.d(TAG, "HCE service inactive or no content, rejecting all commands");
-            byte[] response = ApduUtil.A_FILE_NOT_FOUND;
-            Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-            return response;
+        byte[] response = router.route(commandApdu);
+        ApduTrace trace = apduTrace;
+        if (trace != null) {
+            trace.record(commandApdu, response);
         }
+        return respond(response);
+    }
 
-        // Handle SELECT NDEF application
-        if (ApduUtil.isSelectNdefApp(commandApdu)) {
-            Log.d(TAG, "NDEF application selected");
-            ndefAppSelected = true;
-            capabilityContainerSelected = false;
-            ndefFileSelected = false;
-            prepareNdefData();
-            byte[] response = ApduUtil.A_OK;
+    // Single exit point for the APDU path, the hex dump is only built when debug logging is on
+    private static byte[] respond(byte[] response) {
+        if (debugLogging) {
             Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-            return response;
         }
+        return response;
+    }
 
-        // Only process further commands if NDEF app is selected
-        if (!ndefAppSelected) {
-            Log.w(TAG, "NDEF app not selected, rejecting command");
-            byte[] response = ApduUtil.A_FILE_NOT_FOUND;
-            Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-            return response;
+    @Override
+    public void onDeactivated(int reason) {
+        if (debugLogging) {
+            String reasonStr = (reason == DEACTIVATION_LINK_LOSS) ? "LINK_LOSS" :
+                              (reason == DEACTIVATION_DESELECTED) ? "DESELECTED" : "UNKNOWN";
+            Log.d(TAG, "Deactivated: " + reasonStr);
         }
+        router.deselect();
 
-        // Handle SELECT Capability Container
-        if (ApduUtil.isSelectCapabilityContainer(commandApdu)) {
-            Log.d(TAG, "Capability Container selected");
-            capabilityContainerSelected = true;
-            ndefFileSelected = false;
-            byte[] response = ApduUtil.A_OK;
-            Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-            return response;
+        // Report the last message written during the transaction, a single event however many writes it took
+        NdefFile written = writtenNdefFile.getAndSet(null);
+        if (written != null && broadcastManager != null) {
+            Intent intent = new Intent(ACTION_NDEF_WRITTEN);
+            intent.putExtra(EXTRA_NDEF_MESSAGE, Arrays.copyOfRange(written.image, 2, written.image.length));
+            broadcastManager.sendBroadcast(intent);
         }
+    }
 
-        // Handle SELECT NDEF file
-        if (ApduUtil.isSelectNdefFile(commandApdu)) {
-            Log.d(TAG, "NDEF file selected");
-            capabilityContainerSelected = false;
-            ndefFileSelected = true;
-            byte[] response = ApduUtil.A_OK;
-            Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-            return response;
+    /**
+     * Serve the NDEF file written by a reader in place of the shared content, until the content changes.
+     * @param image the written NDEF file, NLEN included
+     */
+    static NdefFile commitNdefWrite(byte[] image) {
+        NdefFile written = NdefFile.fromImage(image, extendedLengthApdu, true);
+        updateContent(current -> current.withNdefFile(written));
+        writtenNdefFile.set(written);
+        return written;
+    }
+
+    // Service state methods
+    public boolean isActive() {
+        return content.get().active;
+    }
+
+    public static boolean isDebugLogging() {
+        return debugLogging;
+    }
+
+    public static void setDebugLogging(boolean enabled) {
+        debugLogging = enabled;
+    }
+
+    public static boolean isExtendedLengthApdu() {
+        return extendedLengthApdu;
+    }
+
+    public static void setExtendedLengthApdu(boolean enabled) {
+        if (extendedLengthApdu != enabled) {
+            extendedLengthApdu = enabled;
+            // MLe / MLc and the read limit are part of the NDEF file image, rebuild it
+            updateContent(HceContent::rebuilt);
         }
+    }
 
-        // Handle READ BINARY commands
-        if (ApduUtil.isReadCommand(commandApdu)) {
-            if (capabilityContainerSelected) {
-                Log.d(TAG, "Reading Capability Container");
-                byte[] ccData = ApduUtil.getCapabilityContainer();
-                byte[] ccDataOnly = new byte[ccData.length - 2];
-                System.arraycopy(ccData, 0, ccDataOnly, 0, ccDataOnly.length);
-                byte[] response = ApduUtil.handleReadBinary(commandApdu, ccDataOnly);
-                Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-                return response;
-            }
-            
-            if (ndefFileSelected) {
-                Log.d(TAG, "Reading NDEF file");
-                byte[] response;
-                if (currentNdefData != null) {
-                    response = ApduUtil.handleReadBinary(commandApdu, currentNdefData);
-                } else {
-                    // Return empty NDEF file
-                    byte[] emptyNdef = {0x00, 0x00};
-                    response = ApduUtil.handleReadBinary(commandApdu, emptyNdef);
-                }
-                Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-                return response;
-            }
-            
-            Log.w(TAG, "READ command but no file selected");
-            byte[] response = ApduUtil.A_FILE_NOT_FOUND;
-            Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-            return response;
+    static HceContent getContent() {
+        return content.get();
+    }
+
+    /**
+     * Emulate an additional application, selected by the reader through the given AID.
+     * The AID is registered for this service on top of the ones declared in apdu_service.xml.
+     * Native only, applications are implemented in Java by the host app.
+     * @throws IllegalArgumentException when the AID is not 5 to 16 bytes of hex (ISO 7816-5)
+     */
+    public static synchronized boolean registerApplication(Context context, String aid, HceApplication application) {
+        String normalizedAid = normalizeAid(aid);
+        router.register(normalizedAid, application);
+        if (!dynamicAids.contains(normalizedAid)) {
+            dynamicAids.add(normalizedAid);
         }
+        return registerDynamicAids(context);
+    }
 
-        Log.w(TAG, "Unknown APDU command: " + ApduUtil.bytesToHex(commandApdu));
-        byte[] response = ApduUtil.A_ERROR;
-        Log.d(TAG, "Response APDU: " + ApduUtil.bytesToHex(response));
-        return response;
+    public static synchronized boolean unregisterApplication(Context context, String aid) {
+        String normalizedAid = normalizeAid(aid);
+        if (normalizedAid.equals(ApduUtil.NDEF_APP_AID)) {
+            return false;
+        }
+        router.unregister(normalizedAid);
+        dynamicAids.remove(normalizedAid);
+        return registerDynamicAids(context);
     }
 
-    @Override
-    public void onDeactivated(int reason) {
-        String reasonStr = (reason == DEACTIVATION_LINK_LOSS) ? "LINK_LOSS" : 
-                          (reason == DEACTIVATION_DESELECTED) ? "DESELECTED" : "UNKNOWN";
+    private static String normalizeAid(String aid) {
+        if (!ApduUtil.isValidAid(aid)) {
+            throw new IllegalArgumentException("AID should be 5 to 16 bytes of hex: " + aid);
+        }
+        return aid.toUpperCase();
     }
 
-    // Service state methods
-    public boolean isActive() {
-        return isServiceActive;
+    private static boolean registerDynamicAids(Context context) {
+        NfcAdapter adapter = NfcAdapter.getDefaultAdapter(context);
+        if (adapter == null) {
+            Log.w(TAG, "No NFC adapter, AIDs not registered");
+            return false;
+        }
+
+        CardEmulation cardEmulation = CardEmulation.getInstance(adapter);
+        ComponentName service = new ComponentName(context, HceService.class);
+        if (dynamicAids.isEmpty()) {
+            return cardEmulation.removeAidsForService(service, CardEmulation.CATEGORY_OTHER);
+        }
+        // Dynamic AIDs replace the static aid-group of the same category, keep the NDEF one in the list
+        List<String> aids = new ArrayList<>(dynamicAids);
+        aids.add(0, ApduUtil.NDEF_APP_AID);
+        return cardEmulation.registerAidsForService(service, CardEmulation.CATEGORY_OTHER, aids);
+    }
+
+    public static boolean isWritableNdef() {
+        return writableNdef;
+    }
+
+    public static void setWritableNdef(boolean enabled) {
+        if (writableNdef != enabled) {
+            writableNdef = enabled;
+            // Write access and maximum file size are part of the capability container, rebuild it
+            updateContent(HceContent::rebuilt);
+        }
+    }
+
+    static void setApduTrace(ApduTrace trace) {
+        apduTrace = trace;
     }
 
     public static boolean isRunning() {
-        return isServiceActive && (!staticSimpleUrls.isEmpty() || staticContactVcf != null);
+        return content.get().isServing();
     }
 
     // Static method to clear all data and deactivate service
     public static void clearAllData() {
-        staticSimpleUrls.clear();
-        staticContactVcf = null;
-        isServiceActive = false;
+        updateContent(current -> HceContent.EMPTY);
         Log.d(TAG, "All static data cleared and service deactivated");
     }
 
     // Static method to force clear current NDEF data
     public static void forceClearNdefData() {
-        staticSimpleUrls.clear();
-        staticContactVcf = null;
+        updateContent(HceContent::withoutContent);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,121 @@
+package community.revteltech.nfc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * ISO 7816-4 transport over IsoDep, done natively so the caller gets the complete response at once:
+ * commands longer than the transceive limit are sent with command chaining, 61xx responses are
+ * followed with GET RESPONSE and 6Cxx answers are retried with the expected Le.
+ */
+class IsoDepUtil {
+    private static final byte CLA_CHAINING = 0x10;
+    private static final byte INS_GET_RESPONSE = (byte) 0xC0;
+    private static final byte SW1_BYTES_AVAILABLE = 0x61;
+    private static final byte SW1_WRONG_LE = 0x6C;
+
+    // Bound on the GET RESPONSE chain, in case a card keeps answering 61xx
+    private static final int MAX_GET_RESPONSE = 256;
+
+    // Short APDU data length
+    private static final int MAX_SHORT_LC = 255;
+
+    static byte[] transceive(TagTechnologyRequest.Transceiver transceiver, byte[] apdu, int maxTransceiveLength,
+                             boolean chaining, boolean getResponse) throws IOException {
+        byte[] response = send(transceiver, apdu, maxTransceiveLength, chaining);
+
+        if (!getResponse) {
+            return response;
+        }
+
+        if (sw1(response) == SW1_WRONG_LE && apdu.length >= 4) {
+            response = send(transceiver, withLe(apdu, response[response.length - 1]), maxTransceiveLength, chaining);
+        }
+
+        if (sw1(response) != SW1_BYTES_AVAILABLE) {
+            return response;
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream(response.length + 256);
+        // GET RESPONSE on the logical channel of the command
+        byte[] command = {(byte) (apdu[0] & 0x03), INS_GET_RESPONSE, 0x00, 0x00, 0x00};
+        for (int i = 0; i < MAX_GET_RESPONSE && sw1(response) == SW1_BYTES_AVAILABLE; i++) {
+            data.write(response, 0, response.length - 2);
+            command[4] = response[response.length - 1];
+            response = transceiver.transceive(command);
+            if (sw1(response) == SW1_WRONG_LE) {
+                command[4] = response[response.length - 1];
+                response = transceiver.transceive(command);
+            }
+        }
+        data.write(response, 0, response.length);
+        return data.toByteArray();
+    }
+
+    private static byte[] send(TagTechnologyRequest.Transceiver transceiver, byte[] apdu, int maxTransceiveLength, boolean chaining) throws IOException {
+        if (chaining && apdu.length > maxTransceiveLength && isShortWithData(apdu)) {
+            return transceiveChained(transceiver, apdu, maxTransceiveLength);
+        }
+        return transceiver.transceive(apdu);
+    }
+
+    // Split the data of the command in CLA-chained commands fitting in a transceive
+    private static byte[] transceiveChained(TagTechnologyRequest.Transceiver transceiver, byte[] apdu, int maxTransceiveLength) throws IOException {
+        int lc = apdu[4] & 0xFF;
+        boolean hasLe = apdu.length == 6 + lc;
+        // Header, Lc and Le of each command
+        int chunkSize = Math.max(1, Math.min(MAX_SHORT_LC, maxTransceiveLength - 6));
+
+        int offset = 0;
+        while (lc - offset > chunkSize) {
+            byte[] command = new byte[5 + chunkSize];
+            command[0] = (byte) (apdu[0] | CLA_CHAINING);
+            System.arraycopy(apdu, 1, command, 1, 3);
+            command[4] = (byte) chunkSize;
+            System.arraycopy(apdu, 5 + offset, command, 5, chunkSize);
+            byte[] response = transceiver.transceive(command);
+            if (!isOk(response)) {
+                // The card refused the chain, the caller gets its answer
+                return response;
+            }
+            offset += chunkSize;
+        }
+
+        int remaining = lc - offset;
+        byte[] command = new byte[5 + remaining + (hasLe ? 1 : 0)];
+        System.arraycopy(apdu, 0, command, 0, 4);
+        command[4] = (byte) remaining;
+        System.arraycopy(apdu, 5 + offset, command, 5, remaining);
+        if (hasLe) {
+            command[command.length - 1] = apdu[apdu.length - 1];
+        }
+        return transceiver.transceive(command);
+    }
+
+    // Case 3 or 4 short APDU
+    private static boolean isShortWithData(byte[] apdu) {
+        if (apdu.length < 6 || apdu[4] == 0x00) {
+            return false;
+        }
+        int lc = apdu[4] & 0xFF;
+        return apdu.length == 5 + lc || apdu.length == 6 + lc;
+    }
+
+    // The same command with its Le replaced, or appended for a command without one
+    private static byte[] withLe(byte[] apdu, byte le) {
+        boolean hasLe = apdu.length == 5 || (apdu.length > 5 && apdu[4] != 0x00 && apdu.length == 6 + (apdu[4] & 0xFF));
+        byte[] command = hasLe ? apdu.clone() : Arrays.copyOf(apdu, apdu.length + 1);
+        command[command.length - 1] = le;
+        return command;
+    }
+
+    private static boolean isOk(byte[] response) {
+        return response != null && response.length >= 2
+                && response[response.length - 2] == (byte) 0x90 && response[response.length - 1] == 0x00;
+    }
+
+    private static int sw1(byte[] response) {
+        return response != null && response.length >= 2 ? response[response.length - 2] : 0;
+    }
+}
@@ -37,10 +37,11 @@ public abstract class JsonConvert {
                     jsonObject.put(key, readableMap.getBoolean(key));
                     break;
                 case Number:
-                    try {
-                        jsonObject.put(key, readableMap.getInt(key));
-                    } catch(Exception e) {
-                        jsonObject.put(key, readableMap.getDouble(key));
+                    double number = readableMap.getDouble(key);
+                    if (isInt(number)) {
+                        jsonObject.put(key, (int) number);
+                    } else {
+                        jsonObject.put(key, number);
                     }
                     break;
                 case String:
@@ -59,8 +60,9 @@ public abstract class JsonConvert {
     }
 
     public static JSONArray reactToJSON(ReadableArray readableArray) throws JSONException {
+        int size = readableArray.size();
         JSONArray jsonArray = new JSONArray();
-        for(int i=0; i < readableArray.size(); i++) {
+        for(int i=0; i < size; i++) {
             ReadableType valueType = readableArray.getType(i);
             switch (valueType){
                 case Null:
@@ -70,10 +72,11 @@ public abstract class JsonConvert {
                     jsonArray.put(readableArray.getBoolean(i));
                     break;
                 case Number:
-                    try {
-                        jsonArray.put(readableArray.getInt(i));
-                    } catch(Exception e) {
-                        jsonArray.put(readableArray.getDouble(i));
+                    double number = readableArray.getDouble(i);
+                    if (isInt(number)) {
+                        jsonArray.put((int) number);
+                    } else {
+                        jsonArray.put(number);
                     }
                     break;
                 case String:
@@ -92,22 +95,27 @@ public abstract class JsonConvert {
 
     public static WritableMap jsonToReact(JSONObject jsonObject) throws JSONException {
         WritableMap writableMap = Arguments.createMap();
-        Iterator iterator = jsonObject.keys();
+        Iterator<String> iterator = jsonObject.keys();
         while(iterator.hasNext()) {
-            String key = (String) iterator.next();
+            String key = iterator.next();
             Object value = jsonObject.get(key);
-            if (value instanceof Float || value instanceof Double) {
-                writableMap.putDouble(key, jsonObject.getDouble(key));
+            if (value instanceof String) {
+                writableMap.putString(key, (String) value);
+            } else if (value instanceof Boolean) {
+                writableMap.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writableMap.putInt(key, ((Number) value).intValue());
             } else if (value instanceof Number) {
-                writableMap.putInt(key, jsonObject.getInt(key));
-            } else if (value instanceof String) {
-                writableMap.putString(key, jsonObject.getString(key));
+                Number number = (Number) value;
+                if (isInt(number)) {
+                    writableMap.putInt(key, number.intValue());
+                } else {
+                    writableMap.putDouble(key, number.doubleValue());
+                }
             } else if (value instanceof JSONObject) {
-                writableMap.putMap(key,jsonToReact(jsonObject.getJSONObject(key)));
+                writableMap.putMap(key, jsonToReact((JSONObject) value));
             } else if (value instanceof JSONArray){
-                writableMap.putArray(key, jsonToReact(jsonObject.getJSONArray(key)));
-            } else if ("true".equals(value.toString()) || "false".equals(value.toString())){
-                writableMap.putBoolean(key, "true".equals(value.toString()));
+                writableMap.putArray(key, jsonToReact((JSONArray) value));
             } else if (value == JSONObject.NULL){
                 writableMap.putNull(key);
             }
@@ -117,25 +125,49 @@ public abstract class JsonConvert {
     }
 
     public static WritableArray jsonToReact(JSONArray jsonArray) throws JSONException {
+        int length = jsonArray.length();
         WritableArray writableArray = Arguments.createArray();
-        for(int i=0; i < jsonArray.length(); i++) {
+        for(int i=0; i < length; i++) {
             Object value = jsonArray.get(i);
-            if (value instanceof Float || value instanceof Double) {
-                writableArray.pushDouble(jsonArray.getDouble(i));
+            if (value instanceof String) {
+                writableArray.pushString((String) value);
+            } else if (value instanceof Boolean) {
+                writableArray.pushBoolean((Boolean) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writableArray.pushInt(((Number) value).intValue());
             } else if (value instanceof Number) {
-                writableArray.pushInt(jsonArray.getInt(i));
-            } else if (value instanceof String) {
-                writableArray.pushString(jsonArray.getString(i));
+                Number number = (Number) value;
+                if (isInt(number)) {
+                    writableArray.pushInt(number.intValue());
+                } else {
+                    writableArray.pushDouble(number.doubleValue());
+                }
             } else if (value instanceof JSONObject) {
-                writableArray.pushMap(jsonToReact(jsonArray.getJSONObject(i)));
+                writableArray.pushMap(jsonToReact((JSONObject) value));
             } else if (value instanceof JSONArray){
-                writableArray.pushArray(jsonToReact(jsonArray.getJSONArray(i)));
-            } else if ("true".equals(value.toString()) || "false".equals(value.toString())){
-                writableArray.pushBoolean("true".equals(value.toString()));
+                writableArray.pushArray(jsonToReact((JSONArray) value));
             } else if (value == JSONObject.NULL){
                 writableArray.pushNull();
             }
         }
         return writableArray;
     }
-}
\ No newline at end of file
+
+    // JS numbers are doubles: integral values become an int as long as they fit. NaN and the
+    // infinities keep the int they were always truncated to, org.json rejects them as doubles.
+    static boolean isInt(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return true;
+        }
+        return value == Math.rint(value) && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+
+    // Floating point values stay doubles, integral ones are ints as long as they fit
+    static boolean isInt(Number number) {
+        if (number instanceof Float || number instanceof Double) {
+            return false;
+        }
+        long value = number.longValue();
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE && number.doubleValue() == value;
+    }
+}
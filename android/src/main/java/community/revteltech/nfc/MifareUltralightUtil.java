@@ -0,0 +1,240 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.MifareUltralight;
+import android.util.Log;
+
+import java.io.IOException;
+
+class MifareUltralightUtil {
+    private static final String LOG_TAG = "MifareUltralightUtil";
+
+    private static final byte CMD_GET_VERSION = (byte) 0x60;
+    private static final byte CMD_FAST_READ = (byte) 0x3A;
+    private static final byte CMD_COMPATIBILITY_WRITE = (byte) 0xA0;
+    private static final byte ACK = 0x0A;
+
+    static final String STATUS_OK = "ok";
+    static final String STATUS_TAG_LOST = "tag_lost";
+    static final String STATUS_FAILED = "failed";
+    static final String STATUS_VERIFY_FAILED = "verify_failed";
+
+    static class WriteRangeResult {
+        // Bytes known to be written, writing again from startPage + written / PAGE_SIZE resumes the write
+        final int written;
+        final String status;
+        final String error;
+
+        WriteRangeResult(int written, String status, String error) {
+            this.written = written;
+            this.status = status;
+            this.error = error;
+        }
+    }
+
+    /** The MIFARE Ultralight operations used here, {@link #ultralightTag} adapts a connected {@link MifareUltralight} */
+    interface UltralightTag extends TagTechnologyRequest.Transceiver {
+        int getMaxTransceiveLength();
+
+        byte[] readPages(int pageOffset) throws IOException;
+
+        void writePage(int pageOffset, byte[] data) throws IOException;
+
+        // Wake the tag up after a NAK sent it back to idle
+        void reconnect() throws IOException;
+    }
+
+    static UltralightTag ultralightTag(final MifareUltralight tag) {
+        return new UltralightTag() {
+            @Override
+            public byte[] transceive(byte[] data) throws IOException {
+                return tag.transceive(data);
+            }
+
+            @Override
+            public int getMaxTransceiveLength() {
+                return tag.getMaxTransceiveLength();
+            }
+
+            @Override
+            public byte[] readPages(int pageOffset) throws IOException {
+                return tag.readPages(pageOffset);
+            }
+
+            @Override
+            public void writePage(int pageOffset, byte[] data) throws IOException {
+                tag.writePage(pageOffset, data);
+            }
+
+            @Override
+            public void reconnect() throws IOException {
+                tag.close();
+                tag.connect();
+            }
+        };
+    }
+
+    // Pages addressable by the 1-byte page argument of READ / FAST_READ
+    static final int MAX_PAGE = 0xFF;
+
+    // First page of the user memory, pages 0 - 3 hold the UID, lock bytes and OTP
+    static final int FIRST_USER_PAGE = 4;
+
+    static final class Layout {
+        final int pageCount;
+        final int lastUserPage;
+
+        Layout(int pageCount, int lastUserPage) {
+            this.pageCount = pageCount;
+            this.lastUserPage = lastUserPage;
+        }
+    }
+
+    /**
+     * Memory layout of the tag, from the storage size of GET_VERSION (NTAG21x, Ultralight EV1) or else
+     * from the type reported by Android. Pages after lastUserPage hold the lock and configuration.
+     */
+    static Layout getLayout(MifareUltralight tag) throws IOException {
+        byte[] version = null;
+        try {
+            version = tag.transceive(new byte[]{CMD_GET_VERSION});
+        } catch (TagLostException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            // NAK, older Ultralight, the tag has to be woken up again
+            tag.close();
+            tag.connect();
+        }
+
+        if (version != null && version.length == 8) {
+            switch (version[6]) {
+                case 0x0B: // Ultralight EV1 MF0UL11
+                    return new Layout(20, 15);
+                case 0x0E: // Ultralight EV1 MF0UL21
+                    return new Layout(41, 35);
+                case 0x0F: // NTAG213
+                    return new Layout(45, 39);
+                case 0x11: // NTAG215
+                    return new Layout(135, 129);
+                case 0x13: // NTAG216
+                    return new Layout(231, 225);
+            }
+        }
+
+        if (tag.getType() == MifareUltralight.TYPE_ULTRALIGHT_C) {
+            // The 3DES key in pages 44 - 47 cannot be read
+            return new Layout(44, 39);
+        }
+        return new Layout(16, 15);
+    }
+
+    /**
+     * Read the pages from startPage to endPage (inclusive) in as few commands as possible.
+     *
+     * FAST_READ (NTAG, Ultralight EV1) returns any number of pages at once, each command is sized to
+     * what fits in a transceive. Tags without FAST_READ answer with a NAK and go back to idle, in which
+     * case the tag is reconnected and the rest of the range is read 4 pages at a time with READ.
+     */
+    static byte[] readRange(UltralightTag tag, int startPage, int endPage) throws IOException {
+        byte[] result = new byte[(endPage - startPage + 1) * MifareUltralight.PAGE_SIZE];
+        int pagesPerRead = Math.max(1, tag.getMaxTransceiveLength() / MifareUltralight.PAGE_SIZE);
+        boolean fastRead = true;
+
+        int page = startPage;
+        while (page <= endPage) {
+            int offset = (page - startPage) * MifareUltralight.PAGE_SIZE;
+
+            if (fastRead) {
+                int lastPage = Math.min(endPage, page + pagesPerRead - 1);
+                int length = (lastPage - page + 1) * MifareUltralight.PAGE_SIZE;
+                byte[] response = null;
+                try {
+                    response = tag.transceive(new byte[]{CMD_FAST_READ, (byte) page, (byte) lastPage});
+                } catch (TagLostException ex) {
+                    throw ex;
+                } catch (IOException ex) {
+                    // NAK, the command is not supported
+                }
+
+                if (response != null && response.length == length) {
+                    System.arraycopy(response, 0, result, offset, length);
+                    page = lastPage + 1;
+                    continue;
+                }
+
+                Log.d(LOG_TAG, "FAST_READ not supported, falling back to READ");
+                fastRead = false;
+                tag.reconnect();
+            }
+
+            // READ returns 4 pages, rolling over at the end of the memory
+            byte[] response = tag.readPages(page);
+            int pages = Math.min(4, endPage - page + 1);
+            System.arraycopy(response, 0, result, offset, pages * MifareUltralight.PAGE_SIZE);
+            page += pages;
+        }
+        return result;
+    }
+
+    /**
+     * Write data to consecutive pages starting at startPage, data.length must be a multiple of PAGE_SIZE.
+     *
+     * Pages are written with WRITE (0xA2), or with the 2-step COMPATIBILITY_WRITE (0xA0) for readers
+     * or chips which only support the MIFARE Classic framing. The write stops at the first error,
+     * the result tells how many bytes were written so the caller can resume from there.
+     * With verify, the range is read back (FAST_READ when available) once all the pages are written.
+     */
+    static WriteRangeResult writeRange(UltralightTag tag, int startPage, byte[] data, boolean compatibilityWrite, boolean verify) {
+        int pageCount = data.length / MifareUltralight.PAGE_SIZE;
+        byte[] page = new byte[MifareUltralight.PAGE_SIZE];
+
+        for (int i = 0; i < pageCount; i++) {
+            int offset = i * MifareUltralight.PAGE_SIZE;
+            System.arraycopy(data, offset, page, 0, MifareUltralight.PAGE_SIZE);
+            try {
+                if (compatibilityWrite) {
+                    compatibilityWritePage(tag, startPage + i, page);
+                } else {
+                    tag.writePage(startPage + i, page);
+                }
+            } catch (TagLostException ex) {
+                return new WriteRangeResult(offset, STATUS_TAG_LOST, ex.toString());
+            } catch (IOException ex) {
+                return new WriteRangeResult(offset, STATUS_FAILED, ex.toString());
+            }
+        }
+
+        if (verify) {
+            try {
+                byte[] readBack = readRange(tag, startPage, startPage + pageCount - 1);
+                for (int i = 0; i < data.length; i++) {
+                    if (readBack[i] != data[i]) {
+                        int offset = i - i % MifareUltralight.PAGE_SIZE;
+                        return new WriteRangeResult(offset, STATUS_VERIFY_FAILED, "page " + (startPage + offset / MifareUltralight.PAGE_SIZE) + " mismatch");
+                    }
+                }
+            } catch (TagLostException ex) {
+                // Everything was written, only the verification is missing
+                return new WriteRangeResult(data.length, STATUS_TAG_LOST, ex.toString());
+            } catch (IOException ex) {
+                return new WriteRangeResult(data.length, STATUS_VERIFY_FAILED, ex.toString());
+            }
+        }
+        return new WriteRangeResult(data.length, STATUS_OK, null);
+    }
+
+    // COMPATIBILITY_WRITE: the address first, then 16 bytes of which only the first 4 are written
+    private static void compatibilityWritePage(UltralightTag tag, int pageOffset, byte[] page) throws IOException {
+        checkAck(tag.transceive(new byte[]{CMD_COMPATIBILITY_WRITE, (byte) pageOffset}));
+        byte[] block = new byte[16];
+        System.arraycopy(page, 0, block, 0, MifareUltralight.PAGE_SIZE);
+        checkAck(tag.transceive(block));
+    }
+
+    private static void checkAck(byte[] response) throws IOException {
+        // Some stacks report the 4-bit ACK as an empty response
+        if (response != null && response.length == 1 && (response[0] & 0x0F) != ACK) {
+            throw new IOException("NAK " + (response[0] & 0x0F));
+        }
+    }
+}
@@ -2,9 +2,12 @@ package community.revteltech.nfc;
 
 import android.app.Activity;
 import android.content.pm.PackageManager;
+import android.nfc.TagLostException;
+import android.nfc.tech.MifareClassic;
 import android.os.Build;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.nio.charset.Charset;
 
@@ -81,4 +84,441 @@ class MifareUtil {
 		// We don't have reason to believe that it's not supported, or we can't detect it right now (we should wait when a tag is connected and do then some heuristics)
 		return true;
 	}
+
+	static final String SECTOR_OK = "ok";
+	static final String SECTOR_AUTH_FAILED = "auth_failed";
+	static final String SECTOR_READ_FAILED = "read_failed";
+
+	/**
+	 * Keys that opened a sector, by tag UID, sector and key type, most recently used last. Each tech
+	 * request holds its own, so keys don't outlive the connection they were found on.
+	 */
+	static final class KeyCache {
+		private static final int SIZE = 256;
+		private final Map<String, byte[]> keys = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > SIZE;
+			}
+		};
+
+		synchronized byte[] get(String uid, int sector, boolean keyA) {
+			return keys.get(entry(uid, sector, keyA));
+		}
+
+		synchronized void put(String uid, int sector, SectorKey key) {
+			keys.put(entry(uid, sector, key.keyA), key.key);
+		}
+
+		synchronized void clear() {
+			keys.clear();
+		}
+
+		private static String entry(String uid, int sector, boolean keyA) {
+			return uid + ":" + sector + ":" + (keyA ? "A" : "B");
+		}
+	}
+
+	/** The MIFARE Classic operations used here, {@link #classicTag} adapts a connected {@link MifareClassic} */
+	interface ClassicTag {
+		int getBlockCountInSector(int sector);
+
+		int sectorToBlock(int sector);
+
+		int blockToSector(int block);
+
+		boolean authenticateSectorWithKeyA(int sector, byte[] key) throws IOException;
+
+		boolean authenticateSectorWithKeyB(int sector, byte[] key) throws IOException;
+
+		byte[] readBlock(int block) throws IOException;
+
+		void writeBlock(int block, byte[] data) throws IOException;
+
+		void increment(int block, int value) throws IOException;
+
+		void decrement(int block, int value) throws IOException;
+
+		void restore(int block) throws IOException;
+
+		void transfer(int block) throws IOException;
+	}
+
+	static ClassicTag classicTag(final MifareClassic tag) {
+		return new ClassicTag() {
+			@Override
+			public int getBlockCountInSector(int sector) {
+				return tag.getBlockCountInSector(sector);
+			}
+
+			@Override
+			public int sectorToBlock(int sector) {
+				return tag.sectorToBlock(sector);
+			}
+
+			@Override
+			public int blockToSector(int block) {
+				return tag.blockToSector(block);
+			}
+
+			@Override
+			public boolean authenticateSectorWithKeyA(int sector, byte[] key) throws IOException {
+				return tag.authenticateSectorWithKeyA(sector, key);
+			}
+
+			@Override
+			public boolean authenticateSectorWithKeyB(int sector, byte[] key) throws IOException {
+				return tag.authenticateSectorWithKeyB(sector, key);
+			}
+
+			@Override
+			public byte[] readBlock(int block) throws IOException {
+				return tag.readBlock(block);
+			}
+
+			@Override
+			public void writeBlock(int block, byte[] data) throws IOException {
+				tag.writeBlock(block, data);
+			}
+
+			@Override
+			public void increment(int block, int value) throws IOException {
+				tag.increment(block, value);
+			}
+
+			@Override
+			public void decrement(int block, int value) throws IOException {
+				tag.decrement(block, value);
+			}
+
+			@Override
+			public void restore(int block) throws IOException {
+				tag.restore(block);
+			}
+
+			@Override
+			public void transfer(int block) throws IOException {
+				tag.transfer(block);
+			}
+		};
+	}
+
+	static final class SectorKey {
+		final byte[] key;
+		final boolean keyA;
+
+		SectorKey(byte[] key, boolean keyA) {
+			this.key = key;
+			this.keyA = keyA;
+		}
+	}
+
+	static final class SectorResult {
+		final int sector;
+		final String status;
+		// Position of the sector in the dump
+		final int offset;
+		final int length;
+		// Key that opened the sector, null unless the sector could be authenticated
+		final SectorKey key;
+
+		SectorResult(int sector, String status, int offset, int length, SectorKey key) {
+			this.sector = sector;
+			this.status = status;
+			this.offset = offset;
+			this.length = length;
+			this.key = key;
+		}
+	}
+
+	static final class ReadAllResult {
+		// The requested sectors back to back, zero-filled where they could not be read
+		final byte[] data;
+		final SectorResult[] sectors;
+
+		ReadAllResult(byte[] data, SectorResult[] sectors) {
+			this.data = data;
+			this.sectors = sectors;
+		}
+	}
+
+	/**
+	 * Authenticate and read the given sectors in one pass.
+	 *
+	 * Key A is tried before key B. For each allowed key type, the cached key of this tag is tried first,
+	 * then the key that opened the previous sector (cards often share keys across sectors), then the
+	 * candidate keys of the sector. Keys that work are cached for the next operation on the same tag.
+	 *
+	 * @param uid  hex UID of the tag, used as key cache entry
+	 * @param keys candidate keys per sector, indexed by sector
+	 */
+	static ReadAllResult readAll(ClassicTag mifareTag, KeyCache keyCache, String uid, int[] sectors, List<byte[]>[] keys,
+								 boolean tryKeyA, boolean tryKeyB) throws IOException {
+		int size = 0;
+		for (int sector : sectors) {
+			size += mifareTag.getBlockCountInSector(sector) * MifareClassic.BLOCK_SIZE;
+		}
+
+		byte[] data = new byte[size];
+		SectorResult[] results = new SectorResult[sectors.length];
+		SectorKey previous = null;
+		int offset = 0;
+		for (int i = 0; i < sectors.length; i++) {
+			int sector = sectors[i];
+			int blocks = mifareTag.getBlockCountInSector(sector);
+			int length = blocks * MifareClassic.BLOCK_SIZE;
+
+			SectorKey key = authenticate(mifareTag, keyCache, uid, sector, previous, keys[sector], tryKeyA, tryKeyB, false);
+			if (key == null) {
+				results[i] = new SectorResult(sector, SECTOR_AUTH_FAILED, offset, length, null);
+			} else {
+				previous = key;
+				String status = SECTOR_OK;
+				try {
+					int firstBlock = mifareTag.sectorToBlock(sector);
+					for (int block = 0; block < blocks; block++) {
+						byte[] buffer = mifareTag.readBlock(firstBlock + block);
+						System.arraycopy(buffer, 0, data, offset + block * MifareClassic.BLOCK_SIZE, MifareClassic.BLOCK_SIZE);
+					}
+				} catch (TagLostException ex) {
+					throw ex;
+				} catch (IOException ex) {
+					// Access conditions may deny reads with this key
+					status = SECTOR_READ_FAILED;
+				}
+				results[i] = new SectorResult(sector, status, offset, length, key);
+			}
+			offset += length;
+		}
+		return new ReadAllResult(data, results);
+	}
+
+	static final String OP_WRITE = "write";
+	static final String OP_INCREMENT = "increment";
+	static final String OP_DECREMENT = "decrement";
+	static final String OP_RESTORE = "restore";
+
+	static final String OP_COMMITTED = "committed";
+	static final String OP_VERIFY_FAILED = "verify_failed";
+	static final String OP_AUTH_FAILED = "auth_failed";
+	static final String OP_FAILED = "failed";
+	// The tag was lost while the operation was sent, it may or may not have been applied
+	static final String OP_UNKNOWN = "unknown";
+	static final String OP_SKIPPED = "skipped";
+
+	/**
+	 * Block write, or value operation (increment, decrement or restore) immediately followed by the
+	 * transfer of the result to transferBlock, so the pair is applied or reported as a whole.
+	 */
+	static final class BlockOperation {
+		final String type;
+		final int block;
+		final byte[] data;
+		final int value;
+		final int transferBlock;
+
+		BlockOperation(String type, int block, byte[] data, int value, int transferBlock) {
+			this.type = type;
+			this.block = block;
+			this.data = data;
+			this.value = value;
+			this.transferBlock = transferBlock;
+		}
+	}
+
+	/**
+	 * Apply the operations sector by sector, authenticating each sector once (see {@link #readAll} for
+	 * the order keys are tried in, except that key B comes first, as access conditions usually keep
+	 * writes to key B). Within a sector, operations keep their order.
+	 *
+	 * @return the status of each operation, in the order of the operations
+	 */
+	static String[] writeAll(ClassicTag mifareTag, KeyCache keyCache, String uid, BlockOperation[] operations, List<byte[]>[] keys,
+							 boolean tryKeyA, boolean tryKeyB, boolean verify, boolean stopOnError) {
+		String[] statuses = new String[operations.length];
+		Arrays.fill(statuses, OP_SKIPPED);
+
+		// Sectors in order of first appearance, with the indexes of their operations
+		Map<Integer, List<Integer>> bySector = new LinkedHashMap<>();
+		for (int i = 0; i < operations.length; i++) {
+			int sector = mifareTag.blockToSector(operations[i].block);
+			List<Integer> indexes = bySector.get(sector);
+			if (indexes == null) {
+				indexes = new ArrayList<>();
+				bySector.put(sector, indexes);
+			}
+			indexes.add(i);
+		}
+
+		SectorKey previous = null;
+		for (Map.Entry<Integer, List<Integer>> entry : bySector.entrySet()) {
+			int sector = entry.getKey();
+			SectorKey key;
+			try {
+				key = authenticate(mifareTag, keyCache, uid, sector, previous, keys[sector], tryKeyA, tryKeyB, true);
+			} catch (TagLostException ex) {
+				return statuses;
+			} catch (IOException ex) {
+				key = null;
+			}
+			if (key == null) {
+				for (int index : entry.getValue()) {
+					statuses[index] = OP_AUTH_FAILED;
+				}
+				if (stopOnError) {
+					return statuses;
+				}
+				continue;
+			}
+			previous = key;
+
+			for (int index : entry.getValue()) {
+				try {
+					statuses[index] = apply(mifareTag, operations[index], verify);
+				} catch (TagLostException ex) {
+					statuses[index] = OP_UNKNOWN;
+					return statuses;
+				} catch (IOException ex) {
+					statuses[index] = OP_FAILED;
+				}
+
+				if (OP_FAILED.equals(statuses[index]) && !key.keyA && tryKeyA) {
+					// Key B opened the sector but may not be granted writes, as in the transport
+					// configuration where key B is readable. A failed command changes nothing, retry with key A.
+					try {
+						SectorKey keyA = authenticate(mifareTag, keyCache, uid, sector, previous, keys[sector], true, false, false);
+						if (keyA != null) {
+							key = keyA;
+							statuses[index] = apply(mifareTag, operations[index], verify);
+						}
+					} catch (TagLostException ex) {
+						// Unknown only when lost after key A opened the sector and the operation was resent
+						statuses[index] = key.keyA ? OP_UNKNOWN : OP_FAILED;
+						return statuses;
+					} catch (IOException ex) {
+						statuses[index] = OP_FAILED;
+					}
+				}
+				if (stopOnError && !OP_COMMITTED.equals(statuses[index])) {
+					return statuses;
+				}
+			}
+		}
+		return statuses;
+	}
+
+	private static String apply(ClassicTag mifareTag, BlockOperation operation, boolean verify) throws IOException {
+		if (OP_WRITE.equals(operation.type)) {
+			mifareTag.writeBlock(operation.block, operation.data);
+			if (verify && !Arrays.equals(operation.data, mifareTag.readBlock(operation.block))) {
+				return OP_VERIFY_FAILED;
+			}
+			return OP_COMMITTED;
+		}
+
+		Integer expected = null;
+		if (verify) {
+			Integer current = parseValueBlock(mifareTag.readBlock(operation.block));
+			if (current != null) {
+				if (OP_INCREMENT.equals(operation.type)) {
+					expected = current + operation.value;
+				} else if (OP_DECREMENT.equals(operation.type)) {
+					expected = current - operation.value;
+				} else {
+					expected = current;
+				}
+			}
+		}
+
+		if (OP_INCREMENT.equals(operation.type)) {
+			mifareTag.increment(operation.block, operation.value);
+		} else if (OP_DECREMENT.equals(operation.type)) {
+			mifareTag.decrement(operation.block, operation.value);
+		} else {
+			mifareTag.restore(operation.block);
+		}
+		mifareTag.transfer(operation.transferBlock);
+
+		if (verify) {
+			Integer transferred = parseValueBlock(mifareTag.readBlock(operation.transferBlock));
+			if (expected == null || !expected.equals(transferred)) {
+				return OP_VERIFY_FAILED;
+			}
+		}
+		return OP_COMMITTED;
+	}
+
+	/** Value of a value block (value, inverted value, value, address bytes), null if not a value block */
+	static Integer parseValueBlock(byte[] block) {
+		if (block == null || block.length != MifareClassic.BLOCK_SIZE) {
+			return null;
+		}
+		for (int i = 0; i < 4; i++) {
+			if (block[i] != block[i + 8] || block[i] != (byte) ~block[i + 4]) {
+				return null;
+			}
+		}
+		if (block[12] != block[14] || block[13] != block[15] || block[12] != (byte) ~block[13]) {
+			return null;
+		}
+		// 32-bit signed, little-endian
+		return (block[0] & 0xFF) | (block[1] & 0xFF) << 8 | (block[2] & 0xFF) << 16 | (block[3] & 0xFF) << 24;
+	}
+
+	/**
+	 * Find a key for the sector among the allowed key types, key A first unless preferKeyB. For each type,
+	 * the cached key is tried, then the previous key, then the candidates.
+	 */
+	private static SectorKey authenticate(ClassicTag mifareTag, KeyCache keyCache, String uid, int sector, SectorKey previous,
+										  List<byte[]> candidates, boolean tryKeyA, boolean tryKeyB, boolean preferKeyB) throws IOException {
+		boolean[] keyTypes = preferKeyB ? new boolean[]{false, true} : new boolean[]{true, false};
+		for (boolean keyA : keyTypes) {
+			if (keyA ? !tryKeyA : !tryKeyB) {
+				continue;
+			}
+
+			List<byte[]> tried = new ArrayList<>();
+			byte[] cached = keyCache.get(uid, sector, keyA);
+			if (cached != null) {
+				if (authenticate(mifareTag, sector, cached, keyA)) {
+					return new SectorKey(cached, keyA);
+				}
+				tried.add(cached);
+			}
+			if (previous != null && previous.keyA == keyA && !contains(tried, previous.key)) {
+				if (authenticate(mifareTag, sector, previous.key, keyA)) {
+					return cache(keyCache, uid, sector, previous);
+				}
+				tried.add(previous.key);
+			}
+			if (candidates != null) {
+				for (byte[] candidate : candidates) {
+					if (!contains(tried, candidate) && authenticate(mifareTag, sector, candidate, keyA)) {
+						return cache(keyCache, uid, sector, new SectorKey(candidate, keyA));
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean authenticate(ClassicTag mifareTag, int sector, byte[] key, boolean keyA) throws IOException {
+		return keyA
+				? mifareTag.authenticateSectorWithKeyA(sector, key)
+				: mifareTag.authenticateSectorWithKeyB(sector, key);
+	}
+
+	private static boolean contains(List<byte[]> keys, byte[] key) {
+		for (byte[] k : keys) {
+			if (Arrays.equals(k, key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static SectorKey cache(KeyCache keyCache, String uid, int sector, SectorKey key) {
+		keyCache.put(uid, sector, key);
+		return key;
+	}
 }
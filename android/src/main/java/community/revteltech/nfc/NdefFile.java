@@ -0,0 +1,89 @@
+package community.revteltech.nfc;
+
+import android.nfc.NdefMessage;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable image of the NDEF file served by {@link HceService}: a 2-byte big-endian NLEN
+ * followed by the encoded NDEF message.
+ *
+ * The image is encoded once when the shared content changes, READ BINARY then serves
+ * slices of it, see {@link ReadBinaryFile}. Each image carries a version so a reader transaction keeps
+ * reading the image it selected, even if the content is replaced in the meantime.
+ */
+final class NdefFile {
+    private static final String TAG = "NdefFile";
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
+    static final NdefFile EMPTY = new NdefFile(0, ApduUtil.EMPTY_NDEF_FILE, false, false);
+
+    final int version;
+    final byte[] image;
+    // Capability Container describing this image (without status word)
+    final byte[] capabilityContainer;
+    // Largest READ BINARY response served from this image
+    final int maxReadLength;
+    // Whether readers may write a new message with UPDATE BINARY, up to capacity bytes (NLEN included)
+    final boolean writable;
+    final int capacity;
+    private final ReadBinaryFile imageFile;
+    private final ReadBinaryFile capabilityContainerFile;
+
+    private NdefFile(int version, byte[] image, boolean extendedLength, boolean writable) {
+        this.version = version;
+        this.image = image;
+        this.writable = writable;
+        this.capabilityContainer = ApduUtil.buildCapabilityContainer(image.length, extendedLength, writable);
+        this.capacity = ApduUtil.getMaxNdefFileSize(capabilityContainer);
+        // Short reads keep answering up to 256 bytes as before, extended reads are capped to MLe
+        this.maxReadLength = Math.max(256, ApduUtil.getMaxLe(capabilityContainer));
+        this.imageFile = new ReadBinaryFile(image, maxReadLength);
+        this.capabilityContainerFile = new ReadBinaryFile(capabilityContainer, capabilityContainer.length);
+    }
+
+    byte[] readImage(byte[] commandApdu) {
+        return imageFile.read(commandApdu);
+    }
+
+    byte[] readCapabilityContainer(byte[] commandApdu) {
+        return capabilityContainerFile.read(commandApdu);
+    }
+
+    int length() {
+        return image.length;
+    }
+
+    static NdefFile fromMessage(NdefMessage ndefMessage, boolean extendedLength, boolean writable) {
+        byte[] ndefBytes = ndefMessage.toByteArray();
+
+        // Validate NDEF message is not too large (iOS has stricter limits)
+        if (ndefBytes.length > 8192) { // 8KB limit for better iOS compatibility
+            Log.w(TAG, "NDEF message too large for iOS compatibility: " + ndefBytes.length + " bytes");
+        }
+        if (ndefBytes.length > 0xFFFE - 2) {
+            Log.w(TAG, "NDEF message exceeds the maximum NDEF file size: " + ndefBytes.length + " bytes");
+        } else if (2 + ndefBytes.length > ApduUtil.MAX_READ_OFFSET + 1 && !extendedLength) {
+            Log.w(TAG, "NDEF message cannot be read entirely with short READ BINARY: " + ndefBytes.length + " bytes");
+        }
+
+        // Create proper NDEF file structure with length prefix
+        byte[] image = new byte[2 + ndefBytes.length];
+
+        // Write length as big-endian 16-bit value
+        int length = ndefBytes.length;
+        image[0] = (byte) ((length >> 8) & 0xFF);
+        image[1] = (byte) (length & 0xFF);
+
+        // Copy NDEF message data
+        System.arraycopy(ndefBytes, 0, image, 2, ndefBytes.length);
+
+        return fromImage(image, extendedLength, writable);
+    }
+
+    /** NDEF file from a complete image (NLEN included), such as one written by a reader */
+    static NdefFile fromImage(byte[] image, boolean extendedLength, boolean writable) {
+        return new NdefFile(VERSIONS.incrementAndGet(), image, extendedLength, writable);
+    }
+}
@@ -0,0 +1,163 @@
+package community.revteltech.nfc;
+
+import android.util.Log;
+
+/**
+ * NFC Forum Type 4 Tag application (AID D2760000850101) sharing the {@link HceContent}
+ * of {@link HceService} as an NDEF file.
+ */
+final class NdefTagApplication extends HceApplication {
+    private static final String TAG = "NdefTagApplication";
+
+    private enum State {
+        SELECTED,
+        CAPABILITY_CONTAINER_SELECTED,
+        NDEF_FILE_SELECTED
+    }
+
+    private State state = State.SELECTED;
+    // NDEF file picked up when the reader selected the application, kept for the whole transaction
+    private NdefFile selectedNdefFile = NdefFile.EMPTY;
+    // Image being written with UPDATE BINARY, committed when the reader writes a non-zero NLEN
+    private byte[] staging = null;
+
+    NdefTagApplication() {
+        on(0x00, 0xA4, this::selectFile);
+        on(0x00, 0xB0, this::readBinary);
+        on(0x00, 0xD6, this::updateBinary);
+    }
+
+    @Override
+    protected byte[] onSelect(byte[] commandApdu) {
+        HceContent content = HceService.getContent();
+        // Reject the selection when HCE is inactive or has nothing to share
+        if (!content.isServing()) {
+            if (HceService.isDebugLogging()) {
+                Log.d(TAG, "HCE service inactive or no content, rejecting selection");
+            }
+            return ApduUtil.A_FILE_NOT_FOUND;
+        }
+
+        if (HceService.isDebugLogging()) {
+            Log.d(TAG, "NDEF application selected");
+        }
+        state = State.SELECTED;
+        staging = null;
+        // Fall back to an empty NDEF file when there is nothing to share
+        selectedNdefFile = content.ndefFile != null ? content.ndefFile : NdefFile.EMPTY;
+        return ApduUtil.A_OK;
+    }
+
+    @Override
+    protected void onDeselect() {
+        state = State.SELECTED;
+        selectedNdefFile = NdefFile.EMPTY;
+        // A write interrupted before its NLEN was written is dropped
+        staging = null;
+    }
+
+    private byte[] selectFile(byte[] commandApdu) {
+        if (!HceService.getContent().isServing()) {
+            return ApduUtil.A_FILE_NOT_FOUND;
+        }
+
+        if (ApduUtil.isSelectCapabilityContainer(commandApdu)) {
+            if (HceService.isDebugLogging()) {
+                Log.d(TAG, "Capability Container selected");
+            }
+            state = State.CAPABILITY_CONTAINER_SELECTED;
+            return ApduUtil.A_OK;
+        }
+
+        if (ApduUtil.isSelectNdefFile(commandApdu)) {
+            if (HceService.isDebugLogging()) {
+                Log.d(TAG, "NDEF file selected");
+            }
+            state = State.NDEF_FILE_SELECTED;
+            return ApduUtil.A_OK;
+        }
+
+        return onUnknownCommand(commandApdu);
+    }
+
+    private byte[] readBinary(byte[] commandApdu) {
+        // Stop answering as soon as HCE is stopped, even in the middle of a transaction
+        if (!HceService.getContent().isServing()) {
+            return ApduUtil.A_FILE_NOT_FOUND;
+        }
+        if (commandApdu.length < 5) {
+            return onUnknownCommand(commandApdu);
+        }
+
+        switch (state) {
+            case CAPABILITY_CONTAINER_SELECTED:
+                return selectedNdefFile.readCapabilityContainer(commandApdu);
+            case NDEF_FILE_SELECTED:
+                return selectedNdefFile.readImage(commandApdu);
+            default:
+                if (HceService.isDebugLogging()) {
+                    Log.w(TAG, "READ command but no file selected");
+                }
+                return ApduUtil.A_FILE_NOT_FOUND;
+        }
+    }
+
+    /**
+     * Write into the staging image. Readers follow the NFC Forum procedure: NLEN set to 0, message
+     * written, then NLEN set to the message length, so the write of a non-zero NLEN commits the
+     * message as a whole and the NDEF file is never served half written.
+     */
+    private byte[] updateBinary(byte[] commandApdu) {
+        if (!HceService.getContent().isServing()) {
+            return ApduUtil.A_FILE_NOT_FOUND;
+        }
+        if (state != State.NDEF_FILE_SELECTED || !selectedNdefFile.writable) {
+            return ApduUtil.A_SECURITY_STATUS_NOT_SATISFIED;
+        }
+
+        int length = ApduUtil.parseLc(commandApdu);
+        if (length <= 0) {
+            return ApduUtil.A_WRONG_LENGTH;
+        }
+        if ((commandApdu[2] & 0x80) != 0) {
+            return ApduUtil.A_WRONG_PARAMETERS;
+        }
+        int offset = ((commandApdu[2] & 0xFF) << 8) | (commandApdu[3] & 0xFF);
+        if (offset + length > selectedNdefFile.capacity) {
+            return ApduUtil.A_WRONG_PARAMETERS;
+        }
+
+        if (staging == null) {
+            // The served image may exceed the capacity advertised for writes (0xFFFE at most), keep what fits
+            staging = new byte[selectedNdefFile.capacity];
+            System.arraycopy(selectedNdefFile.image, 0, staging, 0, Math.min(selectedNdefFile.image.length, staging.length));
+        }
+        System.arraycopy(commandApdu, ApduUtil.getDataOffset(commandApdu), staging, offset, length);
+
+        if (offset < 2) {
+            int nlen = ((staging[0] & 0xFF) << 8) | (staging[1] & 0xFF);
+            if (nlen > 0) {
+                if (2 + nlen > staging.length) {
+                    return ApduUtil.A_WRONG_LENGTH;
+                }
+                byte[] image = new byte[2 + nlen];
+                System.arraycopy(staging, 0, image, 0, image.length);
+                staging = null;
+                selectedNdefFile = HceService.commitNdefWrite(image);
+                if (HceService.isDebugLogging()) {
+                    Log.d(TAG, "NDEF file written, version: " + selectedNdefFile.version + ", size: " + image.length);
+                }
+            }
+        }
+        return ApduUtil.A_OK;
+    }
+
+    @Override
+    protected byte[] onUnknownCommand(byte[] commandApdu) {
+        if (HceService.isDebugLogging()) {
+            Log.w(TAG, "Unknown APDU command: " + ApduUtil.bytesToHex(commandApdu));
+        }
+        // Only the interindustry class 0x00 is handled
+        return commandApdu[0] != 0x00 ? ApduUtil.A_CLA_NOT_SUPPORTED : ApduUtil.A_ERROR;
+    }
+}
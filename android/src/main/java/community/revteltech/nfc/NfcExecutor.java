@@ -0,0 +1,107 @@
+package community.revteltech.nfc;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread running the tag I/O of {@link NfcManager} in submission order.
+ *
+ * Blocking radio operations run here instead of under the module lock, so calls which do not
+ * touch the tag return right away. Queued tasks are cancelled per owning request, and the task in
+ * progress is interrupted by closing its tag technology from another thread.
+ */
+final class NfcExecutor {
+    private static final String LOG_TAG = "NfcExecutor";
+
+    private final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+        Thread thread = new Thread(runnable, "NfcManager-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final class Task implements Runnable {
+        // Request the task works for, its tasks are cancelled with it
+        final Object owner;
+        final Runnable task;
+        // Run instead of the task when it is cancelled before it starts
+        final Runnable onCancel;
+
+        Task(Object owner, Runnable task, Runnable onCancel) {
+            this.owner = owner;
+            this.task = task;
+            this.onCancel = onCancel;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                // Keep the thread, a failing task only fails its own call
+                Log.w(LOG_TAG, "task failed", ex);
+            }
+        }
+    }
+
+    /** Run a task which is never cancelled, such as the handling of a discovered tag */
+    void execute(Runnable task) {
+        execute(null, task, null);
+    }
+
+    /**
+     * @param owner the request the task works for, null for a task which is never cancelled
+     */
+    void execute(Object owner, Runnable task, Runnable onCancel) {
+        executor.execute(new Task(owner, task, onCancel));
+    }
+
+    /**
+     * Remove the tasks of the owner which have not started yet, and run their onCancel.
+     * The tasks of other owners, and the discovered tags, stay queued.
+     * @return the number of tasks cancelled
+     */
+    int cancelPending(Object owner) {
+        if (owner == null) {
+            return 0;
+        }
+        List<Task> cancelled = new ArrayList<>();
+        for (Runnable runnable : queue) {
+            Task task = (Task) runnable;
+            // The NFC thread may take the task meanwhile, only the side which removes it settles it
+            if (task.owner == owner && queue.remove(task)) {
+                cancelled.add(task);
+            }
+        }
+        cancel(cancelled);
+        return cancelled.size();
+    }
+
+    void shutdown() {
+        List<Runnable> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        List<Task> cancelled = new ArrayList<>();
+        for (Runnable runnable : pending) {
+            cancelled.add((Task) runnable);
+        }
+        cancel(cancelled);
+        executor.shutdown();
+    }
+
+    private static void cancel(List<Task> tasks) {
+        for (Task task : tasks) {
+            if (task.onCancel != null) {
+                try {
+                    task.onCancel.run();
+                } catch (RuntimeException ex) {
+                    Log.w(LOG_TAG, "cancel failed", ex);
+                }
+            }
+        }
+    }
+}
@@ -9,9 +9,12 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.nfc.NfcAdapter;
 import android.nfc.cardemulation.CardEmulation;
 import androidx.core.content.ContextCompat;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -39,10 +42,10 @@ import android.nfc.tech.MifareUltralight;
 import android.os.Parcelable;
 import android.os.Bundle;
 
-import org.json.JSONObject;
-import org.json.JSONException;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 class NfcManager extends ReactContextBaseJavaModule implements ActivityEventListener, LifecycleEventListener {
     private static final String LOG_TAG = "ReactNativeNfcManager";
@@ -51,9 +54,18 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
     private final Context context;
     private Boolean isForegroundEnabled = false;
     private Boolean isResumed = false;
-    private WriteNdefRequest writeNdefRequest = null;
-    private TagTechnologyRequest techRequest = null;
-    private Tag tag = null;
+    // Requests waiting for a tag, and the tech request holding one
+    private final RequestQueue requestQueue = new RequestQueue();
+    private final Handler requestTimeoutHandler = new Handler(Looper.getMainLooper());
+    // The current request and the last tag, read without locking by the calls which do no tag I/O
+    private final AtomicReference<TagTechnologyRequest> currentTechRequest = new AtomicReference<>();
+    // Continuous session taking every discovered tag, in place of the request queue
+    private volatile TagSession tagSession = null;
+    // Run on each tag right after its tech request connects
+    private volatile TagScript tagScript = null;
+    private volatile Tag tag = null;
+    // Tag I/O of the calls, in call order
+    private final NfcExecutor nfcExecutor = new NfcExecutor();
     private WritableMap bgTag = null;
     // Use NFC reader mode instead of listening to a dispatch
     private Boolean isReaderModeEnabled = false;
@@ -61,7 +73,9 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
     private int readerModeDelay = 0;
     private static final String ERR_CANCEL = "cancelled";
     private static final String ERR_NOT_REGISTERED = "you should requestTagEvent first";
+    // The request queue is full, it holds a single request unless setRequestQueueCapacity raised it
     private static final String ERR_MULTI_REQ = "You can only issue one request at a time";
+    private static final String ERR_TIMEOUT = "timeout";
     private static final String ERR_NO_TECH_REQ = "no tech request available";
     private static final String ERR_NO_REFERENCE = "no reference available";
     private static final String ERR_TRANSCEIVE_FAIL = "transceive fail";
@@ -69,6 +83,10 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
     private static final String ERR_GET_ACTIVITY_FAIL = "fail to get current activity";
     private static final String ERR_NO_NFC_SUPPORT = "no nfc support";
     private final NfcAdapter nfcAdapter;
+    // HCE APDU trace, drained on the main thread every apduTraceIntervalMs
+    private final Handler apduTraceHandler = new Handler(Looper.getMainLooper());
+    private volatile ApduTrace apduTrace = null;
+    private int apduTraceIntervalMs = 100;
 
     static class WriteNdefRequest {
         NdefMessage message;
@@ -91,6 +109,20 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         reactContext.addLifecycleEventListener(this);
         Log.d(LOG_TAG, "NfcManager created");
         this.nfcAdapter = NfcAdapter.getDefaultAdapter(reactContext);
+        LocalBroadcastManager.getInstance(reactContext)
+                .registerReceiver(hceReceiver, new IntentFilter(HceService.ACTION_NDEF_WRITTEN));
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        // JS is going away, the recorded entries are dropped instead of emitted
+        stopApduTrace(false);
+        apduTraceHandler.removeCallbacksAndMessages(null);
+        nfcExecutor.shutdown();
+        // The mode is static, a reloaded bundle starts again with arrays
+        ByteEncoding.setMode(ByteEncoding.ARRAY);
+        LocalBroadcastManager.getInstance(context).unregisterReceiver(hceReceiver);
     }
 
     @NonNull
@@ -112,100 +144,215 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         return constants;
     }
 
-    private boolean hasPendingRequest() {
-        return writeNdefRequest != null || techRequest != null;
+    interface TechTask {
+        void run(TagTechnologyRequest techRequest);
     }
 
-    @ReactMethod
-    public void cancelTechnologyRequest(Callback callback) {
-        synchronized(this) {
-            if (techRequest != null) {
-                techRequest.close();
-                try {
-                    techRequest.invokePendingCallbackWithError(ERR_CANCEL);
-                } catch (RuntimeException ex) {
-                    // the pending callback might already been invoked when there is an ongoing
-                    // connected tag, bypass this case explicitly
+    // Run tag I/O on the NFC thread, with the tech request current when the task is queued.
+    // The task belongs to that request and is cancelled with it. It fails if the request, or the tag
+    // it holds (a tag session connects the same request to every tag), changed before it starts.
+    private void runTechTask(Callback callback, TechTask task) {
+        TagTechnologyRequest owner = currentTechRequest.get();
+        Tag ownerTag = owner != null ? owner.getTagHandle() : null;
+        nfcExecutor.execute(owner, () -> {
+            if (owner != null && (currentTechRequest.get() != owner || owner.getTagHandle() != ownerTag)) {
+                callback.invoke(ERR_NO_TECH_REQ);
+                return;
+            }
+            task.run(owner);
+        }, () -> callback.invoke(ERR_CANCEL));
+    }
+
+    // Queue a request until a compatible tag is discovered, false when the queue is full
+    private boolean enqueueRequest(TagTechnologyRequest techRequest, WriteNdefRequest ndefRequest, ReadableMap options) {
+        int priority = options != null && options.hasKey("priority") ? options.getInt("priority") : 0;
+        int timeoutMs = options != null && options.hasKey("timeout") ? options.getInt("timeout") : 0;
+        boolean waitForCompatibleTag = options != null && options.hasKey("waitForCompatibleTag")
+                && options.getBoolean("waitForCompatibleTag");
+
+        RequestQueue.Entry entry = new RequestQueue.Entry(techRequest, ndefRequest, priority, waitForCompatibleTag);
+        if (timeoutMs > 0) {
+            entry.timeout = () -> {
+                if (requestQueue.remove(entry)) {
+                    entry.fail(ERR_TIMEOUT);
                 }
-                techRequest = null;
+            };
+        }
+        synchronized (requestQueue) {
+            // startTagSession publishes the session under the same lock
+            if (!requestQueue.offer(entry, tagSession != null, currentTechRequest)) {
+                return false;
             }
-            callback.invoke();
+        }
+        if (entry.timeout != null) {
+            requestTimeoutHandler.postDelayed(entry.timeout, timeoutMs);
+        }
+        return true;
+    }
+
+    private void cancelRequestTimeout(RequestQueue.Entry entry) {
+        if (entry.timeout != null) {
+            requestTimeoutHandler.removeCallbacks(entry.timeout);
         }
     }
 
     @ReactMethod
-    public void requestTechnology(ReadableArray techs, Callback callback) {
-        synchronized(this) {
-            if (!isForegroundEnabled) {
-                callback.invoke(ERR_NOT_REGISTERED);
+    public void setRequestQueueCapacity(int capacity, Callback callback) {
+        requestQueue.setCapacity(capacity);
+        callback.invoke();
+    }
+
+    @ReactMethod
+    public void startTagSession(ReadableArray techs, ReadableMap options, Callback callback) {
+        if (!isForegroundEnabled) {
+            callback.invoke(ERR_NOT_REGISTERED);
+            return;
+        }
+
+        List<TagSession.Command> commands;
+        try {
+            commands = TagSession.parseCommands(options.hasKey("commands") ? options.getArray("commands") : null);
+        } catch (Exception ex) {
+            callback.invoke("startTagSession fail: " + ex.getMessage());
+            return;
+        }
+
+        TagSession session = new TagSession(techs.toArrayList(), commands);
+        synchronized (requestQueue) {
+            if (!requestQueue.isEmpty() || !currentTechRequest.compareAndSet(null, session.techRequest)) {
+                callback.invoke(ERR_MULTI_REQ);
                 return;
             }
+            tagSession = session;
+        }
+        callback.invoke();
+    }
 
-            if (hasPendingRequest()) {
-                callback.invoke(ERR_MULTI_REQ);
-            } else {
-                techRequest = new TagTechnologyRequest(techs.toArrayList(), callback);
+    @ReactMethod
+    public void stopTagSession(Callback callback) {
+        TagSession session = tagSession;
+        tagSession = null;
+        if (session != null) {
+            currentTechRequest.compareAndSet(session.techRequest, null);
+            session.techRequest.close();
+        }
+        callback.invoke();
+    }
+
+    @ReactMethod
+    public void registerTagScript(ReadableArray steps, Callback callback) {
+        try {
+            tagScript = TagScript.compile(steps);
+            callback.invoke();
+        } catch (Exception ex) {
+            callback.invoke("registerTagScript fail: " + ex.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void clearTagScript(Callback callback) {
+        tagScript = null;
+        callback.invoke();
+    }
+
+    @ReactMethod
+    public void cancelTechnologyRequest(Callback callback) {
+        // The session tech request is the current one, closed below
+        tagSession = null;
+
+        List<RequestQueue.Entry> queued;
+        TagTechnologyRequest techRequest;
+        // Under the queue lock, a request handed a tag meanwhile is either still queued or already current
+        synchronized (requestQueue) {
+            queued = requestQueue.removeAll(true);
+            techRequest = currentTechRequest.getAndSet(null);
+        }
+        for (RequestQueue.Entry entry : queued) {
+            cancelRequestTimeout(entry);
+            entry.fail(ERR_CANCEL);
+        }
+
+        if (techRequest != null) {
+            // Fail the queued tag I/O, and interrupt the one in progress by closing the tech
+            nfcExecutor.cancelPending(techRequest);
+            techRequest.close();
+            try {
+                techRequest.invokePendingCallbackWithError(ERR_CANCEL);
+            } catch (RuntimeException ex) {
+                // the pending callback might already been invoked when there is an ongoing
+                // connected tag, bypass this case explicitly
             }
         }
+        callback.invoke();
+    }
+
+    @ReactMethod
+    public void requestTechnology(ReadableArray techs, ReadableMap options, Callback callback) {
+        if (!isForegroundEnabled) {
+            callback.invoke(ERR_NOT_REGISTERED);
+            return;
+        }
+
+        if (!enqueueRequest(new TagTechnologyRequest(techs.toArrayList(), callback), null, options)) {
+            callback.invoke(ERR_MULTI_REQ);
+        }
     }
 
     @ReactMethod
     public void closeTechnology(Callback callback) {
-        synchronized(this) {
-            if (techRequest != null) {
-                techRequest.close();
-                techRequest = null;
-            }
-            callback.invoke();
+        TagTechnologyRequest techRequest = currentTechRequest.getAndSet(null);
+        if (techRequest != null) {
+            // Its queued tag I/O fails rather than running against the next request
+            nfcExecutor.cancelPending(techRequest);
+            techRequest.close();
         }
+        callback.invoke();
     }
 
     @ReactMethod
     public void getTag(Callback callback) {
-        synchronized (this) {
-            if (techRequest != null) {
-                Tag tag = techRequest.getTagHandle();
-                if (tag != null) {
-                    WritableMap parsed = tag2React(tag);
-                    if (Arrays.asList(tag.getTechList()).contains(Ndef.class.getName())) {
-                        try {
-                            Ndef ndef = Ndef.get(tag);
-                            parsed = ndef2React(ndef, new NdefMessage[]{ndef.getCachedNdefMessage()});
-                        } catch (Exception ex) {
-                            Log.d(LOG_TAG, ex.toString());
-                        }
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            Tag tag = techRequest.getTagHandle();
+            if (tag != null) {
+                WritableMap parsed = tag2React(tag);
+                if (Arrays.asList(tag.getTechList()).contains(Ndef.class.getName())) {
+                    try {
+                        Ndef ndef = Ndef.get(tag);
+                        parsed = ndef2React(ndef, new NdefMessage[]{ndef.getCachedNdefMessage()});
+                    } catch (Exception ex) {
+                        Log.d(LOG_TAG, ex.toString());
                     }
-                    callback.invoke(null, parsed);
-                } else {
-                    callback.invoke(ERR_NO_REFERENCE);
                 }
+                callback.invoke(null, parsed);
             } else {
-                callback.invoke(ERR_NO_TECH_REQ);
+                callback.invoke(ERR_NO_REFERENCE);
             }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
         }
     }
 
     @ReactMethod
     public void getCachedNdefMessage(Callback callback) {
-        synchronized(this) {
-            if (techRequest != null) {
-                try {
-                    Ndef ndef = Ndef.get(techRequest.getTagHandle());
-                    WritableMap parsed = ndef2React(ndef, new NdefMessage[] { ndef.getCachedNdefMessage() });
-                    callback.invoke(null, parsed);
-                } catch (Exception ex) {
-                    Log.d(LOG_TAG, ex.toString());
-                    callback.invoke(ex.toString());
-                }
-            } else {
-                callback.invoke(ERR_NO_TECH_REQ);
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            try {
+                Ndef ndef = Ndef.get(techRequest.getTagHandle());
+                WritableMap parsed = ndef2React(ndef, new NdefMessage[] { ndef.getCachedNdefMessage() });
+                callback.invoke(null, parsed);
+            } catch (Exception ex) {
+                Log.d(LOG_TAG, ex.toString());
+                callback.invoke(ex.toString());
             }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
         }
     }
 
     @ReactMethod
     public void getNdefMessage(Callback callback) {
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     Ndef ndef = Ndef.get(techRequest.getTagHandle());
@@ -218,36 +365,35 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void getNdefStatus(Callback callback) {
-        synchronized(this) {
-            if (techRequest != null) {
-                WritableMap writableMap = Arguments.createMap();
-                try {
-                    Ndef ndef = Ndef.get(techRequest.getTagHandle());
-                    int maxSize = ndef.getMaxSize();
-                    boolean isWritable = ndef.isWritable();
-                    boolean canMakeReadOnly = ndef.canMakeReadOnly();
-                    writableMap.putInt("maxSize", maxSize);
-                    writableMap.putBoolean("isWritable", isWritable);
-                    writableMap.putBoolean("canMakeReadOnly", canMakeReadOnly);
-                    callback.invoke(null, writableMap);
-                } catch (Exception ex) {
-                    Log.d(LOG_TAG, ex.toString());
-                    callback.invoke(ex.toString());
-                }
-            } else {
-                callback.invoke(ERR_NO_TECH_REQ);
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            WritableMap writableMap = Arguments.createMap();
+            try {
+                Ndef ndef = Ndef.get(techRequest.getTagHandle());
+                int maxSize = ndef.getMaxSize();
+                boolean isWritable = ndef.isWritable();
+                boolean canMakeReadOnly = ndef.canMakeReadOnly();
+                writableMap.putInt("maxSize", maxSize);
+                writableMap.putBoolean("isWritable", isWritable);
+                writableMap.putBoolean("canMakeReadOnly", canMakeReadOnly);
+                callback.invoke(null, writableMap);
+            } catch (Exception ex) {
+                Log.d(LOG_TAG, ex.toString());
+                callback.invoke(ex.toString());
             }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
         }
     }
 
     @ReactMethod
-    public void writeNdefMessage(ReadableArray rnArray, ReadableMap options, Callback callback) {
-        synchronized(this) {
+    public void writeNdefMessage(Dynamic rnArray, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
             boolean reconnectAfterWrite = options.getBoolean("reconnectAfterWrite");
             
             if (techRequest != null) {
@@ -256,7 +402,7 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
                     if (ndef == null) {
                         callback.invoke(ERR_API_NOT_SUPPORT);
                     } else {
-                        byte[] bytes = rnArrayToBytes(rnArray);
+                        byte[] bytes = ByteEncoding.fromReact(rnArray);
                         ndef.writeNdefMessage(new NdefMessage(bytes));
                         if (reconnectAfterWrite) {
                             ndef.close();
@@ -272,21 +418,21 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
-    public void formatNdef(ReadableArray rnArray, ReadableMap options, Callback callback) {
+    public void formatNdef(Dynamic rnArray, ReadableMap options, Callback callback) {
         boolean readOnly = options.getBoolean("readOnly");
 
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     NdefFormatable ndef = (NdefFormatable)techRequest.getTechHandle();
                     if (ndef == null) {
                         callback.invoke(ERR_API_NOT_SUPPORT);
                     } else {
-                        byte[] bytes = rnArrayToBytes(rnArray);
+                        byte[] bytes = ByteEncoding.fromReact(rnArray);
                         NdefMessage msg = new NdefMessage(bytes);
                         if (readOnly) {
                             ndef.formatReadOnly(msg);
@@ -302,13 +448,14 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
-    private void mifareClassicAuthenticate(char type, int sector, ReadableArray key, Callback callback) {
+    private void mifareClassicAuthenticate(TagTechnologyRequest techRequest, char type, int sector, Dynamic key, Callback callback) {
         if (techRequest != null) {
             try {
                 MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
+                byte[] keyBytes = ByteEncoding.fromReact(key);
                 if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
                     // Not a mifare card, fail
                     callback.invoke("mifareClassicAuthenticate fail: TYPE_UNKNOWN");
@@ -318,18 +465,18 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
                     @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicAuthenticate fail: invalid sector %d (max %d)", sector, mifareTag.getSectorCount());
                     callback.invoke(msg);
                     return;
-                } else if (key.size() != 6) {
+                } else if (keyBytes.length != 6) {
                     // Invalid key length
-                    @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicAuthenticate fail: invalid key (needs length 6 but has %d characters)", key.size());
+                    @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicAuthenticate fail: invalid key (needs length 6 but has %d characters)", keyBytes.length);
                     callback.invoke(msg);
                     return;
                 }
 
                 boolean result;
                 if (type == 'A') {
-                    result = mifareTag.authenticateSectorWithKeyA(sector, rnArrayToBytes(key));
+                    result = mifareTag.authenticateSectorWithKeyA(sector, keyBytes);
                 } else {
-                    result = mifareTag.authenticateSectorWithKeyB(sector, rnArrayToBytes(key));
+                    result = mifareTag.authenticateSectorWithKeyB(sector, keyBytes);
                 }
 
                 if (!result) {
@@ -349,170 +496,459 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
     }
 
     @ReactMethod
-    public void mifareClassicAuthenticateA(int sector, ReadableArray key, Callback callback) {
-        synchronized(this) {
-            mifareClassicAuthenticate('A', sector, key, callback);
+    public void mifareClassicAuthenticateA(int sector, Dynamic key, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            mifareClassicAuthenticate(techRequest, 'A', sector, key, callback);
+        });
+    }
+
+    @ReactMethod
+    public void mifareClassicAuthenticateB(int sector, Dynamic key, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            mifareClassicAuthenticate(techRequest, 'B', sector, key, callback);
+        });
+    }
+
+    @ReactMethod
+    public void mifareClassicGetBlockCountInSector(int sectorIndex, Callback callback) {
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            try {
+                MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
+                if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
+                    // Not a mifare card, fail
+                    callback.invoke("mifareClassicGetBlockCountInSector fail: TYPE_UNKNOWN");
+                    return;
+                } else if (sectorIndex >= mifareTag.getSectorCount()) {
+                    // Check if in range
+                    @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicGetBlockCountInSector fail: invalid sector %d (max %d)", sectorIndex, mifareTag.getSectorCount());
+                    callback.invoke(msg);
+                    return;
+                }
+
+                callback.invoke(null, mifareTag.getBlockCountInSector(sectorIndex));
+            } catch (Exception ex) {
+                callback.invoke("mifareClassicGetBlockCountInSector fail: " + ex);
+            }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
         }
     }
 
     @ReactMethod
-    public void mifareClassicAuthenticateB(int sector, ReadableArray key, Callback callback) {
-        synchronized(this) {
-            mifareClassicAuthenticate('B', sector, key, callback);
+    public void mifareClassicGetSectorCount(Callback callback) {
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            try {
+                MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
+                if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
+                    // Not a mifare card, fail
+                    callback.invoke("mifareClassicGetSectorCount fail: TYPE_UNKNOWN");
+                    return;
+                }
+
+                callback.invoke(null, mifareTag.getSectorCount());
+            } catch (Exception ex) {
+                callback.invoke("mifareClassicGetSectorCount fail: " + ex);
+            }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
         }
     }
 
     @ReactMethod
-    public void mifareClassicGetBlockCountInSector(int sectorIndex, Callback callback) {
-        synchronized(this) {
+    public void mifareClassicSectorToBlock(int sectorIndex, Callback callback) {
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            try {
+                MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
+                if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
+                    // Not a mifare card, fail
+                    callback.invoke("mifareClassicSectorToBlock fail: TYPE_UNKNOWN");
+                    return;
+                } else if (sectorIndex >= mifareTag.getSectorCount()) {
+                    // Check if in range
+                    @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicSectorToBlock fail: invalid sector %d (max %d)", sectorIndex, mifareTag.getSectorCount());
+                    callback.invoke(msg);
+                    return;
+                }
+
+                callback.invoke(null, mifareTag.sectorToBlock(sectorIndex));
+            } catch (Exception ex) {
+                callback.invoke("mifareClassicSectorToBlock fail: " + ex);
+            }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
+        }
+    }
+
+    @ReactMethod
+    public void mifareClassicReadBlock(int blockIndex, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
                     if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
                         // Not a mifare card, fail
-                        callback.invoke("mifareClassicGetBlockCountInSector fail: TYPE_UNKNOWN");
+                        callback.invoke("mifareClassicReadBlock fail: TYPE_UNKNOWN");
                         return;
-                    } else if (sectorIndex >= mifareTag.getSectorCount()) {
+                    } else if (blockIndex >= mifareTag.getBlockCount()) {
                         // Check if in range
-                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicGetBlockCountInSector fail: invalid sector %d (max %d)", sectorIndex, mifareTag.getSectorCount());
+                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicReadBlock fail: invalid block %d (max %d)", blockIndex, mifareTag.getBlockCount());
                         callback.invoke(msg);
                         return;
                     }
 
-                    callback.invoke(null, mifareTag.getBlockCountInSector(sectorIndex));
+                    byte[] buffer = mifareTag.readBlock(blockIndex);
+
+                    callback.invoke(null, ByteEncoding.toReact(buffer));
+                } catch (TagLostException ex) {
+                    callback.invoke("mifareClassicReadBlock fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareClassicGetBlockCountInSector fail: " + ex);
+                    callback.invoke("mifareClassicReadBlock fail: " + ex);
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
-    public void mifareClassicGetSectorCount(Callback callback) {
-        synchronized(this) {
+    public void mifareClassicReadSector(int sectorIndex, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
                     if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
                         // Not a mifare card, fail
-                        callback.invoke("mifareClassicGetSectorCount fail: TYPE_UNKNOWN");
+                        callback.invoke("mifareClassicReadSector fail: TYPE_UNKNOWN");
+                        return;
+                    } else if (sectorIndex >= mifareTag.getSectorCount()) {
+                        // Check if in range
+                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicReadSector fail: invalid sector %d (max %d)", sectorIndex, mifareTag.getSectorCount());
+                        callback.invoke(msg);
                         return;
                     }
 
-                    callback.invoke(null, mifareTag.getSectorCount());
+                    int blocks = mifareTag.getBlockCountInSector(sectorIndex);
+                    int firstBlock = mifareTag.sectorToBlock(sectorIndex);
+                    byte[] result = new byte[blocks * MifareClassic.BLOCK_SIZE];
+                    for (int i = 0; i < blocks; i++) {
+                        byte[] buffer = mifareTag.readBlock(firstBlock + i);
+                        System.arraycopy(buffer, 0, result, i * MifareClassic.BLOCK_SIZE, MifareClassic.BLOCK_SIZE);
+                    }
+
+                    callback.invoke(null, ByteEncoding.toReact(result));
+                } catch (TagLostException ex) {
+                    callback.invoke("mifareClassicReadSector fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareClassicGetSectorCount fail: " + ex);
+                    callback.invoke("mifareClassicReadSector fail: " + ex);
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
+    /**
+     * Authenticate and read every requested sector in one call. keyMap lists the candidate keys per
+     * sector index, keys under "default" are tried for every sector.
+     */
     @ReactMethod
-    public void mifareClassicSectorToBlock(int sectorIndex, Callback callback) {
-        synchronized(this) {
+    public void mifareClassicReadAll(ReadableMap keyMap, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
                     if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
                         // Not a mifare card, fail
-                        callback.invoke("mifareClassicSectorToBlock fail: TYPE_UNKNOWN");
+                        callback.invoke("mifareClassicReadAll fail: TYPE_UNKNOWN");
                         return;
-                    } else if (sectorIndex >= mifareTag.getSectorCount()) {
-                        // Check if in range
-                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicSectorToBlock fail: invalid sector %d (max %d)", sectorIndex, mifareTag.getSectorCount());
-                        callback.invoke(msg);
+                    }
+
+                    int sectorCount = mifareTag.getSectorCount();
+                    int[] sectors;
+                    if (options.hasKey("sectors") && !options.isNull("sectors")) {
+                        ReadableArray requested = options.getArray("sectors");
+                        sectors = new int[requested.size()];
+                        for (int i = 0; i < sectors.length; i++) {
+                            sectors[i] = requested.getInt(i);
+                            if (sectors[i] < 0 || sectors[i] >= sectorCount) {
+                                // Check if in range
+                                @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicReadAll fail: invalid sector %d (max %d)", sectors[i], sectorCount);
+                                callback.invoke(msg);
+                                return;
+                            }
+                        }
+                    } else {
+                        sectors = new int[sectorCount];
+                        for (int i = 0; i < sectorCount; i++) {
+                            sectors[i] = i;
+                        }
+                    }
+
+                    List<byte[]>[] keys = readMifareClassicKeys(keyMap, sectorCount);
+                    if (keys == null) {
+                        callback.invoke("mifareClassicReadAll fail: invalid key (needs length 6)");
                         return;
                     }
 
-                    callback.invoke(null, mifareTag.sectorToBlock(sectorIndex));
+                    String uid = Util.bytesToHex(techRequest.getTagHandle().getId());
+                    MifareUtil.ReadAllResult dump = MifareUtil.readAll(MifareUtil.classicTag(mifareTag), techRequest.mKeyCache, uid, sectors, keys,
+                            hasMifareClassicKeyType(options, "A"), hasMifareClassicKeyType(options, "B"));
+
+                    WritableArray sectorResults = Arguments.createArray();
+                    for (MifareUtil.SectorResult sector : dump.sectors) {
+                        WritableMap sectorResult = Arguments.createMap();
+                        sectorResult.putInt("sector", sector.sector);
+                        sectorResult.putString("status", sector.status);
+                        sectorResult.putInt("offset", sector.offset);
+                        sectorResult.putInt("length", sector.length);
+                        if (sector.key != null) {
+                            sectorResult.putString("keyType", sector.key.keyA ? "A" : "B");
+                            ByteEncoding.putBytes(sectorResult, "key", sector.key.key);
+                        }
+                        sectorResults.pushMap(sectorResult);
+                    }
+
+                    WritableMap result = Arguments.createMap();
+                    ByteEncoding.putBytes(result, "data", dump.data);
+                    result.putArray("sectors", sectorResults);
+                    callback.invoke(null, result);
+                } catch (TagLostException ex) {
+                    callback.invoke("mifareClassicReadAll fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareClassicSectorToBlock fail: " + ex);
+                    callback.invoke("mifareClassicReadAll fail: " + ex);
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
+    /**
+     * Apply a list of block writes and value operations in one call, authenticating each sector once.
+     * Resolves with the status of every operation, so the caller knows exactly which ones committed.
+     */
     @ReactMethod
-    public void mifareClassicReadBlock(int blockIndex, Callback callback) {
-        synchronized(this) {
+    public void mifareClassicWriteAll(ReadableArray operations, ReadableMap keyMap, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
                     if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
                         // Not a mifare card, fail
-                        callback.invoke("mifareClassicReadBlock fail: TYPE_UNKNOWN");
+                        callback.invoke("mifareClassicWriteAll fail: TYPE_UNKNOWN");
                         return;
-                    } else if (blockIndex >= mifareTag.getBlockCount()) {
-                        // Check if in range
-                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicReadBlock fail: invalid block %d (max %d)", blockIndex, mifareTag.getBlockCount());
-                        callback.invoke(msg);
+                    }
+
+                    MifareUtil.BlockOperation[] blockOperations = new MifareUtil.BlockOperation[operations.size()];
+                    for (int i = 0; i < blockOperations.length; i++) {
+                        ReadableMap operation = operations.getMap(i);
+                        String type = operation.hasKey("type") ? operation.getString("type") : MifareUtil.OP_WRITE;
+                        int block = operation.getInt("block");
+                        int transferBlock = operation.hasKey("transferBlock") ? operation.getInt("transferBlock") : block;
+                        String error = null;
+                        byte[] data = null;
+                        int value = 0;
+
+                        if (block < 0 || block >= mifareTag.getBlockCount()) {
+                            error = String.format(Locale.ROOT, "invalid block %d (max %d)", block, mifareTag.getBlockCount());
+                        } else if (MifareUtil.OP_WRITE.equals(type)) {
+                            data = ByteEncoding.fromReact(operation, "data");
+                            if (data.length != MifareClassic.BLOCK_SIZE) {
+                                error = String.format(Locale.ROOT, "invalid block size %d (should be %d)", data.length, MifareClassic.BLOCK_SIZE);
+                            }
+                        } else if (MifareUtil.OP_INCREMENT.equals(type) || MifareUtil.OP_DECREMENT.equals(type) || MifareUtil.OP_RESTORE.equals(type)) {
+                            value = operation.hasKey("value") ? operation.getInt("value") : 0;
+                            if (value < 0) {
+                                error = "invalid value " + value;
+                            } else if (transferBlock < 0 || transferBlock >= mifareTag.getBlockCount()
+                                    || mifareTag.blockToSector(transferBlock) != mifareTag.blockToSector(block)) {
+                                // The transfer has to happen within the authenticated sector
+                                error = "invalid transfer block " + transferBlock;
+                            }
+                        } else {
+                            error = "invalid operation type " + type;
+                        }
+
+                        if (error != null) {
+                            callback.invoke("mifareClassicWriteAll fail: operation " + i + ": " + error);
+                            return;
+                        }
+                        blockOperations[i] = new MifareUtil.BlockOperation(type, block, data, value, transferBlock);
+                    }
+
+                    List<byte[]>[] keys = readMifareClassicKeys(keyMap, mifareTag.getSectorCount());
+                    if (keys == null) {
+                        callback.invoke("mifareClassicWriteAll fail: invalid key (needs length 6)");
                         return;
                     }
 
-                    byte[] buffer = mifareTag.readBlock(blockIndex);
+                    boolean verify = options.hasKey("verify") && options.getBoolean("verify");
+                    boolean stopOnError = !options.hasKey("stopOnError") || options.getBoolean("stopOnError");
+                    String uid = Util.bytesToHex(techRequest.getTagHandle().getId());
+                    String[] statuses = MifareUtil.writeAll(MifareUtil.classicTag(mifareTag), techRequest.mKeyCache, uid, blockOperations, keys,
+                            hasMifareClassicKeyType(options, "A"), hasMifareClassicKeyType(options, "B"), verify, stopOnError);
+
+                    WritableArray results = Arguments.createArray();
+                    int committed = 0;
+                    for (String status : statuses) {
+                        results.pushString(status);
+                        if (MifareUtil.OP_COMMITTED.equals(status)) {
+                            committed++;
+                        }
+                    }
+                    WritableMap result = Arguments.createMap();
+                    result.putArray("statuses", results);
+                    result.putInt("committed", committed);
+                    callback.invoke(null, result);
+                } catch (Exception ex) {
+                    callback.invoke("mifareClassicWriteAll fail: " + ex);
+                }
+            } else {
+                callback.invoke(ERR_NO_TECH_REQ);
+            }
+        });
+    }
 
-                    WritableArray result = bytesToRnArray(buffer);
+    @ReactMethod
+    public void dumpTag(ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            if (techRequest != null) {
+                try {
+                    List<byte[]>[] keys = readTagDumperKeys(techRequest, options);
+                    if (keys == null) {
+                        callback.invoke("dumpTag fail: invalid key (needs length 6)");
+                        return;
+                    }
+
+                    TagSnapshot snapshot = TagDumper.dump(techRequest.getTechHandle(), techRequest.mKeyCache, techRequest.getTagHandle().getId(), keys,
+                            hasMifareClassicKeyType(options, "A"), hasMifareClassicKeyType(options, "B"));
+                    int unreadable = 0;
+                    for (int unit = 0; unit < snapshot.getUnitCount(); unit++) {
+                        if (!snapshot.hasAccess(unit, TagSnapshot.UNIT_READ)) {
+                            unreadable++;
+                        }
+                    }
+
+                    WritableMap result = Arguments.createMap();
+                    ByteEncoding.putBytes(result, "snapshot", snapshot.toByteArray());
+                    result.putInt("unitSize", snapshot.unitSize);
+                    result.putInt("unitCount", snapshot.getUnitCount());
+                    result.putInt("unreadable", unreadable);
                     callback.invoke(null, result);
                 } catch (TagLostException ex) {
-                    callback.invoke("mifareClassicReadBlock fail: TAG_LOST");
+                    callback.invoke("dumpTag fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareClassicReadBlock fail: " + ex);
+                    callback.invoke("dumpTag fail: " + ex);
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
-    public void mifareClassicReadSector(int sectorIndex, Callback callback) {
-        synchronized(this) {
+    public void restoreTag(Dynamic snapshotBytes, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
-                    MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
-                    if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
-                        // Not a mifare card, fail
-                        callback.invoke("mifareClassicReadSector fail: TYPE_UNKNOWN");
-                        return;
-                    } else if (sectorIndex >= mifareTag.getSectorCount()) {
-                        // Check if in range
-                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicReadSector fail: invalid sector %d (max %d)", sectorIndex, mifareTag.getSectorCount());
-                        callback.invoke(msg);
+                    TagSnapshot snapshot = TagSnapshot.fromByteArray(ByteEncoding.fromReact(snapshotBytes));
+                    List<byte[]>[] keys = readTagDumperKeys(techRequest, options);
+                    if (keys == null) {
+                        callback.invoke("restoreTag fail: invalid key (needs length 6)");
                         return;
                     }
 
-                    WritableArray result = Arguments.createArray();
-                    int blocks = mifareTag.getBlockCountInSector(sectorIndex);
-                    byte[] buffer;
-                    for (int i = 0; i < blocks; i++) {
-                        buffer = mifareTag.readBlock(mifareTag.sectorToBlock(sectorIndex)+i);
-                        appendBytesToRnArray(result, buffer);
+                    TagDumper.RestoreResult restoreResult = TagDumper.restore(techRequest.getTechHandle(), techRequest.mKeyCache, techRequest.getTagHandle().getId(),
+                            snapshot, keys, hasMifareClassicKeyType(options, "A"), hasMifareClassicKeyType(options, "B"));
+                    WritableMap result = Arguments.createMap();
+                    result.putString("status", restoreResult.status);
+                    result.putInt("differing", restoreResult.differing);
+                    result.putInt("written", restoreResult.written);
+                    if (restoreResult.error != null) {
+                        result.putString("error", restoreResult.error);
                     }
-
                     callback.invoke(null, result);
                 } catch (TagLostException ex) {
-                    callback.invoke("mifareClassicReadSector fail: TAG_LOST");
+                    callback.invoke("restoreTag fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareClassicReadSector fail: " + ex);
+                    callback.invoke("restoreTag fail: " + ex);
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
+        });
+    }
+
+    // MIFARE Classic keys from options.keys, none for the other techs
+    @SuppressWarnings("unchecked")
+    private static List<byte[]>[] readTagDumperKeys(TagTechnologyRequest techRequest, ReadableMap options) {
+        TagTechnology tech = techRequest.getTechHandle();
+        if (!(tech instanceof MifareClassic)) {
+            return new List[0];
+        }
+        int sectorCount = ((MifareClassic) tech).getSectorCount();
+        if (!options.hasKey("keys") || options.isNull("keys")) {
+            List<byte[]>[] keys = new List[sectorCount];
+            Arrays.fill(keys, Collections.emptyList());
+            return keys;
+        }
+        return readMifareClassicKeys(options.getMap("keys"), sectorCount);
+    }
+
+    // Key types to try, both A and B unless options.keyTypes says otherwise
+    private static boolean hasMifareClassicKeyType(ReadableMap options, String keyType) {
+        if (!options.hasKey("keyTypes") || options.isNull("keyTypes")) {
+            return true;
+        }
+        return options.getArray("keyTypes").toArrayList().contains(keyType);
+    }
+
+    // Candidate keys per sector, the sector specific keys first, or null if a key is invalid
+    @SuppressWarnings("unchecked")
+    private static List<byte[]>[] readMifareClassicKeys(ReadableMap keyMap, int sectorCount) {
+        List<byte[]> defaultKeys = new ArrayList<>();
+        if (keyMap.hasKey("default") && !readMifareClassicKeys(keyMap.getArray("default"), defaultKeys)) {
+            return null;
+        }
+
+        List<byte[]>[] keys = new List[sectorCount];
+        for (int sector = 0; sector < sectorCount; sector++) {
+            String name = String.valueOf(sector);
+            if (keyMap.hasKey(name)) {
+                List<byte[]> sectorKeys = new ArrayList<>();
+                if (!readMifareClassicKeys(keyMap.getArray(name), sectorKeys)) {
+                    return null;
+                }
+                sectorKeys.addAll(defaultKeys);
+                keys[sector] = sectorKeys;
+            } else {
+                keys[sector] = defaultKeys;
+            }
+        }
+        return keys;
+    }
+
+    private static boolean readMifareClassicKeys(ReadableArray array, List<byte[]> keys) {
+        for (int i = 0; i < array.size(); i++) {
+            byte[] key = ByteEncoding.fromReact(array, i);
+            if (key.length != 6) {
+                return false;
+            }
+            keys.add(key);
         }
+        return true;
     }
 
     @ReactMethod
-    public void mifareClassicWriteBlock(int blockIndex, ReadableArray block, Callback callback) {
-        synchronized(this) {
+    public void mifareClassicWriteBlock(int blockIndex, Dynamic block, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
+                    byte[] buffer = ByteEncoding.fromReact(block);
                     if (mifareTag == null || mifareTag.getType() == MifareClassic.TYPE_UNKNOWN) {
                         // Not a mifare card, fail
                         callback.invoke("mifareClassicWriteBlock fail: TYPE_UNKNOWN");
@@ -522,14 +958,13 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
                         @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicWriteBlock fail: invalid block %d (max %d)", blockIndex, mifareTag.getBlockCount());
                         callback.invoke(msg);
                         return;
-                    } else if (block.size() != MifareClassic.BLOCK_SIZE) {
+                    } else if (buffer.length != MifareClassic.BLOCK_SIZE) {
                         // Wrong block count
-                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicWriteBlock fail: invalid block size %d (should be %d)", block.size(), MifareClassic.BLOCK_SIZE);
+                        @SuppressLint("DefaultLocale") String msg = String.format("mifareClassicWriteBlock fail: invalid block size %d (should be %d)", buffer.length, MifareClassic.BLOCK_SIZE);
                         callback.invoke(msg);
                         return;
                     }
 
-                    byte[] buffer = rnArrayToBytes(block);
                     mifareTag.writeBlock(blockIndex, buffer);
 
                     callback.invoke(null, true);
@@ -541,12 +976,12 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void mifareClassicIncrementBlock(int blockIndex, int value, Callback callback) {
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
@@ -572,12 +1007,12 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void mifareClassicDecrementBlock(int blockIndex, int value, Callback callback) {
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
@@ -603,12 +1038,12 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void mifareClassicTransferBlock(int blockIndex, Callback callback) {
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareClassic mifareTag = (MifareClassic) techRequest.getTechHandle();
@@ -634,52 +1069,212 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void mifareUltralightReadPages(int pageOffset, Callback callback) {
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     MifareUltralight techHandle = (MifareUltralight)techRequest.getTechHandle();
                     byte[] resultBytes = techHandle.readPages(pageOffset);
-                    WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                    callback.invoke(null, resultRnArray);
+                    callback.invoke(null, ByteEncoding.toReact(resultBytes));
+                } catch (TagLostException ex) {
+                    callback.invoke("mifareUltralight fail: TAG_LOST");
+                } catch (Exception ex) {
+                    callback.invoke("mifareUltralight fail: " + ex);
+                }
+            } else {
+                callback.invoke(ERR_NO_TECH_REQ);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void mifareUltralightReadRange(int startPage, int endPage, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            if (techRequest != null) {
+                if (startPage < 0 || startPage > endPage || endPage > MifareUltralightUtil.MAX_PAGE) {
+                    callback.invoke("mifareUltralight fail: invalid page range");
+                    return;
+                }
+
+                try {
+                    MifareUltralight techHandle = (MifareUltralight)techRequest.getTechHandle();
+                    byte[] resultBytes = MifareUltralightUtil.readRange(MifareUltralightUtil.ultralightTag(techHandle), startPage, endPage);
+                    callback.invoke(null, ByteEncoding.toReact(resultBytes));
+                } catch (TagLostException ex) {
+                    callback.invoke("mifareUltralight fail: TAG_LOST");
+                } catch (Exception ex) {
+                    callback.invoke("mifareUltralight fail: " + ex);
+                }
+            } else {
+                callback.invoke(ERR_NO_TECH_REQ);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void mifareUltralightWriteRange(int startPage, Dynamic rnArray, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            if (techRequest != null) {
+                try {
+                    byte[] bytes = ByteEncoding.fromReact(rnArray);
+                    if (bytes.length == 0 || bytes.length % MifareUltralight.PAGE_SIZE != 0) {
+                        callback.invoke("mifareUltralight fail: invalid data size " + bytes.length + " (should be a multiple of " + MifareUltralight.PAGE_SIZE + ")");
+                        return;
+                    }
+                    int endPage = startPage + bytes.length / MifareUltralight.PAGE_SIZE - 1;
+                    if (startPage < 0 || endPage > MifareUltralightUtil.MAX_PAGE) {
+                        callback.invoke("mifareUltralight fail: invalid page range");
+                        return;
+                    }
+
+                    boolean compatibilityWrite = options.hasKey("compatibilityWrite") && options.getBoolean("compatibilityWrite");
+                    boolean verify = options.hasKey("verify") && options.getBoolean("verify");
+                    MifareUltralight techHandle = (MifareUltralight)techRequest.getTechHandle();
+                    MifareUltralightUtil.WriteRangeResult writeResult = MifareUltralightUtil.writeRange(MifareUltralightUtil.ultralightTag(techHandle), startPage, bytes, compatibilityWrite, verify);
+
+                    WritableMap result = Arguments.createMap();
+                    result.putString("status", writeResult.status);
+                    result.putInt("written", writeResult.written);
+                    result.putInt("nextPage", startPage + writeResult.written / MifareUltralight.PAGE_SIZE);
+                    if (writeResult.error != null) {
+                        result.putString("error", writeResult.error);
+                    }
+                    callback.invoke(null, result);
+                } catch (Exception ex) {
+                    callback.invoke("mifareUltralight fail: " + ex);
+                }
+            } else {
+                callback.invoke(ERR_NO_TECH_REQ);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void mifareUltralightWritePage(int pageOffset, Dynamic rnArray, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            if (techRequest != null) {
+                try {
+                    byte[] bytes = ByteEncoding.fromReact(rnArray);
+                    MifareUltralight techHandle = (MifareUltralight)techRequest.getTechHandle();
+                    techHandle.writePage(pageOffset, bytes);
+                    callback.invoke();
+                } catch (TagLostException ex) {
+                    callback.invoke("mifareUltralight fail: TAG_LOST");
+                } catch (Exception ex) {
+                    callback.invoke("mifareUltralight fail: " + ex);
+                }
+            } else {
+                callback.invoke(ERR_NO_TECH_REQ);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void nfcVReadBlocks(int firstBlock, int blockCount, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            if (techRequest != null) {
+                if (!(techRequest.getTechHandle() instanceof NfcV)) {
+                    callback.invoke("nfcV fail: not connected to NfcV");
+                    return;
+                }
+                if (firstBlock < 0 || blockCount <= 0 || firstBlock + blockCount > 256) {
+                    callback.invoke("nfcV fail: invalid block range");
+                    return;
+                }
+
+                try {
+                    NfcV techHandle = (NfcV)techRequest.getTechHandle();
+                    byte[] uid = nfcVAddress(techRequest, options);
+                    int blockSize = nfcVBlockSize(techHandle, uid, options);
+                    byte[] resultBytes = NfcVUtil.readBlocks(techHandle::transceive, techHandle.getMaxTransceiveLength(), uid, firstBlock, blockCount, blockSize);
+                    callback.invoke(null, ByteEncoding.toReact(resultBytes));
                 } catch (TagLostException ex) {
-                    callback.invoke("mifareUltralight fail: TAG_LOST");
+                    callback.invoke("nfcV fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareUltralight fail: " + ex);
+                    callback.invoke("nfcV fail: " + ex.getMessage());
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
-    public void mifareUltralightWritePage(int pageOffset, ReadableArray rnArray, Callback callback) {
-        synchronized(this) {
+    public void nfcVWriteBlocks(int firstBlock, Dynamic rnArray, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
+                if (!(techRequest.getTechHandle() instanceof NfcV)) {
+                    callback.invoke("nfcV fail: not connected to NfcV");
+                    return;
+                }
+
                 try {
-                    byte[] bytes = rnArrayToBytes(rnArray);
-                    MifareUltralight techHandle = (MifareUltralight)techRequest.getTechHandle();
-                    techHandle.writePage(pageOffset, bytes);
-                    callback.invoke();
+                    byte[] bytes = ByteEncoding.fromReact(rnArray);
+                    NfcV techHandle = (NfcV)techRequest.getTechHandle();
+                    byte[] uid = nfcVAddress(techRequest, options);
+                    int blockSize = nfcVBlockSize(techHandle, uid, options);
+                    if (bytes.length == 0 || bytes.length % blockSize != 0) {
+                        callback.invoke("nfcV fail: invalid data size " + bytes.length + " (should be a multiple of " + blockSize + ")");
+                        return;
+                    }
+                    if (firstBlock < 0 || firstBlock + bytes.length / blockSize > 256) {
+                        callback.invoke("nfcV fail: invalid block range");
+                        return;
+                    }
+
+                    NfcVUtil.WriteBlocksResult writeResult = NfcVUtil.writeBlocks(techHandle::transceive, uid, firstBlock, bytes, blockSize);
+                    WritableMap result = Arguments.createMap();
+                    result.putString("status", writeResult.status);
+                    result.putInt("written", writeResult.written);
+                    result.putInt("nextBlock", firstBlock + writeResult.written);
+                    if (writeResult.errorCode >= 0) {
+                        result.putInt("errorCode", writeResult.errorCode);
+                        result.putString("errorName", NfcVUtil.errorName(writeResult.errorCode));
+                    }
+                    if (writeResult.error != null) {
+                        result.putString("error", writeResult.error);
+                    }
+                    callback.invoke(null, result);
                 } catch (TagLostException ex) {
-                    callback.invoke("mifareUltralight fail: TAG_LOST");
+                    callback.invoke("nfcV fail: TAG_LOST");
                 } catch (Exception ex) {
-                    callback.invoke("mifareUltralight fail: " + ex);
+                    callback.invoke("nfcV fail: " + ex.getMessage());
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
+        });
+    }
+
+    // UID to address the commands to, null for unaddressed commands
+    private static byte[] nfcVAddress(TagTechnologyRequest techRequest, ReadableMap options) {
+        boolean addressed = !options.hasKey("addressed") || options.getBoolean("addressed");
+        return addressed ? techRequest.getTagHandle().getId() : null;
+    }
+
+    // Block size from the options, or else as reported by GET SYSTEM INFO
+    private static int nfcVBlockSize(NfcV tag, byte[] uid, ReadableMap options) throws IOException {
+        if (options.hasKey("blockSize")) {
+            int blockSize = options.getInt("blockSize");
+            if (blockSize <= 0 || blockSize > 32) {
+                throw new IllegalArgumentException("invalid block size " + blockSize);
+            }
+            return blockSize;
         }
+        NfcVUtil.MemorySize size = NfcVUtil.getMemorySize(tag::transceive, uid);
+        if (size == null) {
+            throw new IOException("block size not reported by the tag, pass options.blockSize");
+        }
+        return size.blockSize;
     }
 
     @ReactMethod
     public void makeReadOnly(Callback callback) {
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     Ndef ndef = (Ndef)techRequest.getTechHandle();
@@ -692,12 +1287,12 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void setTimeout(int timeout, Callback callback) {
-        synchronized (this) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
                     String tech = techRequest.getTechType();
@@ -745,95 +1340,44 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
     @ReactMethod
     public void connect(ReadableArray techs, Callback callback){
-        synchronized(this) {
+        runTechTask(callback, current -> {
             try {
-                techRequest = new TagTechnologyRequest(techs.toArrayList(), null);
+                TagTechnologyRequest techRequest = new TagTechnologyRequest(techs.toArrayList(), null);
+                currentTechRequest.set(techRequest);
                 techRequest.connect(this.tag);
                 callback.invoke(null, null);
             } catch (Exception ex) {
                 callback.invoke(ex.toString());
             }
-        }
+        });
     }
 
     @ReactMethod
     public void close(Callback callback){
-        synchronized(this) {
+        runTechTask(callback, techRequest -> {
             try {
                 techRequest.close();
                 callback.invoke(null, null);
             } catch (Exception ex) {
                 callback.invoke(ex.toString());
             }
-        }
+        });
     }
 
     @ReactMethod
-    public void transceive(ReadableArray rnArray, Callback callback) {
-        synchronized(this) {
+    public void transceive(Dynamic rnArray, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
-                    String tech = techRequest.getTechType();
-                    byte[] bytes = rnArrayToBytes(rnArray);
-
-                    TagTechnology baseTechHandle = techRequest.getTechHandle();
-                    // TagTechnology is the base class for each tech (ex, NfcA, NfcB, IsoDep ...)
-                    // but it doesn't provide transceive in its interface, so we need to explicitly cast it
-                    switch (tech) {
-                        case "NfcA": {
-                            NfcA techHandle = (NfcA) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
-                        case "NfcB": {
-                            NfcB techHandle = (NfcB) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
-                        case "NfcF": {
-                            NfcF techHandle = (NfcF) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
-                        case "NfcV": {
-                            NfcV techHandle = (NfcV) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
-                        case "IsoDep": {
-                            IsoDep techHandle = (IsoDep) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
-                        case "MifareClassic": {
-                            MifareClassic techHandle = (MifareClassic) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
-                        case "MifareUltralight": {
-                            MifareUltralight techHandle = (MifareUltralight) baseTechHandle;
-                            byte[] resultBytes = techHandle.transceive(bytes);
-                            WritableArray resultRnArray = bytesToRnArray(resultBytes);
-                            callback.invoke(null, resultRnArray);
-                            return;
-                        }
+                    if (techRequest.canTransceive()) {
+                        byte[] resultBytes = techRequest.transceive(ByteEncoding.fromReact(rnArray));
+                        callback.invoke(null, ByteEncoding.toReact(resultBytes));
+                        return;
                     }
                     Log.d(LOG_TAG, "transceive not supported");
                     callback.invoke(ERR_API_NOT_SUPPORT);
@@ -844,119 +1388,210 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
-        }
+        });
     }
 
+    /**
+     * Transceive an APDU and resolve with the complete response: 61xx are followed with GET RESPONSE,
+     * 6Cxx are sent again with the right Le, and commands over the transceive limit are chained.
+     */
     @ReactMethod
-    public void getMaxTransceiveLength(Callback callback) {
-        synchronized(this) {
+    public void isoDepTransceiveApdu(Dynamic rnArray, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
+            if (techRequest != null) {
+                if (!(techRequest.getTechHandle() instanceof IsoDep)) {
+                    callback.invoke(ERR_API_NOT_SUPPORT);
+                    return;
+                }
+
+                try {
+                    IsoDep techHandle = (IsoDep)techRequest.getTechHandle();
+                    boolean chaining = !options.hasKey("chaining") || options.getBoolean("chaining");
+                    boolean getResponse = !options.hasKey("getResponse") || options.getBoolean("getResponse");
+                    byte[] resultBytes = IsoDepUtil.transceive(techRequest::transceive, ByteEncoding.fromReact(rnArray),
+                            techHandle.getMaxTransceiveLength(), chaining, getResponse);
+                    callback.invoke(null, ByteEncoding.toReact(resultBytes));
+                } catch (Exception ex) {
+                    Log.d(LOG_TAG, "isoDepTransceiveApdu fail: " + ex);
+                    callback.invoke(ERR_TRANSCEIVE_FAIL);
+                }
+            } else {
+                callback.invoke(ERR_NO_TECH_REQ);
+            }
+        });
+    }
+
+    /**
+     * Send a list of commands in a single call, and resolve with all the responses. The batch stops
+     * early after a response whose status word (last 2 bytes) is listed in stopOnStatusWords, or is
+     * not listed in expectedStatusWords. A failed command also stops it, the result still holds the
+     * responses received before it.
+     */
+    @ReactMethod
+    public void transceiveBatch(ReadableArray commands, ReadableMap options, Callback callback) {
+        runTechTask(callback, techRequest -> {
             if (techRequest != null) {
                 try {
-                    String tech = techRequest.getTechType();
+                    if (!techRequest.canTransceive()) {
+                        Log.d(LOG_TAG, "transceive not supported");
+                        callback.invoke(ERR_API_NOT_SUPPORT);
+                        return;
+                    }
 
-                    TagTechnology baseTechHandle = techRequest.getTechHandle();
-                    // TagTechnology is the base class for each tech (ex, NfcA, NfcB, IsoDep ...)
-                    // but it doesn't provide transceive in its interface, so we need to explicitly cast it
-                    switch (tech) {
-                        case "NfcA": {
-                            NfcA techHandle = (NfcA) baseTechHandle;
-                            int max = techHandle.getMaxTransceiveLength();
-                            callback.invoke(null, max);
-                            return;
-                        }
-                        case "NfcB": {
-                            NfcB techHandle = (NfcB) baseTechHandle;
-                            int max = techHandle.getMaxTransceiveLength();
-                            callback.invoke(null, max);
-                            return;
-                        }
-                        case "NfcF": {
-                            NfcF techHandle = (NfcF) baseTechHandle;
-                            int max = techHandle.getMaxTransceiveLength();
-                            callback.invoke(null, max);
-                            return;
-                        }
-                        case "NfcV": {
-                            NfcV techHandle = (NfcV) baseTechHandle;
-                            int max = techHandle.getMaxTransceiveLength();
-                            callback.invoke(null, max);
-                            return;
-                        }
-                        case "IsoDep": {
-                            IsoDep techHandle = (IsoDep) baseTechHandle;
-                            int max = techHandle.getMaxTransceiveLength();
-                            callback.invoke(null, max);
-                            return;
-                        }
-                        case "MifareUltralight": {
-                            MifareUltralight techHandle = (MifareUltralight) baseTechHandle;
-                            int max = techHandle.getMaxTransceiveLength();
-                            callback.invoke(null, max);
-                            return;
-                        }
+                    // Convert everything up front, so the commands reach the tag back to back
+                    int count = commands.size();
+                    byte[][] commandBytes = new byte[count][];
+                    for (int i = 0; i < count; i++) {
+                        commandBytes[i] = ByteEncoding.fromReact(commands, i);
                     }
-                    Log.d(LOG_TAG, "getMaxTransceiveLength not supported");
-                    callback.invoke(ERR_API_NOT_SUPPORT);
+                    int[] stopOn = readStatusWords(options, "stopOnStatusWords");
+                    int[] expected = readStatusWords(options, "expectedStatusWords");
+
+                    TransceiveBatch.Result batch = TransceiveBatch.run(techRequest::transceive, commandBytes, stopOn, expected);
+                    WritableArray responses = Arguments.createArray();
+                    for (byte[] response : batch.responses) {
+                        ByteEncoding.pushBytes(responses, response);
+                    }
+
+                    WritableMap result = Arguments.createMap();
+                    result.putArray("responses", responses);
+                    result.putBoolean("completed", batch.completed);
+                    result.putInt("stoppedAt", batch.stoppedAt);
+                    result.putString("status", batch.status);
+                    if (batch.error != null) {
+                        Log.d(LOG_TAG, "transceive fail: " + batch.error);
+                        result.putString("error", batch.error);
+                    }
+                    callback.invoke(null, result);
                 } catch (Exception ex) {
-                    Log.d(LOG_TAG, "getMaxTransceiveLength fail");
-                    callback.invoke(ex.toString());
+                    Log.d(LOG_TAG, "transceive fail: " + ex);
+                    callback.invoke(ERR_TRANSCEIVE_FAIL);
                 }
             } else {
                 callback.invoke(ERR_NO_TECH_REQ);
             }
+        });
+    }
+
+    private static int[] readStatusWords(ReadableMap options, String key) {
+        if (options == null || !options.hasKey(key) || options.isNull(key)) {
+            return null;
+        }
+        ReadableArray array = options.getArray(key);
+        int[] statusWords = new int[array.size()];
+        for (int i = 0; i < statusWords.length; i++) {
+            statusWords[i] = array.getInt(i);
         }
+        return statusWords;
     }
 
     @ReactMethod
-    public void cancelNdefWrite(Callback callback) {
-        synchronized(this) {
-            if (writeNdefRequest != null) {
-                writeNdefRequest.callback.invoke(ERR_CANCEL);
-                writeNdefRequest = null;
-                callback.invoke();
-            } else {
-                callback.invoke(ERR_NOT_REGISTERED);
+    public void getMaxTransceiveLength(Callback callback) {
+        TagTechnologyRequest techRequest = currentTechRequest.get();
+        if (techRequest != null) {
+            try {
+                String tech = techRequest.getTechType();
+
+                TagTechnology baseTechHandle = techRequest.getTechHandle();
+                // TagTechnology is the base class for each tech (ex, NfcA, NfcB, IsoDep ...)
+                // but it doesn't provide transceive in its interface, so we need to explicitly cast it
+                switch (tech) {
+                    case "NfcA": {
+                        NfcA techHandle = (NfcA) baseTechHandle;
+                        int max = techHandle.getMaxTransceiveLength();
+                        callback.invoke(null, max);
+                        return;
+                    }
+                    case "NfcB": {
+                        NfcB techHandle = (NfcB) baseTechHandle;
+                        int max = techHandle.getMaxTransceiveLength();
+                        callback.invoke(null, max);
+                        return;
+                    }
+                    case "NfcF": {
+                        NfcF techHandle = (NfcF) baseTechHandle;
+                        int max = techHandle.getMaxTransceiveLength();
+                        callback.invoke(null, max);
+                        return;
+                    }
+                    case "NfcV": {
+                        NfcV techHandle = (NfcV) baseTechHandle;
+                        int max = techHandle.getMaxTransceiveLength();
+                        callback.invoke(null, max);
+                        return;
+                    }
+                    case "IsoDep": {
+                        IsoDep techHandle = (IsoDep) baseTechHandle;
+                        int max = techHandle.getMaxTransceiveLength();
+                        callback.invoke(null, max);
+                        return;
+                    }
+                    case "MifareUltralight": {
+                        MifareUltralight techHandle = (MifareUltralight) baseTechHandle;
+                        int max = techHandle.getMaxTransceiveLength();
+                        callback.invoke(null, max);
+                        return;
+                    }
+                }
+                Log.d(LOG_TAG, "getMaxTransceiveLength not supported");
+                callback.invoke(ERR_API_NOT_SUPPORT);
+            } catch (Exception ex) {
+                Log.d(LOG_TAG, "getMaxTransceiveLength fail");
+                callback.invoke(ex.toString());
             }
+        } else {
+            callback.invoke(ERR_NO_TECH_REQ);
         }
     }
 
     @ReactMethod
-    public void requestNdefWrite(ReadableArray rnArray, ReadableMap options, Callback callback) {
-        synchronized(this) {
-            if (!isForegroundEnabled) {
-                callback.invoke(ERR_NOT_REGISTERED);
-                return;
+    public void cancelNdefWrite(Callback callback) {
+        List<RequestQueue.Entry> requests = requestQueue.removeAll(false);
+        if (!requests.isEmpty()) {
+            for (RequestQueue.Entry entry : requests) {
+                cancelRequestTimeout(entry);
+                entry.fail(ERR_CANCEL);
             }
+            callback.invoke();
+        } else {
+            callback.invoke(ERR_NOT_REGISTERED);
+        }
+    }
 
-            if (hasPendingRequest()) {
-                callback.invoke(ERR_MULTI_REQ);
-            } else {
-                boolean format = options.getBoolean("format");
-                boolean formatReadOnly = options.getBoolean("formatReadOnly");
+    @ReactMethod
+    public void requestNdefWrite(Dynamic rnArray, ReadableMap options, Callback callback) {
+        if (!isForegroundEnabled) {
+            callback.invoke(ERR_NOT_REGISTERED);
+            return;
+        }
 
-                try {
-                    NdefMessage msgToWrite;
+        boolean format = options.getBoolean("format");
+        boolean formatReadOnly = options.getBoolean("formatReadOnly");
 
-                    /// the only case we allow ndef message to be null is when formatting, see:
-                    /// https://developer.android.com/reference/android/nfc/tech/NdefFormatable.html#format(android.nfc.NdefMessage)
-                    ///	this API allows the `firstMessage` to be null
-                    if (format && rnArray == null) {
-                        msgToWrite = null;
-                    } else {
-                        byte[] bytes = rnArrayToBytes(rnArray);
-                        msgToWrite = new NdefMessage(bytes);
-                    }
+        try {
+            NdefMessage msgToWrite;
 
-                    writeNdefRequest = new WriteNdefRequest(
-                            msgToWrite,
-                            callback, // defer the callback
-                            format,
-                            formatReadOnly
-                    );
-                } catch (FormatException e) {
-                    callback.invoke(e.toString());
-                }
+            /// the only case we allow ndef message to be null is when formatting, see:
+            /// https://developer.android.com/reference/android/nfc/tech/NdefFormatable.html#format(android.nfc.NdefMessage)
+            ///	this API allows the `firstMessage` to be null
+            if (format && (rnArray == null || rnArray.isNull())) {
+                msgToWrite = null;
+            } else {
+                byte[] bytes = ByteEncoding.fromReact(rnArray);
+                msgToWrite = new NdefMessage(bytes);
+            }
+
+            WriteNdefRequest request = new WriteNdefRequest(
+                    msgToWrite,
+                    callback, // defer the callback
+                    format,
+                    formatReadOnly
+            );
+            if (!enqueueRequest(null, request, options)) {
+                callback.invoke(ERR_MULTI_REQ);
             }
+        } catch (FormatException e) {
+            callback.invoke(e.toString());
         }
     }
 
@@ -1162,30 +1797,21 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
                         nfcAdapter.enableReaderMode(currentActivity, new NfcAdapter.ReaderCallback() {
                             @Override
                             public void onTagDiscovered(Tag tag) {
-                                synchronized (this) {
+                                Log.d(LOG_TAG, "readerMode onTagDiscovered");
+                                WritableMap nfcTag;
+                                // if the tag contains NDEF, we want to report the content
+                                if (Arrays.asList(tag.getTechList()).contains(Ndef.class.getName())) {
+                                    Ndef ndef = Ndef.get(tag);
+                                    nfcTag = ndef2React(ndef, new NdefMessage[] { ndef.getCachedNdefMessage() });
+                                } else {
+                                    nfcTag = tag2React(tag);
+                                }
+
+                                sendEvent("NfcManagerDiscoverTag", nfcTag);
+                                if (manager.shouldHandOff()) {
+                                    manager.handOffTag(tag);
+                                } else {
                                     manager.tag = tag;
-                                    Log.d(LOG_TAG, "readerMode onTagDiscovered");
-                                    WritableMap nfcTag;
-                                    // if the tag contains NDEF, we want to report the content
-                                    if (Arrays.asList(tag.getTechList()).contains(Ndef.class.getName())) {
-                                        Ndef ndef = Ndef.get(tag);
-                                        nfcTag = ndef2React(ndef, new NdefMessage[] { ndef.getCachedNdefMessage() });
-                                    } else {
-                                        nfcTag = tag2React(tag);
-                                    }
-
-                                    if (nfcTag != null) {
-                                        sendEvent("NfcManagerDiscoverTag", nfcTag);
-                                        if (techRequest!= null && !techRequest.isConnected()) {
-                                            boolean result = techRequest.connect(tag);
-                                            if (result) {
-                                                techRequest.invokePendingCallback(techRequest.getTechType());
-                                            } else {
-                                                // this indicates that we get a NFC tag, but none of the user required tech is matched
-                                                techRequest.invokePendingCallback(null);
-                                            }
-                                        }
-                                    }
                                 }
                             }
                         }, readerModeFlags, readerModeExtras);
@@ -1270,6 +1896,25 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         }
     };
 
+    private final BroadcastReceiver hceReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (HceService.ACTION_NDEF_WRITTEN.equals(intent.getAction())) {
+                byte[] bytes = intent.getByteArrayExtra(HceService.EXTRA_NDEF_MESSAGE);
+                WritableMap written = Arguments.createMap();
+                ByteEncoding.putBytes(written, "bytes", bytes);
+                try {
+                    written.putArray("ndefMessage", Util.messageToReact(new NdefMessage(bytes)));
+                } catch (FormatException ex) {
+                    // Let the app deal with the raw bytes of a malformed message
+                    Log.d(LOG_TAG, "written NDEF message cannot be parsed: " + ex);
+                    written.putArray("ndefMessage", Arguments.createArray());
+                }
+                sendEvent("NfcManagerHceNdefWritten", written);
+            }
+        }
+    };
+
     @Override
     public void onActivityResult(Activity activity, int requestCode, int resultCode, Intent data) {
         Log.d(LOG_TAG, "onActivityResult");
@@ -1304,32 +1949,13 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         }
         // Parcelable[] messages = intent.getParcelableArrayExtra((NfcAdapter.EXTRA_NDEF_MESSAGES));
 
-        synchronized(this) {
-            this.tag = tag;
-            if (writeNdefRequest != null) {
-                writeNdef(
-                        tag,
-                        writeNdefRequest
-                );
-                writeNdefRequest = null;
-
-                // explicitly return null, to avoid extra detection
-                return null;
-            } else if (techRequest != null) {
-                if (!techRequest.isConnected()) {
-                    boolean result = techRequest.connect(tag);
-                    if (result) {
-                        techRequest.invokePendingCallback(techRequest.getTechType());
-                    } else {
-                        // this indicates that we get a NFC tag, but none of the user required tech is matched
-                        techRequest.invokePendingCallback(null);
-                    }
-                }
+        if (shouldHandOff()) {
+            handOffTag(tag);
 
-                // explicitly return null, to avoid extra detection
-                return null;
-            }
+            // explicitly return null, to avoid extra detection
+            return null;
         }
+        this.tag = tag;
 
         Ndef ndef;
         switch (action) {
@@ -1355,49 +1981,98 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         return parsed;
     }
 
-    private WritableMap tag2React(Tag tag) {
-        try {
-            JSONObject json = Util.tagToJSON(tag);
-            return JsonConvert.jsonToReact(json);
-        } catch (JSONException ex) {
-            return null;
+    private boolean shouldHandOff() {
+        return requestQueue.wantsTag(tagSession != null, currentTechRequest);
+    }
+
+    /**
+     * Publish a discovered tag and hand it to the NFC thread, which serves the first compatible queued request.
+     * Called from the reader mode binder thread or the main thread, never blocks on tag I/O.
+     */
+    private void handOffTag(Tag tag) {
+        this.tag = tag;
+        nfcExecutor.execute(() -> dispatchTag(tag));
+    }
+
+    private void dispatchTag(Tag tag) {
+        TagSession session = tagSession;
+        if (session != null) {
+            runTagSession(session, tag);
+            return;
+        }
+
+        RequestQueue.Entry entry = requestQueue.take(Arrays.asList(tag.getTechList()), currentTechRequest);
+        if (entry == null) {
+            // The current tech request keeps its tag until it is closed or cancelled,
+            // or the queued requests all wait for a tag they support
+            return;
+        }
+        cancelRequestTimeout(entry);
+
+        if (entry.ndefRequest != null) {
+            writeNdef(tag, entry.ndefRequest);
+            return;
+        }
+
+        // Already the current request, see RequestQueue.take
+        TagTechnologyRequest techRequest = entry.techRequest;
+        boolean result = techRequest.connect(tag);
+        if (currentTechRequest.get() != techRequest) {
+            // Cancelled or closed while connecting, the cancellation settled the callback
+            techRequest.close();
+            return;
+        }
+        if (result) {
+            TagScript script = tagScript;
+            if (script != null) {
+                // Reported before the request resolves, so JS has it when it gets the tech
+                sendEvent("NfcManagerTagScriptResult", TagScript.toReact(script.run(techRequest)));
+            }
+            techRequest.invokePendingCallback(techRequest.getTechType());
+        } else {
+            // this indicates that we get a NFC tag, but none of the user required tech is matched
+            techRequest.invokePendingCallback(null);
         }
     }
 
-    private WritableMap ndef2React(Ndef ndef, Parcelable[] messages) {
-        try {
-            JSONObject json = buildNdefJSON(ndef, messages);
-            return JsonConvert.jsonToReact(json);
-        } catch (JSONException ex) {
-            return null;
+    private void runTagSession(TagSession session, Tag tag) {
+        // closeTechnology only releases the tag, the session takes the next one
+        currentTechRequest.set(session.techRequest);
+        WritableMap result = session.onTag(tag, tagScript);
+        if (tagSession != session) {
+            // Stopped while running the commands
+            currentTechRequest.compareAndSet(session.techRequest, null);
+            session.techRequest.close();
+            return;
         }
+        sendEvent("NfcManagerTagSessionResult", result);
+    }
+
+    private WritableMap tag2React(Tag tag) {
+        return Util.tagToReact(tag);
     }
 
-    JSONObject buildNdefJSON(Ndef ndef, Parcelable[] messages) {
-        JSONObject json = Util.ndefToJSON(ndef);
+    private WritableMap ndef2React(Ndef ndef, Parcelable[] messages) {
+        WritableMap map = Util.ndefToReact(ndef);
 
         // ndef is null for peer-to-peer
         // ndef and messages are null for ndef format-able
         if (ndef == null && messages != null) {
-            try {
-
-                if (messages.length > 0) {
-                    NdefMessage message = (NdefMessage) messages[0];
-                    json.put("ndefMessage", Util.messageToJSON(message));
-                    // guessing type, would prefer a more definitive way to determine type
-                    json.put("type", "NDEF");
-                }
-
-                if (messages.length > 1) {
-                    Log.d(LOG_TAG, "Expected one ndefMessage but found " + messages.length);
+            if (messages.length > 0) {
+                NdefMessage message = (NdefMessage) messages[0];
+                WritableArray ndefMessage = Util.messageToReact(message);
+                if (ndefMessage != null) {
+                    map.putArray("ndefMessage", ndefMessage);
                 }
+                // guessing type, would prefer a more definitive way to determine type
+                map.putString("type", "NDEF");
+            }
 
-            } catch (JSONException e) {
-                // shouldn't happen
-                Log.e(Util.TAG, "Failed to convert ndefMessage into json", e);
+            if (messages.length > 1) {
+                Log.d(LOG_TAG, "Expected one ndefMessage but found " + messages.length);
             }
         }
-        return json;
+        return map;
     }
 
     private void writeNdef(Tag tag, WriteNdefRequest request) {
@@ -1447,23 +2122,14 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         }
     }
 
-    private static byte[] rnArrayToBytes(ReadableArray rArray) {
-        byte[] bytes = new byte[rArray.size()];
-        for (int i = 0; i < rArray.size(); i++) {
-            bytes[i] = (byte)(rArray.getInt(i) & 0xff);
-        }
-        return bytes;
-    }
-
-    private static WritableArray bytesToRnArray(byte[] bytes) {
-        return appendBytesToRnArray(Arguments.createArray(), bytes);
-    }
-
-    private static WritableArray appendBytesToRnArray(WritableArray value, byte[] bytes) {
-        for (byte aByte : bytes) {
-            value.pushInt((aByte & 0xFF));
+    @ReactMethod
+    public void setByteEncoding(String encoding, Callback callback) {
+        try {
+            ByteEncoding.setMode(encoding);
+            callback.invoke(null, true);
+        } catch (IllegalArgumentException ex) {
+            callback.invoke(ex.getMessage());
         }
-        return value;
     }
 
     @ReactMethod
@@ -1553,6 +2219,100 @@ class NfcManager extends ReactContextBaseJavaModule implements ActivityEventList
         }
     }
 
+    @ReactMethod
+    public void setHceOptions(ReadableMap options, Callback callback) {
+        try {
+            if (options.hasKey("debugLogging")) {
+                HceService.setDebugLogging(options.getBoolean("debugLogging"));
+            }
+            if (options.hasKey("extendedLengthApdu")) {
+                HceService.setExtendedLengthApdu(options.getBoolean("extendedLengthApdu"));
+            }
+            if (options.hasKey("writableNdef")) {
+                HceService.setWritableNdef(options.getBoolean("writableNdef"));
+            }
+            callback.invoke(null, true);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error setting HCE options: " + e.getMessage(), e);
+            callback.invoke("ERR_SET_HCE_OPTIONS");
+        }
+    }
+
+    @ReactMethod
+    public void startHceApduTrace(ReadableMap options, Callback callback) {
+        try {
+            int capacity = options.hasKey("capacity") ? options.getInt("capacity") : 256;
+            int intervalMs = options.hasKey("intervalMs") ? options.getInt("intervalMs") : 100;
+            if (capacity <= 0 || intervalMs <= 0) {
+                callback.invoke("ERR_INVALID_OPTIONS");
+                return;
+            }
+
+            stopApduTrace(true);
+            apduTraceIntervalMs = intervalMs;
+            apduTrace = new ApduTrace(capacity);
+            HceService.setApduTrace(apduTrace);
+            apduTraceHandler.postDelayed(drainApduTrace, intervalMs);
+            callback.invoke(null, true);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error starting APDU trace: " + e.getMessage(), e);
+            callback.invoke("ERR_START_APDU_TRACE");
+        }
+    }
+
+    @ReactMethod
+    public void stopHceApduTrace(Callback callback) {
+        stopApduTrace(true);
+        callback.invoke(null, true);
+    }
+
+    /** @param drain deliver what was recorded before the trace was stopped */
+    private void stopApduTrace(boolean drain) {
+        HceService.setApduTrace(null);
+        apduTraceHandler.removeCallbacks(drainApduTrace);
+        ApduTrace trace = apduTrace;
+        apduTrace = null;
+        if (trace != null && drain) {
+            apduTraceHandler.post(() -> sendApduTrace(trace));
+        }
+    }
+
+    private final Runnable drainApduTrace = new Runnable() {
+        @Override
+        public void run() {
+            ApduTrace trace = apduTrace;
+            if (trace != null) {
+                sendApduTrace(trace);
+                apduTraceHandler.postDelayed(this, apduTraceIntervalMs);
+            }
+        }
+    };
+
+    // One event per interval with all the entries recorded since the previous one
+    private void sendApduTrace(ApduTrace trace) {
+        WritableArray entries = Arguments.createArray();
+        trace.drain(entry -> {
+            WritableMap item = Arguments.createMap();
+            item.putDouble("timestamp", entry.timestamp);
+            ByteEncoding.putBytes(item, "command", entry.command);
+            ByteEncoding.putBytes(item, "response", entry.response);
+            entries.pushMap(item);
+        });
+        long dropped = trace.takeDropped();
+        if (entries.size() == 0 && dropped == 0) {
+            return;
+        }
+
+        WritableMap event = Arguments.createMap();
+        event.putArray("entries", entries);
+        event.putDouble("dropped", dropped);
+        try {
+            sendEvent("NfcManagerHceApduTrace", event);
+        } catch (Exception ex) {
+            Log.d(LOG_TAG, "send APDU trace event fail: " + ex);
+        }
+    }
+
     @ReactMethod
     public void setSimpleUrl(String url, Callback callback) {
         try {
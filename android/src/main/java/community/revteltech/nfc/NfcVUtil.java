@@ -0,0 +1,263 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.NfcV;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * ISO 15693 commands over {@link NfcV}, sent through its transceive.
+ *
+ * Commands are addressed to the UID of the tag (as returned by Tag.getId(), LSB first), or
+ * unaddressed when the UID passed is null, for the tags which do not answer addressed commands.
+ */
+class NfcVUtil {
+    private static final byte FLAG_HIGH_DATA_RATE = 0x02;
+    private static final byte FLAG_ADDRESSED = 0x20;
+    private static final byte FLAG_OPTION = 0x40;
+    private static final byte RESPONSE_FLAG_ERROR = 0x01;
+
+    private static final byte CMD_READ_SINGLE_BLOCK = 0x20;
+    private static final byte CMD_WRITE_SINGLE_BLOCK = 0x21;
+    private static final byte CMD_READ_MULTIPLE_BLOCKS = 0x23;
+    private static final byte CMD_GET_SYSTEM_INFO = 0x2B;
+    private static final byte CMD_GET_MULTIPLE_BLOCK_SECURITY_STATUS = 0x2C;
+
+    // Block security status bit of a locked block
+    private static final int SECURITY_STATUS_LOCKED = 0x01;
+
+    // Information flags of GET SYSTEM INFO
+    private static final int INFO_DSFID = 0x01;
+    private static final int INFO_AFI = 0x02;
+    private static final int INFO_MEMORY_SIZE = 0x04;
+
+    // Error codes of ISO 15693-3, 0xA0 - 0xDF are vendor specific
+    static final int ERROR_NOT_SUPPORTED = 0x01;
+    static final int ERROR_NOT_RECOGNIZED = 0x02;
+    static final int ERROR_OPTION_NOT_SUPPORTED = 0x03;
+    static final int ERROR_UNKNOWN = 0x0F;
+    static final int ERROR_BLOCK_NOT_AVAILABLE = 0x10;
+    static final int ERROR_BLOCK_ALREADY_LOCKED = 0x11;
+    static final int ERROR_BLOCK_LOCKED = 0x12;
+    static final int ERROR_PROGRAMMING_FAILED = 0x13;
+    static final int ERROR_LOCK_FAILED = 0x14;
+
+    /** Error flag set in the response, with the ISO 15693 error code */
+    static class NfcVException extends IOException {
+        final int errorCode;
+
+        NfcVException(int errorCode) {
+            super(String.format(Locale.ROOT, "ISO15693 error 0x%02X %s", errorCode, errorName(errorCode)));
+            this.errorCode = errorCode;
+        }
+    }
+
+    static String errorName(int errorCode) {
+        switch (errorCode) {
+            case ERROR_NOT_SUPPORTED:
+                return "NOT_SUPPORTED";
+            case ERROR_NOT_RECOGNIZED:
+                return "NOT_RECOGNIZED";
+            case ERROR_OPTION_NOT_SUPPORTED:
+                return "OPTION_NOT_SUPPORTED";
+            case ERROR_BLOCK_NOT_AVAILABLE:
+                return "BLOCK_NOT_AVAILABLE";
+            case ERROR_BLOCK_ALREADY_LOCKED:
+                return "BLOCK_ALREADY_LOCKED";
+            case ERROR_BLOCK_LOCKED:
+                return "BLOCK_LOCKED";
+            case ERROR_PROGRAMMING_FAILED:
+                return "PROGRAMMING_FAILED";
+            case ERROR_LOCK_FAILED:
+                return "LOCK_FAILED";
+            default:
+                return errorCode >= 0xA0 && errorCode <= 0xDF ? "CUSTOM" : "UNKNOWN";
+        }
+    }
+
+    static final class MemorySize {
+        final int blockCount;
+        final int blockSize;
+
+        MemorySize(int blockCount, int blockSize) {
+            this.blockCount = blockCount;
+            this.blockSize = blockSize;
+        }
+    }
+
+    /** @return null when the tag does not report its memory size */
+    static MemorySize getMemorySize(TagTechnologyRequest.Transceiver tag, byte[] uid) throws IOException {
+        byte[] response = check(tag.transceive(frame(CMD_GET_SYSTEM_INFO, uid, 0)));
+        // flags, information flags, UID
+        int infoFlags = response[1];
+        int offset = 10;
+        if ((infoFlags & INFO_DSFID) != 0) {
+            offset++;
+        }
+        if ((infoFlags & INFO_AFI) != 0) {
+            offset++;
+        }
+        if ((infoFlags & INFO_MEMORY_SIZE) == 0 || response.length < offset + 2) {
+            return null;
+        }
+        return new MemorySize((response[offset] & 0xFF) + 1, (response[offset + 1] & 0x1F) + 1);
+    }
+
+    /**
+     * Read blockCount blocks from firstBlock with READ MULTIPLE BLOCKS, as many as fit in each
+     * transceive. Tags which do not support it are read one block at a time.
+     */
+    static byte[] readBlocks(TagTechnologyRequest.Transceiver tag, int maxTransceiveLength, byte[] uid, int firstBlock, int blockCount, int blockSize) throws IOException {
+        byte[] result = new byte[blockCount * blockSize];
+        // The block count is sent as a single byte
+        int blocksPerRead = Math.max(1, Math.min(256, (maxTransceiveLength - 1) / blockSize));
+        boolean multiple = true;
+
+        int block = 0;
+        while (block < blockCount) {
+            int count = multiple ? Math.min(blocksPerRead, blockCount - block) : 1;
+            byte[] response;
+            if (count > 1) {
+                byte[] command = frame(CMD_READ_MULTIPLE_BLOCKS, uid, 2);
+                command[command.length - 2] = (byte) (firstBlock + block);
+                command[command.length - 1] = (byte) (count - 1);
+                try {
+                    response = check(tag.transceive(command));
+                } catch (NfcVException ex) {
+                    if (ex.errorCode != ERROR_NOT_SUPPORTED) {
+                        throw ex;
+                    }
+                    multiple = false;
+                    continue;
+                }
+            } else {
+                byte[] command = frame(CMD_READ_SINGLE_BLOCK, uid, 1);
+                command[command.length - 1] = (byte) (firstBlock + block);
+                response = check(tag.transceive(command));
+            }
+
+            if (response.length < 1 + count * blockSize) {
+                throw new IOException("short read at block " + (firstBlock + block));
+            }
+            System.arraycopy(response, 1, result, block * blockSize, count * blockSize);
+            block += count;
+        }
+        return result;
+    }
+
+    /**
+     * Lock state of blockCount blocks from firstBlock, with GET MULTIPLE BLOCK SECURITY STATUS.
+     * Tags which do not support it are asked block by block with the option flag of READ SINGLE BLOCK,
+     * which returns the block security status ahead of the data.
+     */
+    static boolean[] getLockedBlocks(TagTechnologyRequest.Transceiver tag, int maxTransceiveLength, byte[] uid, int firstBlock, int blockCount) throws IOException {
+        boolean[] locked = new boolean[blockCount];
+        // The block count is sent as a single byte, one status byte per block in the response
+        int blocksPerRequest = Math.max(1, Math.min(256, maxTransceiveLength - 1));
+
+        int block = 0;
+        while (block < blockCount) {
+            int count = Math.min(blocksPerRequest, blockCount - block);
+            byte[] command = frame(CMD_GET_MULTIPLE_BLOCK_SECURITY_STATUS, uid, 2);
+            command[command.length - 2] = (byte) (firstBlock + block);
+            command[command.length - 1] = (byte) (count - 1);
+            byte[] response;
+            try {
+                response = check(tag.transceive(command));
+            } catch (NfcVException ex) {
+                if (ex.errorCode != ERROR_NOT_SUPPORTED && ex.errorCode != ERROR_NOT_RECOGNIZED) {
+                    throw ex;
+                }
+                for (; block < blockCount; block++) {
+                    byte[] read = frame(CMD_READ_SINGLE_BLOCK, uid, 1);
+                    read[0] |= FLAG_OPTION;
+                    read[read.length - 1] = (byte) (firstBlock + block);
+                    byte[] status = check(tag.transceive(read));
+                    if (status.length < 2) {
+                        throw new IOException("short security status at block " + (firstBlock + block));
+                    }
+                    locked[block] = (status[1] & SECURITY_STATUS_LOCKED) != 0;
+                }
+                break;
+            }
+
+            if (response.length < 1 + count) {
+                throw new IOException("short security status at block " + (firstBlock + block));
+            }
+            for (int i = 0; i < count; i++) {
+                locked[block + i] = (response[1 + i] & SECURITY_STATUS_LOCKED) != 0;
+            }
+            block += count;
+        }
+        return locked;
+    }
+
+    static void writeBlock(TagTechnologyRequest.Transceiver tag, byte[] uid, int block, byte[] data) throws IOException {
+        byte[] command = frame(CMD_WRITE_SINGLE_BLOCK, uid, 1 + data.length);
+        command[command.length - data.length - 1] = (byte) block;
+        System.arraycopy(data, 0, command, command.length - data.length, data.length);
+        check(tag.transceive(command));
+    }
+
+    static final String STATUS_OK = "ok";
+    static final String STATUS_TAG_LOST = "tag_lost";
+    static final String STATUS_FAILED = "failed";
+
+    static final class WriteBlocksResult {
+        // Blocks written, writing again from firstBlock + written resumes the write
+        final int written;
+        final String status;
+        // ISO 15693 error code of the failed write, -1 if the tag did not report one
+        final int errorCode;
+        final String error;
+
+        WriteBlocksResult(int written, String status, int errorCode, String error) {
+            this.written = written;
+            this.status = status;
+            this.errorCode = errorCode;
+            this.error = error;
+        }
+    }
+
+    /** Write data to consecutive blocks from firstBlock, stopping at the first error */
+    static WriteBlocksResult writeBlocks(TagTechnologyRequest.Transceiver tag, byte[] uid, int firstBlock, byte[] data, int blockSize) {
+        int blockCount = data.length / blockSize;
+        byte[] block = new byte[blockSize];
+        for (int i = 0; i < blockCount; i++) {
+            System.arraycopy(data, i * blockSize, block, 0, blockSize);
+            try {
+                writeBlock(tag, uid, firstBlock + i, block);
+            } catch (TagLostException ex) {
+                return new WriteBlocksResult(i, STATUS_TAG_LOST, -1, ex.toString());
+            } catch (NfcVException ex) {
+                return new WriteBlocksResult(i, STATUS_FAILED, ex.errorCode, ex.getMessage());
+            } catch (IOException ex) {
+                return new WriteBlocksResult(i, STATUS_FAILED, -1, ex.toString());
+            }
+        }
+        return new WriteBlocksResult(blockCount, STATUS_OK, -1, null);
+    }
+
+    // Flags, command code, UID unless unaddressed, then room for the parameters
+    private static byte[] frame(byte command, byte[] uid, int parameters) {
+        int header = uid != null ? 2 + uid.length : 2;
+        byte[] frame = new byte[header + parameters];
+        frame[0] = uid != null ? FLAG_HIGH_DATA_RATE | FLAG_ADDRESSED : FLAG_HIGH_DATA_RATE;
+        frame[1] = command;
+        if (uid != null) {
+            System.arraycopy(uid, 0, frame, 2, uid.length);
+        }
+        return frame;
+    }
+
+    private static byte[] check(byte[] response) throws IOException {
+        if (response == null || response.length == 0) {
+            throw new IOException("empty response");
+        }
+        if ((response[0] & RESPONSE_FLAG_ERROR) != 0) {
+            throw new NfcVException(response.length > 1 ? response[1] & 0xFF : 0);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,69 @@
+package community.revteltech.nfc;
+
+/**
+ * Read-only elementary file answering READ BINARY from a single backing buffer.
+ *
+ * The responses a reader asks for on every tap (the whole file, the 2-byte NLEN) are built once
+ * and returned as is. Other reads are copied into a per-thread scratch array reused as long as
+ * the reader keeps asking for the same length, which is the case while it walks through the file
+ * in MLe chunks, so a full read leaves O(1) garbage instead of one array per READ BINARY.
+ *
+ * Reusing the scratch array is safe because HostApduService sends a response back to the
+ * NFC service before processCommandApdu is called again on the same thread.
+ */
+final class ReadBinaryFile {
+    private static final ThreadLocal<byte[]> scratch = new ThreadLocal<>();
+
+    private final byte[] data;
+    private final int maxReadLength;
+    // Whole file followed by the status word
+    private final byte[] fullResponse;
+    // First 2 bytes (NLEN of an NDEF file) followed by the status word
+    private final byte[] headResponse;
+
+    ReadBinaryFile(byte[] data, int maxReadLength) {
+        this.data = data;
+        this.maxReadLength = maxReadLength;
+        this.fullResponse = slice(data, 0, Math.min(data.length, maxReadLength), null);
+        this.headResponse = data.length >= 2 ? slice(data, 0, 2, null) : fullResponse;
+    }
+
+    byte[] read(byte[] commandApdu) {
+        if (commandApdu.length < 5) {
+            return ApduUtil.A_WRONG_LENGTH;
+        }
+
+        // Parse offset (P1P2)
+        int offset = ((commandApdu[2] & 0xFF) << 8) | (commandApdu[3] & 0xFF);
+        if (offset >= data.length) {
+            return ApduUtil.A_ERROR;
+        }
+
+        int length = Math.min(Math.min(ApduUtil.parseLe(commandApdu), maxReadLength), data.length - offset);
+        if (offset == 0) {
+            if (length == fullResponse.length - 2) {
+                return fullResponse;
+            }
+            if (length == headResponse.length - 2) {
+                return headResponse;
+            }
+        }
+
+        byte[] buffer = scratch.get();
+        if (buffer == null || buffer.length != length + 2) {
+            buffer = new byte[length + 2];
+            scratch.set(buffer);
+        }
+        return slice(data, offset, length, buffer);
+    }
+
+    private static byte[] slice(byte[] data, int offset, int length, byte[] response) {
+        if (response == null) {
+            response = new byte[length + 2];
+        }
+        System.arraycopy(data, offset, response, 0, length);
+        response[length] = ApduUtil.A_OK[0];
+        response[length + 1] = ApduUtil.A_OK[1];
+        return response;
+    }
+}
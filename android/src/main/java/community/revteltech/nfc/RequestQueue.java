@@ -0,0 +1,150 @@
+package community.revteltech.nfc;
+
+import android.nfc.tech.Ndef;
+import android.nfc.tech.NdefFormatable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded queue of the tech and NDEF write requests waiting for a tag.
+ *
+ * Requests are ordered by priority, then by arrival, so requests of the same priority are served
+ * first come first served. A discovered tag goes to the first request it is compatible with, the
+ * others keep waiting for the next tag. When none is, the tag goes to the first request not waiting
+ * for a compatible tag, which fails to connect it as a single pending request always did.
+ *
+ * The queue lock also guards the hand-off of a tag to the current tech request, see {@link #take}.
+ */
+final class RequestQueue {
+    static final class Entry {
+        // Exactly one of them is set
+        final TagTechnologyRequest techRequest;
+        final NfcManager.WriteNdefRequest ndefRequest;
+        final int priority;
+        // Skip the tags it does not support instead of taking them and failing
+        final boolean waitForCompatibleTag;
+        // Fails the request once it waited too long, posted by the module
+        Runnable timeout;
+
+        Entry(TagTechnologyRequest techRequest, NfcManager.WriteNdefRequest ndefRequest, int priority,
+              boolean waitForCompatibleTag) {
+            this.techRequest = techRequest;
+            this.ndefRequest = ndefRequest;
+            this.priority = priority;
+            this.waitForCompatibleTag = waitForCompatibleTag;
+        }
+
+        boolean isCompatible(List<String> techList) {
+            if (ndefRequest != null) {
+                boolean format = ndefRequest.format || ndefRequest.formatReadOnly;
+                return techList.contains(format ? NdefFormatable.class.getName() : Ndef.class.getName());
+            }
+            return techRequest.isCompatible(techList);
+        }
+
+        void fail(String err) {
+            if (ndefRequest != null) {
+                ndefRequest.callback.invoke(err);
+            } else {
+                techRequest.invokePendingCallbackWithError(err);
+            }
+        }
+    }
+
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private int capacity = 1;
+
+    synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Whether a discovered tag is for a queued request, the current one or the tag session, in which case
+     * discovery hands it to the NFC thread instead of reporting it.
+     * @param sessionActive whether a tag session owns the tags
+     */
+    synchronized boolean wantsTag(boolean sessionActive, AtomicReference<TagTechnologyRequest> current) {
+        return sessionActive || !entries.isEmpty() || current.get() != null;
+    }
+
+    /**
+     * Checked under the lock {@link #take} and startTagSession hold, so a request is never queued
+     * next to a session or past the capacity because a tag was handed off meanwhile.
+     * @param sessionActive whether a tag session owns the tags, read by the caller under the queue lock
+     * @param current the current tech request, counted against the capacity
+     * @return false when a session is active or the queue is full
+     */
+    synchronized boolean offer(Entry entry, boolean sessionActive, AtomicReference<TagTechnologyRequest> current) {
+        int active = current.get() != null ? 1 : 0;
+        if (sessionActive || entries.size() + active >= capacity) {
+            return false;
+        }
+        // After the requests of the same or a higher priority
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).priority < entry.priority) {
+            index--;
+        }
+        entries.add(index, entry);
+        return true;
+    }
+
+    /**
+     * Remove and return the request getting a tag with this tech list, null when none takes it.
+     * A tech request taken becomes the current one before the lock is released, so a cancellation
+     * holding the lock finds it either queued or current.
+     * @param current the current tech request, which keeps its tag as long as it is set
+     */
+    synchronized Entry take(List<String> techList, AtomicReference<TagTechnologyRequest> current) {
+        if (current.get() != null) {
+            return null;
+        }
+        Entry taken = null;
+        for (Entry entry : entries) {
+            if (entry.isCompatible(techList)) {
+                taken = entry;
+                break;
+            }
+        }
+        if (taken == null) {
+            for (Entry entry : entries) {
+                if (!entry.waitForCompatibleTag) {
+                    taken = entry;
+                    break;
+                }
+            }
+        }
+        if (taken == null) {
+            return null;
+        }
+        entries.remove(taken);
+        if (taken.techRequest != null) {
+            current.set(taken.techRequest);
+        }
+        return taken;
+    }
+
+    synchronized boolean remove(Entry entry) {
+        return entries.remove(entry);
+    }
+
+    /** Remove the tech requests, or the NDEF write requests, in queue order */
+    synchronized List<Entry> removeAll(boolean techRequests) {
+        List<Entry> removed = new ArrayList<>();
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if ((entry.techRequest != null) == techRequests) {
+                it.remove();
+                removed.add(entry);
+            }
+        }
+        return removed;
+    }
+
+    synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+}
@@ -0,0 +1,213 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.MifareClassic;
+import android.nfc.tech.MifareUltralight;
+import android.nfc.tech.NfcV;
+import android.nfc.tech.TagTechnology;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dump the whole memory of a tag into a {@link TagSnapshot}, and restore a snapshot by writing
+ * only the units which differ from the current content of the tag.
+ *
+ * Supports MIFARE Ultralight / NTAG, MIFARE Classic and ISO 15693 (NfcV).
+ */
+class TagDumper {
+    private static final String LOG_TAG = "TagDumper";
+
+    static final String STATUS_OK = "ok";
+    static final String STATUS_TAG_LOST = "tag_lost";
+    static final String STATUS_FAILED = "failed";
+
+    static final class RestoreResult {
+        final String status;
+        // Units which differed from the snapshot
+        final int differing;
+        // Units written
+        final int written;
+        final String error;
+
+        RestoreResult(String status, int differing, int written, String error) {
+            this.status = status;
+            this.differing = differing;
+            this.written = written;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @param keys candidate keys per sector, only used for MIFARE Classic (see {@link MifareUtil#readAll})
+     */
+    static TagSnapshot dump(TagTechnology tech, MifareUtil.KeyCache keyCache, byte[] uid, List<byte[]>[] keys, boolean tryKeyA, boolean tryKeyB) throws IOException {
+        if (tech instanceof MifareUltralight) {
+            return dumpUltralight((MifareUltralight) tech, uid);
+        } else if (tech instanceof MifareClassic) {
+            return dumpClassic((MifareClassic) tech, keyCache, uid, keys, tryKeyA, tryKeyB);
+        } else if (tech instanceof NfcV) {
+            return dumpNfcV((NfcV) tech, uid);
+        }
+        throw new IllegalArgumentException("unsupported tech");
+    }
+
+    static byte techOf(TagTechnology tech) {
+        if (tech instanceof MifareUltralight) {
+            return TagSnapshot.TECH_MIFARE_ULTRALIGHT;
+        } else if (tech instanceof MifareClassic) {
+            return TagSnapshot.TECH_MIFARE_CLASSIC;
+        } else if (tech instanceof NfcV) {
+            return TagSnapshot.TECH_NFCV;
+        }
+        throw new IllegalArgumentException("unsupported tech");
+    }
+
+    static RestoreResult restore(TagTechnology tech, MifareUtil.KeyCache keyCache, byte[] uid, TagSnapshot snapshot, List<byte[]>[] keys,
+                                 boolean tryKeyA, boolean tryKeyB) throws IOException {
+        // Before reading the whole tag, which takes a while and may need keys
+        if (techOf(tech) != snapshot.tech) {
+            throw new IllegalArgumentException("snapshot taken from another tech");
+        }
+        TagSnapshot current = dump(tech, keyCache, uid, keys, tryKeyA, tryKeyB);
+        if (current.unitSize != snapshot.unitSize
+                || current.getUnitCount() != snapshot.getUnitCount()) {
+            throw new IllegalArgumentException("snapshot does not match the memory layout of the tag");
+        }
+
+        List<Integer> units = new ArrayList<>();
+        for (int unit = 0; unit < snapshot.getUnitCount(); unit++) {
+            // Both sides, a block may have been locked since the snapshot was taken
+            if (snapshot.hasAccess(unit, TagSnapshot.UNIT_READ) && snapshot.hasAccess(unit, TagSnapshot.UNIT_WRITABLE)
+                    && current.hasAccess(unit, TagSnapshot.UNIT_WRITABLE) && !snapshot.sameUnit(current, unit)) {
+                units.add(unit);
+            }
+        }
+        Log.d(LOG_TAG, "restore " + units.size() + " of " + snapshot.getUnitCount() + " units");
+
+        if (tech instanceof MifareUltralight) {
+            return restoreUltralight(MifareUltralightUtil.ultralightTag((MifareUltralight) tech), snapshot, units);
+        } else if (tech instanceof MifareClassic) {
+            return restoreClassic(MifareUtil.classicTag((MifareClassic) tech), keyCache, Util.bytesToHex(uid), snapshot, units, keys, tryKeyA, tryKeyB);
+        }
+        return restoreNfcV((NfcV) tech, uid, snapshot, units);
+    }
+
+    private static TagSnapshot dumpUltralight(MifareUltralight tag, byte[] uid) throws IOException {
+        MifareUltralightUtil.Layout layout = MifareUltralightUtil.getLayout(tag);
+        byte[] memory = MifareUltralightUtil.readRange(MifareUltralightUtil.ultralightTag(tag), 0, layout.pageCount - 1);
+        byte[] access = new byte[layout.pageCount];
+        for (int page = 0; page < layout.pageCount; page++) {
+            access[page] = TagSnapshot.UNIT_READ;
+            if (page >= MifareUltralightUtil.FIRST_USER_PAGE && page <= layout.lastUserPage) {
+                access[page] |= TagSnapshot.UNIT_WRITABLE;
+            }
+        }
+        return new TagSnapshot(TagSnapshot.TECH_MIFARE_ULTRALIGHT, uid, MifareUltralight.PAGE_SIZE, access, memory);
+    }
+
+    private static TagSnapshot dumpClassic(MifareClassic tag, MifareUtil.KeyCache keyCache, byte[] uid, List<byte[]>[] keys, boolean tryKeyA, boolean tryKeyB) throws IOException {
+        int[] sectors = new int[tag.getSectorCount()];
+        for (int i = 0; i < sectors.length; i++) {
+            sectors[i] = i;
+        }
+        MifareUtil.ReadAllResult result = MifareUtil.readAll(MifareUtil.classicTag(tag), keyCache, Util.bytesToHex(uid), sectors, keys, tryKeyA, tryKeyB);
+
+        byte[] access = new byte[tag.getBlockCount()];
+        for (MifareUtil.SectorResult sector : result.sectors) {
+            int firstBlock = sector.offset / MifareClassic.BLOCK_SIZE;
+            int trailer = firstBlock + sector.length / MifareClassic.BLOCK_SIZE - 1;
+            for (int block = firstBlock; block <= trailer; block++) {
+                if (MifareUtil.SECTOR_OK.equals(sector.status)) {
+                    access[block] = TagSnapshot.UNIT_READ;
+                }
+                // Block 0 holds the UID, trailers the keys and access bits
+                if (block != 0 && block != trailer) {
+                    access[block] |= TagSnapshot.UNIT_WRITABLE;
+                }
+            }
+        }
+        return new TagSnapshot(TagSnapshot.TECH_MIFARE_CLASSIC, uid, MifareClassic.BLOCK_SIZE, access, result.data);
+    }
+
+    private static TagSnapshot dumpNfcV(NfcV tag, byte[] uid) throws IOException {
+        NfcVUtil.MemorySize size = NfcVUtil.getMemorySize(tag::transceive, uid);
+        if (size == null) {
+            throw new IOException("memory size not reported by the tag");
+        }
+        byte[] memory = NfcVUtil.readBlocks(tag::transceive, tag.getMaxTransceiveLength(), uid, 0, size.blockCount, size.blockSize);
+        boolean[] locked = NfcVUtil.getLockedBlocks(tag::transceive, tag.getMaxTransceiveLength(), uid, 0, size.blockCount);
+        byte[] access = new byte[size.blockCount];
+        for (int block = 0; block < size.blockCount; block++) {
+            access[block] = locked[block] ? TagSnapshot.UNIT_READ : (byte) (TagSnapshot.UNIT_READ | TagSnapshot.UNIT_WRITABLE);
+        }
+        return new TagSnapshot(TagSnapshot.TECH_NFCV, uid, size.blockSize, access, memory);
+    }
+
+    // Consecutive pages are written in one range
+    private static RestoreResult restoreUltralight(MifareUltralightUtil.UltralightTag tag, TagSnapshot snapshot, List<Integer> pages) {
+        int written = 0;
+        int i = 0;
+        while (i < pages.size()) {
+            int first = pages.get(i);
+            int last = first;
+            while (i + 1 < pages.size() && pages.get(i + 1) == last + 1) {
+                last = pages.get(++i);
+            }
+            i++;
+
+            byte[] data = Arrays.copyOfRange(snapshot.memory, first * snapshot.unitSize, (last + 1) * snapshot.unitSize);
+            MifareUltralightUtil.WriteRangeResult result = MifareUltralightUtil.writeRange(tag, first, data, false, false);
+            written += result.written / snapshot.unitSize;
+            if (!MifareUltralightUtil.STATUS_OK.equals(result.status)) {
+                String status = MifareUltralightUtil.STATUS_TAG_LOST.equals(result.status) ? STATUS_TAG_LOST : STATUS_FAILED;
+                return new RestoreResult(status, pages.size(), written, result.error);
+            }
+        }
+        return new RestoreResult(STATUS_OK, pages.size(), written, null);
+    }
+
+    static RestoreResult restoreClassic(MifareUtil.ClassicTag tag, MifareUtil.KeyCache keyCache, String uid, TagSnapshot snapshot, List<Integer> blocks,
+                                                List<byte[]>[] keys, boolean tryKeyA, boolean tryKeyB) {
+        MifareUtil.BlockOperation[] operations = new MifareUtil.BlockOperation[blocks.size()];
+        for (int i = 0; i < operations.length; i++) {
+            int block = blocks.get(i);
+            operations[i] = new MifareUtil.BlockOperation(MifareUtil.OP_WRITE, block, snapshot.getUnit(block), 0, block);
+        }
+
+        String[] statuses = MifareUtil.writeAll(tag, keyCache, uid, operations, keys, tryKeyA, tryKeyB, false, false);
+        int written = 0;
+        String status = STATUS_OK;
+        String error = null;
+        for (int i = 0; i < statuses.length; i++) {
+            if (MifareUtil.OP_COMMITTED.equals(statuses[i])) {
+                written++;
+            } else if (MifareUtil.OP_UNKNOWN.equals(statuses[i]) || MifareUtil.OP_SKIPPED.equals(statuses[i])) {
+                // Without stopOnError, operations are only skipped once the tag is lost
+                status = STATUS_TAG_LOST;
+            } else if (STATUS_OK.equals(status)) {
+                status = STATUS_FAILED;
+                error = "block " + blocks.get(i) + ": " + statuses[i];
+            }
+        }
+        return new RestoreResult(status, blocks.size(), written, error);
+    }
+
+    private static RestoreResult restoreNfcV(NfcV tag, byte[] uid, TagSnapshot snapshot, List<Integer> blocks) {
+        int written = 0;
+        for (int block : blocks) {
+            try {
+                NfcVUtil.writeBlock(tag::transceive, uid, block, snapshot.getUnit(block));
+                written++;
+            } catch (TagLostException ex) {
+                return new RestoreResult(STATUS_TAG_LOST, blocks.size(), written, ex.toString());
+            } catch (IOException ex) {
+                return new RestoreResult(STATUS_FAILED, blocks.size(), written, "block " + block + ": " + ex);
+            }
+        }
+        return new RestoreResult(STATUS_OK, blocks.size(), written, null);
+    }
+}
@@ -0,0 +1,318 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.MifareUltralight;
+import android.nfc.tech.NfcV;
+import android.nfc.tech.TagTechnology;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small command program run natively on each tag right after it is connected, so the usual
+ * exchanges do not wait for a bridge round trip per command.
+ *
+ * Steps work on the response of the last transceive or read:
+ * <pre>
+ *   transceive {bytes}             send a frame with the connected tech
+ *   readPages {start, end}         MIFARE Ultralight pages, both included
+ *   readBlocks {first, count, blockSize}   NfcV blocks
+ *   write {start, bytes, blockSize}        MIFARE Ultralight pages or NfcV blocks from start
+ *   checkSw {sw, mask}             set the condition when the status word of the response matches
+ *   jumpIf {to, match}             go to the step labelled "to" when the condition is match (true)
+ *   jump {to}
+ *   capture {name, offset, length} keep a slice of the response in the result
+ *   end {status}                   stop with the status ("ok")
+ * </pre>
+ * Any step can carry a "label" to jump to. A failing step stops the program.
+ */
+final class TagScript {
+    static final String OP_TRANSCEIVE = "transceive";
+    static final String OP_READ_PAGES = "readPages";
+    static final String OP_READ_BLOCKS = "readBlocks";
+    static final String OP_WRITE = "write";
+    static final String OP_CHECK_SW = "checkSw";
+    static final String OP_JUMP_IF = "jumpIf";
+    static final String OP_JUMP = "jump";
+    static final String OP_CAPTURE = "capture";
+    static final String OP_END = "end";
+
+    static final String STATUS_OK = "ok";
+    static final String STATUS_TAG_LOST = "tag_lost";
+    static final String STATUS_FAILED = "failed";
+
+    // Bound on the steps run, in case the jumps loop
+    private static final int MAX_STEPS = 1024;
+
+    private static final class Step {
+        final String op;
+        // Range of readPages, readBlocks and write, slice of capture
+        int start;
+        int end;
+        int blockSize;
+        byte[] bytes;
+        // Expected status word of checkSw, and the bits compared
+        int sw;
+        int mask;
+        // Step index of jumpIf and jump
+        int target;
+        boolean match;
+        // Capture name, or end status
+        String name;
+
+        Step(String op) {
+            this.op = op;
+        }
+    }
+
+    static final class Result {
+        final String status;
+        // Index of the step which ended the run, the step count when it ran past the last one
+        final int step;
+        final Map<String, byte[]> captures;
+        final String error;
+
+        Result(String status, int step, Map<String, byte[]> captures, String error) {
+            this.status = status;
+            this.step = step;
+            this.captures = captures;
+            this.error = error;
+        }
+    }
+
+    private final List<Step> steps;
+
+    private TagScript(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /** Check the steps and resolve the jump labels once, when the script is registered */
+    static TagScript compile(ReadableArray array) {
+        List<Step> steps = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        Map<String, Integer> labels = new HashMap<>();
+
+        for (int i = 0; i < array.size(); i++) {
+            ReadableMap map = array.getMap(i);
+            String op = map.hasKey("op") ? map.getString("op") : null;
+            if (op == null) {
+                throw new IllegalArgumentException("step " + i + ": missing op");
+            }
+            if (map.hasKey("label") && labels.put(map.getString("label"), i) != null) {
+                throw new IllegalArgumentException("step " + i + ": duplicate label " + map.getString("label"));
+            }
+
+            Step step = new Step(op);
+            String target = null;
+            switch (op) {
+                case OP_TRANSCEIVE:
+                    step.bytes = ByteEncoding.fromReact(map, "bytes");
+                    break;
+                case OP_READ_PAGES:
+                    step.start = map.getInt("start");
+                    step.end = map.getInt("end");
+                    if (step.start < 0 || step.start > step.end || step.end > MifareUltralightUtil.MAX_PAGE) {
+                        throw new IllegalArgumentException("step " + i + ": invalid page range");
+                    }
+                    break;
+                case OP_READ_BLOCKS:
+                    step.start = map.getInt("first");
+                    step.end = step.start + map.getInt("count") - 1;
+                    step.blockSize = map.hasKey("blockSize") ? map.getInt("blockSize") : 4;
+                    if (step.start < 0 || step.start > step.end || step.end > 255 || step.blockSize <= 0) {
+                        throw new IllegalArgumentException("step " + i + ": invalid block range");
+                    }
+                    break;
+                case OP_WRITE:
+                    step.start = map.getInt("start");
+                    step.bytes = ByteEncoding.fromReact(map, "bytes");
+                    step.blockSize = map.hasKey("blockSize") ? map.getInt("blockSize") : 4;
+                    if (step.bytes.length == 0 || step.blockSize <= 0 || step.bytes.length % step.blockSize != 0) {
+                        throw new IllegalArgumentException("step " + i + ": data size should be a multiple of " + step.blockSize);
+                    }
+                    // Page and block numbers are sent as a single byte by both techs
+                    step.end = step.start + step.bytes.length / step.blockSize - 1;
+                    if (step.start < 0 || step.end > MifareUltralightUtil.MAX_PAGE) {
+                        throw new IllegalArgumentException("step " + i + ": invalid write range");
+                    }
+                    break;
+                case OP_CHECK_SW:
+                    step.sw = map.getInt("sw") & 0xFFFF;
+                    step.mask = map.hasKey("mask") ? map.getInt("mask") & 0xFFFF : 0xFFFF;
+                    break;
+                case OP_JUMP_IF:
+                    step.match = !map.hasKey("match") || map.getBoolean("match");
+                    target = map.getString("to");
+                    break;
+                case OP_JUMP:
+                    target = map.getString("to");
+                    break;
+                case OP_CAPTURE:
+                    step.name = map.getString("name");
+                    step.start = map.hasKey("offset") ? map.getInt("offset") : 0;
+                    step.end = map.hasKey("length") ? map.getInt("length") : -1;
+                    break;
+                case OP_END:
+                    step.name = map.hasKey("status") ? map.getString("status") : STATUS_OK;
+                    break;
+                default:
+                    throw new IllegalArgumentException("step " + i + ": unknown op " + op);
+            }
+            steps.add(step);
+            targets.add(target);
+        }
+
+        for (int i = 0; i < steps.size(); i++) {
+            String target = targets.get(i);
+            if (target != null) {
+                Integer index = labels.get(target);
+                if (index == null) {
+                    throw new IllegalArgumentException("step " + i + ": unknown label " + target);
+                }
+                steps.get(i).target = index;
+            }
+        }
+        return new TagScript(steps);
+    }
+
+    /** Run the script on the connected tech request, on the NFC thread */
+    Result run(TagTechnologyRequest techRequest) {
+        Map<String, byte[]> captures = new LinkedHashMap<>();
+        byte[] response = null;
+        boolean condition = false;
+
+        int pc = 0;
+        int count = 0;
+        try {
+            while (pc < steps.size()) {
+                if (++count > MAX_STEPS) {
+                    return new Result(STATUS_FAILED, pc, captures, "step limit reached");
+                }
+                Step step = steps.get(pc);
+                int next = pc + 1;
+                TagTechnology tech = techRequest.getTechHandle();
+
+                switch (step.op) {
+                    case OP_TRANSCEIVE:
+                        if (!techRequest.canTransceive()) {
+                            throw new IOException("transceive not supported by " + techRequest.getTechType());
+                        }
+                        response = techRequest.transceive(step.bytes);
+                        break;
+                    case OP_READ_PAGES:
+                        response = MifareUltralightUtil.readRange(MifareUltralightUtil.ultralightTag(ultralight(tech)), step.start, step.end);
+                        break;
+                    case OP_READ_BLOCKS:
+                        NfcV nfcV = nfcV(tech);
+                        response = NfcVUtil.readBlocks(nfcV::transceive, nfcV.getMaxTransceiveLength(), techRequest.getTagHandle().getId(),
+                                step.start, step.end - step.start + 1, step.blockSize);
+                        break;
+                    case OP_WRITE:
+                        write(techRequest, tech, step);
+                        break;
+                    case OP_CHECK_SW:
+                        condition = response != null && response.length >= 2 && (statusWord(response) & step.mask) == step.sw;
+                        break;
+                    case OP_JUMP_IF:
+                        if (condition == step.match) {
+                            next = step.target;
+                        }
+                        break;
+                    case OP_JUMP:
+                        next = step.target;
+                        break;
+                    case OP_CAPTURE:
+                        captures.put(step.name, slice(response, step.start, step.end));
+                        break;
+                    case OP_END:
+                        return new Result(step.name, pc, captures, null);
+                }
+                pc = next;
+            }
+            return new Result(STATUS_OK, pc, captures, null);
+        } catch (TagLostException ex) {
+            return new Result(STATUS_TAG_LOST, pc, captures, ex.toString());
+        } catch (IOException | RuntimeException ex) {
+            return new Result(STATUS_FAILED, pc, captures, ex.toString());
+        }
+    }
+
+    static WritableMap toReact(Result result) {
+        WritableMap map = Arguments.createMap();
+        map.putString("status", result.status);
+        map.putInt("step", result.step);
+        WritableMap captures = Arguments.createMap();
+        for (Map.Entry<String, byte[]> capture : result.captures.entrySet()) {
+            ByteEncoding.putBytes(captures, capture.getKey(), capture.getValue());
+        }
+        map.putMap("captures", captures);
+        if (result.error != null) {
+            map.putString("error", result.error);
+        }
+        return map;
+    }
+
+    private static void write(TagTechnologyRequest techRequest, TagTechnology tech, Step step) throws IOException {
+        if (tech instanceof MifareUltralight) {
+            if (step.blockSize != MifareUltralight.PAGE_SIZE) {
+                throw new IOException("write needs a block size of " + MifareUltralight.PAGE_SIZE + " on MifareUltralight");
+            }
+            MifareUltralightUtil.WriteRangeResult result = MifareUltralightUtil.writeRange(MifareUltralightUtil.ultralightTag((MifareUltralight) tech), step.start, step.bytes, false, false);
+            if (MifareUltralightUtil.STATUS_TAG_LOST.equals(result.status)) {
+                throw new TagLostException(result.error);
+            } else if (!MifareUltralightUtil.STATUS_OK.equals(result.status)) {
+                throw new IOException("page " + (step.start + result.written / MifareUltralight.PAGE_SIZE) + ": " + result.error);
+            }
+        } else if (tech instanceof NfcV) {
+            NfcVUtil.WriteBlocksResult result = NfcVUtil.writeBlocks(((NfcV) tech)::transceive, techRequest.getTagHandle().getId(),
+                    step.start, step.bytes, step.blockSize);
+            if (NfcVUtil.STATUS_TAG_LOST.equals(result.status)) {
+                throw new TagLostException(result.error);
+            } else if (!NfcVUtil.STATUS_OK.equals(result.status)) {
+                throw new IOException("block " + (step.start + result.written) + ": " + result.error);
+            }
+        } else {
+            throw new IOException("write needs a MifareUltralight or NfcV connection");
+        }
+    }
+
+    private static MifareUltralight ultralight(TagTechnology tech) throws IOException {
+        if (!(tech instanceof MifareUltralight)) {
+            throw new IOException("readPages needs a MifareUltralight connection");
+        }
+        return (MifareUltralight) tech;
+    }
+
+    private static NfcV nfcV(TagTechnology tech) throws IOException {
+        if (!(tech instanceof NfcV)) {
+            throw new IOException("readBlocks needs a NfcV connection");
+        }
+        return (NfcV) tech;
+    }
+
+    private static int statusWord(byte[] response) {
+        return ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+    }
+
+    // length -1 for the rest of the response
+    private static byte[] slice(byte[] response, int offset, int length) throws IOException {
+        if (response == null) {
+            throw new IOException("nothing to capture");
+        }
+        int end = length < 0 ? response.length : offset + length;
+        if (offset < 0 || offset > end || end > response.length) {
+            throw new IOException("capture out of the response (" + response.length + " bytes)");
+        }
+        return Arrays.copyOfRange(response, offset, end);
+    }
+}
@@ -0,0 +1,199 @@
+package community.revteltech.nfc;
+
+import android.nfc.NdefMessage;
+import android.nfc.Tag;
+import android.nfc.TagLostException;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Continuous tag session: each discovered tag is connected with the same tech request in place of
+ * the previous one, the configured commands run right away, and one result is reported per tag.
+ */
+final class TagSession {
+    static final String CMD_READ_NDEF = "readNdef";
+    static final String CMD_READ_PAGES = "readPages";
+    static final String CMD_TRANSCEIVE = "transceive";
+
+    static final class Command {
+        final String type;
+        // Page range of readPages
+        final int start;
+        final int end;
+        // Frame of transceive
+        final byte[] bytes;
+
+        Command(String type, int start, int end, byte[] bytes) {
+            this.type = type;
+            this.start = start;
+            this.end = end;
+            this.bytes = bytes;
+        }
+    }
+
+    /** What a command returned, or why it failed */
+    static final class CommandResult {
+        final String type;
+        // Response of transceive, pages of readPages
+        byte[] data;
+        NdefMessage ndefMessage;
+        String error;
+
+        CommandResult(String type) {
+            this.type = type;
+        }
+    }
+
+    static final class TagResult {
+        // Tags seen by the session, this one included
+        final int count;
+        // Tech connected, null when the tag supports none of the requested ones
+        String tech;
+        String error;
+        final List<CommandResult> results = new ArrayList<>();
+        TagScript.Result script;
+
+        TagResult(int count) {
+            this.count = count;
+        }
+    }
+
+    final TagTechnologyRequest techRequest;
+    private final List<Command> commands;
+    // Tags seen by the session, only touched on the NFC thread
+    private int tagCount = 0;
+
+    TagSession(ArrayList<Object> techTypes, List<Command> commands) {
+        this(new TagTechnologyRequest(techTypes, null), commands);
+    }
+
+    TagSession(TagTechnologyRequest techRequest, List<Command> commands) {
+        this.techRequest = techRequest;
+        this.commands = commands;
+    }
+
+    static List<Command> parseCommands(ReadableArray array) {
+        List<Command> commands = new ArrayList<>();
+        if (array == null) {
+            return commands;
+        }
+        for (int i = 0; i < array.size(); i++) {
+            ReadableMap command = array.getMap(i);
+            String type = command.hasKey("type") ? command.getString("type") : null;
+            if (CMD_READ_NDEF.equals(type)) {
+                commands.add(new Command(type, 0, 0, null));
+            } else if (CMD_READ_PAGES.equals(type)) {
+                int start = command.getInt("start");
+                int end = command.getInt("end");
+                if (start < 0 || start > end || end > MifareUltralightUtil.MAX_PAGE) {
+                    throw new IllegalArgumentException("command " + i + ": invalid page range");
+                }
+                commands.add(new Command(type, start, end, null));
+            } else if (CMD_TRANSCEIVE.equals(type)) {
+                commands.add(new Command(type, 0, 0, ByteEncoding.fromReact(command, "bytes")));
+            } else {
+                throw new IllegalArgumentException("command " + i + ": unknown type " + type);
+            }
+        }
+        return commands;
+    }
+
+    /** Run the tag through the session and convert the result for JS */
+    WritableMap onTag(Tag tag, TagScript script) {
+        TagResult tagResult = process(tag, script);
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("count", tagResult.count);
+        result.putMap("tag", Util.tagToReact(tag));
+        if (tagResult.tech == null) {
+            result.putString("error", tagResult.error);
+            return result;
+        }
+        result.putString("tech", tagResult.tech);
+
+        WritableArray results = Arguments.createArray();
+        for (CommandResult commandResult : tagResult.results) {
+            WritableMap map = Arguments.createMap();
+            map.putString("type", commandResult.type);
+            if (commandResult.data != null) {
+                ByteEncoding.putBytes(map, "data", commandResult.data);
+            }
+            WritableArray records = commandResult.ndefMessage != null ? Util.messageToReact(commandResult.ndefMessage) : null;
+            if (records != null) {
+                map.putArray("ndefMessage", records);
+            }
+            if (commandResult.error != null) {
+                map.putString("error", commandResult.error);
+            }
+            results.pushMap(map);
+        }
+        result.putArray("results", results);
+        if (tagResult.script != null) {
+            result.putMap("script", TagScript.toReact(tagResult.script));
+        }
+        return result;
+    }
+
+    /**
+     * Connect the tag in place of the previous one and run the commands, then the script if any, on the
+     * NFC thread. The commands stop at the first one failing, as the following ones mostly fail the same
+     * way once the tag is gone.
+     */
+    TagResult process(Tag tag, TagScript script) {
+        if (techRequest.isConnected()) {
+            techRequest.close();
+        }
+
+        TagResult result = new TagResult(++tagCount);
+        if (!techRequest.connect(tag)) {
+            result.error = "no requested tech supported by the tag";
+            return result;
+        }
+        result.tech = techRequest.getTechType();
+
+        for (Command command : commands) {
+            CommandResult commandResult = new CommandResult(command.type);
+            result.results.add(commandResult);
+            try {
+                run(command, commandResult);
+            } catch (Exception ex) {
+                commandResult.error = ex instanceof TagLostException ? "TAG_LOST" : ex.toString();
+                break;
+            }
+        }
+        if (script != null) {
+            result.script = script.run(techRequest);
+        }
+        return result;
+    }
+
+    private void run(Command command, CommandResult result) throws Exception {
+        switch (command.type) {
+            case CMD_READ_NDEF:
+                result.ndefMessage = techRequest.readNdefMessage();
+                break;
+            case CMD_READ_PAGES: {
+                MifareUltralightUtil.UltralightTag ultralight = techRequest.getUltralightTag();
+                if (ultralight == null) {
+                    throw new IOException("readPages needs a MifareUltralight connection");
+                }
+                result.data = MifareUltralightUtil.readRange(ultralight, command.start, command.end);
+                break;
+            }
+            case CMD_TRANSCEIVE:
+                if (!techRequest.canTransceive()) {
+                    throw new IOException("transceive not supported by " + techRequest.getTechType());
+                }
+                result.data = techRequest.transceive(command.bytes);
+                break;
+        }
+    }
+}
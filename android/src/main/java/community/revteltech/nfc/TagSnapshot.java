@@ -0,0 +1,117 @@
+package community.revteltech.nfc;
+
+import java.util.Arrays;
+
+/**
+ * Full memory image of a tag, made of units of the same size (pages, blocks).
+ *
+ * Binary format, multi-byte values big-endian:
+ * <pre>
+ *   magic "NFCS" | version (1) | tech (1) | UID length (1) | UID | unit size (1) | unit count (2)
+ *   | access flags, one byte per unit | memory, unit count * unit size bytes
+ * </pre>
+ */
+final class TagSnapshot {
+    static final int VERSION = 1;
+    private static final byte[] MAGIC = {'N', 'F', 'C', 'S'};
+
+    static final byte TECH_MIFARE_ULTRALIGHT = 1;
+    static final byte TECH_MIFARE_CLASSIC = 2;
+    static final byte TECH_NFCV = 3;
+
+    // The unit could be read, its content is in the memory image
+    static final byte UNIT_READ = 0x01;
+    // The unit holds user data, restoring it cannot change the UID, keys, lock or configuration
+    static final byte UNIT_WRITABLE = 0x02;
+
+    final byte tech;
+    final byte[] uid;
+    final int unitSize;
+    final byte[] access;
+    final byte[] memory;
+
+    TagSnapshot(byte tech, byte[] uid, int unitSize, byte[] access, byte[] memory) {
+        this.tech = tech;
+        this.uid = uid;
+        this.unitSize = unitSize;
+        this.access = access;
+        this.memory = memory;
+    }
+
+    int getUnitCount() {
+        return access.length;
+    }
+
+    boolean hasAccess(int unit, byte flag) {
+        return (access[unit] & flag) != 0;
+    }
+
+    /** Whether the unit is readable in both snapshots and holds the same bytes */
+    boolean sameUnit(TagSnapshot other, int unit) {
+        if (!hasAccess(unit, UNIT_READ) || !other.hasAccess(unit, UNIT_READ)) {
+            return false;
+        }
+        int offset = unit * unitSize;
+        for (int i = offset; i < offset + unitSize; i++) {
+            if (memory[i] != other.memory[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    byte[] getUnit(int unit) {
+        return Arrays.copyOfRange(memory, unit * unitSize, (unit + 1) * unitSize);
+    }
+
+    byte[] toByteArray() {
+        int unitCount = getUnitCount();
+        byte[] bytes = new byte[MAGIC.length + 3 + uid.length + 3 + unitCount + memory.length];
+        int offset = 0;
+        System.arraycopy(MAGIC, 0, bytes, offset, MAGIC.length);
+        offset += MAGIC.length;
+        bytes[offset++] = VERSION;
+        bytes[offset++] = tech;
+        bytes[offset++] = (byte) uid.length;
+        System.arraycopy(uid, 0, bytes, offset, uid.length);
+        offset += uid.length;
+        bytes[offset++] = (byte) unitSize;
+        bytes[offset++] = (byte) (unitCount >> 8);
+        bytes[offset++] = (byte) unitCount;
+        System.arraycopy(access, 0, bytes, offset, unitCount);
+        offset += unitCount;
+        System.arraycopy(memory, 0, bytes, offset, memory.length);
+        return bytes;
+    }
+
+    static TagSnapshot fromByteArray(byte[] bytes) {
+        if (bytes.length < MAGIC.length + 3 || !Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length))) {
+            throw new IllegalArgumentException("not a tag snapshot");
+        }
+        int offset = MAGIC.length;
+        int version = bytes[offset++];
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported snapshot version " + version);
+        }
+        byte tech = bytes[offset++];
+        if (tech != TECH_MIFARE_ULTRALIGHT && tech != TECH_MIFARE_CLASSIC && tech != TECH_NFCV) {
+            throw new IllegalArgumentException("unsupported snapshot tech " + tech);
+        }
+        int uidLength = bytes[offset++] & 0xFF;
+        if (bytes.length < offset + uidLength + 3) {
+            throw new IllegalArgumentException("truncated snapshot");
+        }
+        byte[] uid = Arrays.copyOfRange(bytes, offset, offset + uidLength);
+        offset += uidLength;
+        int unitSize = bytes[offset++] & 0xFF;
+        int unitCount = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+        offset += 2;
+        if (unitSize == 0 || bytes.length != offset + unitCount + unitCount * unitSize) {
+            throw new IllegalArgumentException("truncated snapshot");
+        }
+        byte[] access = Arrays.copyOfRange(bytes, offset, offset + unitCount);
+        offset += unitCount;
+        byte[] memory = Arrays.copyOfRange(bytes, offset, bytes.length);
+        return new TagSnapshot(tech, uid, unitSize, access, memory);
+    }
+}
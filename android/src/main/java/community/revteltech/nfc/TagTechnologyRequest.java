@@ -1,5 +1,7 @@
 package community.revteltech.nfc;
 
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
 import android.nfc.Tag;
 import android.nfc.tech.TagTechnology;
 import android.nfc.tech.Ndef;
@@ -13,19 +15,34 @@ import android.nfc.tech.NdefFormatable;
 import android.nfc.tech.IsoDep;
 import android.util.Log;
 import com.facebook.react.bridge.*;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 class TagTechnologyRequest {
     static String LOG_TAG = "NfcManager-tech";
-    Tag mTag;
-    TagTechnology mTech;
-    String mTechType; // the actual connected type
+
+    // TagTechnology doesn't provide transceive in its interface, each tech declares its own
+    interface Transceiver {
+        byte[] transceive(byte[] data) throws IOException;
+    }
+
+    // Connected on the NFC thread, read from any thread
+    volatile Tag mTag;
+    volatile TagTechnology mTech;
+    volatile String mTechType; // the actual connected type
+    volatile Transceiver mTransceiver; // resolved once connected, null when the tech can't transceive
+    volatile MifareUltralightUtil.UltralightTag mUltralight; // resolved once connected, null unless MifareUltralight
     ArrayList<Object> mTechTypes; // the desired types
-    Callback mJsCallback;
+    // Keys that opened MIFARE Classic sectors, for as long as the request lasts
+    final MifareUtil.KeyCache mKeyCache = new MifareUtil.KeyCache();
+    // Taken by whichever of the connection or the cancellation settles the request first
+    final AtomicReference<Callback> mJsCallback;
 
     TagTechnologyRequest(ArrayList<Object> techTypes, Callback cb) {
         mTechTypes = techTypes;
-        mJsCallback = cb;
+        mJsCallback = new AtomicReference<>(cb);
     }
 
     String getTechType() {
@@ -33,16 +50,16 @@ class TagTechnologyRequest {
     }
 
     void invokePendingCallbackWithError(String err) {
-        if (mJsCallback != null) {
-            mJsCallback.invoke(err);
-            mJsCallback = null;
+        Callback callback = mJsCallback.getAndSet(null);
+        if (callback != null) {
+            callback.invoke(err);
         }
     }
 
     void invokePendingCallback(String connectedTech) {
-        if (mJsCallback != null) {
-            mJsCallback.invoke(null, connectedTech);
-            mJsCallback = null;
+        Callback callback = mJsCallback.getAndSet(null);
+        if (callback != null) {
+            callback.invoke(null, connectedTech);
         }
     }
 
@@ -58,6 +75,61 @@ class TagTechnologyRequest {
         return mTech != null;
     }
 
+    /** Whether a tag with this tech list offers one of the desired types */
+    boolean isCompatible(List<String> techList) {
+        for (Object techType : mTechTypes) {
+            if (techList.contains("android.nfc.tech." + techType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean canTransceive() {
+        return mTransceiver != null;
+    }
+
+    byte[] transceive(byte[] data) throws IOException {
+        return mTransceiver.transceive(data);
+    }
+
+    MifareUltralightUtil.UltralightTag getUltralightTag() {
+        return mUltralight;
+    }
+
+    /** NDEF message of the tag, read through the connection when it is Ndef, else the one read at discovery */
+    NdefMessage readNdefMessage() throws IOException, FormatException {
+        if (mTech instanceof Ndef) {
+            return ((Ndef) mTech).getNdefMessage();
+        }
+        Ndef ndef = Ndef.get(mTag);
+        if (ndef == null) {
+            throw new IOException("not an NDEF tag");
+        }
+        return ndef.getCachedNdefMessage();
+    }
+
+    private static Transceiver transceiverOf(String techType, TagTechnology tech) {
+        switch (techType) {
+            case "NfcA":
+                return ((NfcA) tech)::transceive;
+            case "NfcB":
+                return ((NfcB) tech)::transceive;
+            case "NfcF":
+                return ((NfcF) tech)::transceive;
+            case "NfcV":
+                return ((NfcV) tech)::transceive;
+            case "IsoDep":
+                return ((IsoDep) tech)::transceive;
+            case "MifareClassic":
+                return ((MifareClassic) tech)::transceive;
+            case "MifareUltralight":
+                return ((MifareUltralight) tech)::transceive;
+            default:
+                return null;
+        }
+    }
+
     boolean connect(Tag tag) {
         if (tag == null) {
             Log.d(LOG_TAG, "received null tag at connect()");
@@ -107,6 +179,8 @@ class TagTechnologyRequest {
                 Log.d(LOG_TAG, "connect to " + techType);
                 mTech.connect();
                 mTechType = techType;
+                mTransceiver = transceiverOf(techType, mTech);
+                mUltralight = mTech instanceof MifareUltralight ? MifareUltralightUtil.ultralightTag((MifareUltralight) mTech) : null;
                 return true;
             } catch (Exception ex) {
                 Log.d(LOG_TAG, "fail to connect tech");
@@ -116,6 +190,8 @@ class TagTechnologyRequest {
         // not connected, restore to default
         mTech = null;
         mTechType = null;
+        mTransceiver = null;
+        mUltralight = null;
 
         return false;
     }
@@ -0,0 +1,80 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of commands sent back to back, stopping at the first response whose status word is
+ * unwanted or at the first failed command. The responses received so far are always kept.
+ */
+class TransceiveBatch {
+    static final String STATUS_OK = "ok";
+    // A status word stopped the batch
+    static final String STATUS_STOPPED = "stopped";
+    static final String STATUS_TAG_LOST = "tag_lost";
+    static final String STATUS_FAILED = "failed";
+
+    static final class Result {
+        final List<byte[]> responses;
+        // Index of the command which stopped the batch, -1 when every command was sent
+        final int stoppedAt;
+        final String status;
+        final String error;
+        // Every command was sent and answered
+        final boolean completed;
+
+        Result(List<byte[]> responses, int stoppedAt, String status, String error, boolean completed) {
+            this.responses = responses;
+            this.stoppedAt = stoppedAt;
+            this.status = status;
+            this.error = error;
+            this.completed = completed;
+        }
+    }
+
+    /**
+     * @param stopOnStatusWords stop after a response ending with one of these, null for none
+     * @param expectedStatusWords stop after a response not ending with one of these, null for any
+     */
+    static Result run(TagTechnologyRequest.Transceiver transceiver, byte[][] commands,
+                      int[] stopOnStatusWords, int[] expectedStatusWords) {
+        List<byte[]> responses = new ArrayList<>(commands.length);
+        for (int i = 0; i < commands.length; i++) {
+            byte[] response;
+            try {
+                response = transceiver.transceive(commands[i]);
+            } catch (TagLostException ex) {
+                return new Result(responses, i, STATUS_TAG_LOST, ex.toString(), false);
+            } catch (IOException ex) {
+                return new Result(responses, i, STATUS_FAILED, ex.toString(), false);
+            }
+            responses.add(response);
+
+            if (shouldStop(response, stopOnStatusWords, expectedStatusWords)) {
+                return new Result(responses, i, STATUS_STOPPED, null, i == commands.length - 1);
+            }
+        }
+        return new Result(responses, -1, STATUS_OK, null, true);
+    }
+
+    static boolean shouldStop(byte[] response, int[] stopOnStatusWords, int[] expectedStatusWords) {
+        if (response == null || response.length < 2 || (stopOnStatusWords == null && expectedStatusWords == null)) {
+            return false;
+        }
+        int sw = ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+        return (stopOnStatusWords != null && contains(stopOnStatusWords, sw))
+                || (expectedStatusWords != null && !contains(expectedStatusWords, sw));
+    }
+
+    private static boolean contains(int[] statusWords, int sw) {
+        for (int statusWord : statusWords) {
+            if (statusWord == sw) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,66 +5,57 @@ import android.nfc.NdefRecord;
 import android.nfc.Tag;
 import android.nfc.tech.Ndef;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 
 public class Util {
 
     static final String TAG = "NfcPlugin";
     final protected static char[] hexArray = "0123456789ABCDEF".toCharArray();
 
-    static JSONObject ndefToJSON(Ndef ndef) {
-        JSONObject json = new JSONObject();
+    static WritableMap ndefToReact(Ndef ndef) {
+        WritableMap map = Arguments.createMap();
 
         if (ndef != null) {
-            try {
+            Tag tag = ndef.getTag();
+            // tag is going to be null for NDEF_FORMATABLE until NfcUtil.parseMessage is refactored
+            if (tag != null) {
+                map.putString("id", bytesToHex(tag.getId()));
+                map.putArray("techTypes", Arguments.fromArray(tag.getTechList()));
+            }
 
-                Tag tag = ndef.getTag();
-                // tag is going to be null for NDEF_FORMATABLE until NfcUtil.parseMessage is refactored
-                if (tag != null) {
-                    json.put("id", bytesToHex(tag.getId()));
-                    json.put("techTypes", new JSONArray(Arrays.asList(tag.getTechList())));
-                }
-
-                json.put("type", translateType(ndef.getType()));
-                json.put("maxSize", ndef.getMaxSize());
-                json.put("isWritable", ndef.isWritable());
-                json.put("ndefMessage", messageToJSON(ndef.getCachedNdefMessage()));
-                // Workaround for bug in ICS (Android 4.0 and 4.0.1) where
-                // mTag.getTagService(); of the Ndef object sometimes returns null
-                // see http://issues.mroland.at/index.php?do=details&task_id=47
-                try {
-                    json.put("canMakeReadOnly", ndef.canMakeReadOnly());
-                } catch (NullPointerException e) {
-                    json.put("canMakeReadOnly", JSONObject.NULL);
-                } catch (SecurityException e) {
-                    Log.e(TAG, "Failed due to out of date tag", e);
-                    json.put("canMakeReadOnly", JSONObject.NULL);
-                }   
-            } catch (JSONException e) {
-                Log.e(TAG, "Failed to convert ndef into json: " + ndef, e);
+            map.putString("type", translateType(ndef.getType()));
+            map.putInt("maxSize", ndef.getMaxSize());
+            map.putBoolean("isWritable", ndef.isWritable());
+            WritableArray message = messageToReact(ndef.getCachedNdefMessage());
+            if (message != null) {
+                map.putArray("ndefMessage", message);
+            }
+            // Workaround for bug in ICS (Android 4.0 and 4.0.1) where
+            // mTag.getTagService(); of the Ndef object sometimes returns null
+            // see http://issues.mroland.at/index.php?do=details&task_id=47
+            try {
+                map.putBoolean("canMakeReadOnly", ndef.canMakeReadOnly());
+            } catch (NullPointerException e) {
+                map.putNull("canMakeReadOnly");
+            } catch (SecurityException e) {
+                Log.e(TAG, "Failed due to out of date tag", e);
+                map.putNull("canMakeReadOnly");
             }
         }
-        return json;
+        return map;
     }
 
-    static JSONObject tagToJSON(Tag tag) {
-        JSONObject json = new JSONObject();
+    static WritableMap tagToReact(Tag tag) {
+        WritableMap map = Arguments.createMap();
 
         if (tag != null) {
-            try {
-                json.put("id", bytesToHex(tag.getId()));
-                json.put("techTypes", new JSONArray(Arrays.asList(tag.getTechList())));
-            } catch (JSONException e) {
-                Log.e(TAG, "Failed to convert tag into json: " + tag, e);
-            }
+            map.putString("id", bytesToHex(tag.getId()));
+            map.putArray("techTypes", Arguments.fromArray(tag.getTechList()));
         }
-        return json;
+        return map;
     }
 
     static String translateType(String type) {
@@ -89,15 +80,6 @@ public class Util {
         return translation;
     }
 
-    static JSONArray byteArrayToJSON(byte[] bytes) {
-        JSONArray json = new JSONArray();
-        for (byte aByte : bytes) {
-            int v = aByte & 0xFF;
-            json.put(v);
-        }
-        return json;
-    }
-
     public static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
 
@@ -111,32 +93,29 @@ public class Util {
         return new String(hexChars);
     }
 
-    static JSONArray messageToJSON(NdefMessage message) {
+    static WritableArray messageToReact(NdefMessage message) {
         if (message == null) {
             return null;
         }
 
-        List<JSONObject> list = new ArrayList<>();
-
+        WritableArray array = Arguments.createArray();
         for (NdefRecord ndefRecord : message.getRecords()) {
-            list.add(recordToJSON(ndefRecord));
+            array.pushMap(recordToReact(ndefRecord));
         }
-
-        return new JSONArray(list);
+        return array;
     }
 
-    static JSONObject recordToJSON(NdefRecord record) {
-        JSONObject json = new JSONObject();
-        try {
-            json.put("tnf", record.getTnf());
-            json.put("type", byteArrayToJSON(record.getType()));
-            json.put("id", bytesToHex(record.getId()));
-            json.put("payload", byteArrayToJSON(record.getPayload()));
-        } catch (JSONException e) {
-            //Not sure why this would happen, documentation is unclear.
-            Log.e(TAG, "Failed to convert ndef record into json: " + record, e);
+    static WritableMap recordToReact(NdefRecord record) {
+        WritableMap map = Arguments.createMap();
+        map.putInt("tnf", record.getTnf());
+        WritableArray type = Arguments.createArray();
+        for (byte aByte : record.getType()) {
+            type.pushInt(aByte & 0xFF);
         }
-        return json;
+        map.putArray("type", type);
+        map.putString("id", bytesToHex(record.getId()));
+        ByteEncoding.putBytes(map, "payload", record.getPayload());
+        return map;
     }
 
 }
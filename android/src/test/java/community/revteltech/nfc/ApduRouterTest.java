@@ -0,0 +1,140 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ApduRouterTest {
+    private static final String PAY = "A0000000031010";
+    private static final String PAY_DEBIT = "A0000000032010";
+    private static final String LOYALTY = "F0010203040506";
+
+    private final List<String> events = new ArrayList<>();
+
+    private final class Application extends HceApplication {
+        final String name;
+
+        Application(String name) {
+            this.name = name;
+            on(0x00, 0xCA, command -> new byte[]{(byte) name.charAt(0), (byte) 0x90, 0x00});
+            // Any logical channel and secure messaging
+            on(0x00, 0xF0, 0xB2, command -> new byte[]{command[0], (byte) 0x90, 0x00});
+        }
+
+        @Override
+        protected byte[] onSelect(byte[] commandApdu) {
+            events.add("select " + name);
+            return ApduUtil.A_OK;
+        }
+
+        @Override
+        protected void onDeselect() {
+            events.add("deselect " + name);
+        }
+    }
+
+    // SELECT by DF name, P2 b2-b1 the occurrence
+    private static byte[] select(String aid, int occurrence) {
+        byte[] bytes = ApduUtil.hexStringToByteArray(aid);
+        byte[] command = new byte[6 + bytes.length];
+        command[1] = (byte) 0xA4;
+        command[2] = 0x04;
+        command[3] = (byte) occurrence;
+        command[4] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, command, 5, bytes.length);
+        return command;
+    }
+
+    private static AidRegistry registry(HceApplication... applications) {
+        TreeMap<String, HceApplication> registered = new TreeMap<>();
+        String[] aids = {PAY, PAY_DEBIT, LOYALTY};
+        for (int i = 0; i < applications.length; i++) {
+            registered.put(aids[i], applications[i]);
+        }
+        return AidRegistry.compile(registered);
+    }
+
+    @Test
+    public void selectsExactAndPartialAids() {
+        Application pay = new Application("pay");
+        Application debit = new Application("debit");
+        Application loyalty = new Application("loyalty");
+        AidRegistry registry = registry(pay, debit, loyalty);
+
+        assertSame(loyalty, registry.application(registry.select(select(LOYALTY, 0), AidRegistry.NOT_FOUND)));
+        assertSame(debit, registry.application(registry.select(select(PAY_DEBIT, 0), AidRegistry.NOT_FOUND)));
+        // Partial AID, first and last occurrence
+        assertSame(pay, registry.application(registry.select(select("A000000003", 0), AidRegistry.NOT_FOUND)));
+        assertSame(debit, registry.application(registry.select(select("A000000003", 1), AidRegistry.NOT_FOUND)));
+        assertEquals(AidRegistry.NOT_FOUND, registry.select(select("A000000004", 0), AidRegistry.NOT_FOUND));
+        assertEquals(AidRegistry.NOT_FOUND, registry.select(select(PAY + "00", 0), AidRegistry.NOT_FOUND));
+    }
+
+    @Test
+    public void walksOccurrencesFromTheCurrentApplication() {
+        AidRegistry registry = registry(new Application("pay"), new Application("debit"), new Application("loyalty"));
+        int first = registry.select(select("A000000003", 0), AidRegistry.NOT_FOUND);
+
+        int next = registry.select(select("A000000003", 2), first);
+        assertEquals(first + 1, next);
+        assertEquals(AidRegistry.NOT_FOUND, registry.select(select("A000000003", 2), next));
+        assertEquals(first, registry.select(select("A000000003", 3), next));
+        assertEquals(AidRegistry.NOT_FOUND, registry.select(select("A000000003", 3), first));
+    }
+
+    @Test
+    public void emptyRegistrySelectsNothing() {
+        assertEquals(AidRegistry.NOT_FOUND, AidRegistry.EMPTY.select(select(PAY, 0), AidRegistry.NOT_FOUND));
+    }
+
+    @Test
+    public void routesCommandsToTheSelectedApplication() {
+        ApduRouter router = new ApduRouter();
+        router.register(PAY.toLowerCase(), new Application("pay"));
+        router.register(LOYALTY, new Application("loyalty"));
+        byte[] getData = {0x00, (byte) 0xCA, 0x00, 0x00, 0x00};
+
+        assertSame(ApduUtil.A_FILE_NOT_FOUND, router.route(getData));
+        assertSame(ApduUtil.A_OK, router.route(select(PAY, 0)));
+        assertArrayEquals(new byte[]{'p', (byte) 0x90, 0x00}, router.route(getData));
+
+        // A failed selection keeps the current application
+        assertSame(ApduUtil.A_FILE_NOT_FOUND, router.route(select("F0FFFFFFFF", 0)));
+        assertArrayEquals(new byte[]{'p', (byte) 0x90, 0x00}, router.route(getData));
+
+        router.route(select(LOYALTY, 0));
+        assertArrayEquals(new byte[]{'l', (byte) 0x90, 0x00}, router.route(getData));
+        router.deselect();
+        assertSame(ApduUtil.A_FILE_NOT_FOUND, router.route(getData));
+
+        assertEquals("[select pay, deselect pay, select loyalty, deselect loyalty]", events.toString());
+    }
+
+    @Test
+    public void unknownInstructionsGoToTheFallback() {
+        ApduRouter router = new ApduRouter();
+        router.register(PAY, new Application("pay"));
+        router.route(select(PAY, 0));
+        assertSame(ApduUtil.A_ERROR, router.route(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x00}));
+    }
+
+    @Test
+    public void matchesTheFullClassOrTheMaskedBits() {
+        ApduRouter router = new ApduRouter();
+        router.register(PAY, new Application("pay"));
+        router.route(select(PAY, 0));
+
+        assertSame(ApduUtil.A_CLA_NOT_SUPPORTED, router.route(new byte[]{0x01, (byte) 0xCA, 0x00, 0x00, 0x00}));
+        assertSame(ApduUtil.A_CLA_NOT_SUPPORTED, router.route(new byte[]{0x40, (byte) 0xCA, 0x00, 0x00, 0x00}));
+        assertArrayEquals(new byte[]{0x0D, (byte) 0x90, 0x00}, router.route(new byte[]{0x0D, (byte) 0xB2, 0x00, 0x00, 0x00}));
+        assertSame(ApduUtil.A_CLA_NOT_SUPPORTED, router.route(new byte[]{0x10, (byte) 0xB2, 0x00, 0x00, 0x00}));
+        // Proprietary classes have their own handlers
+        assertSame(ApduUtil.A_ERROR, router.route(new byte[]{(byte) 0x80, (byte) 0xCA, 0x00, 0x00, 0x00}));
+    }
+}
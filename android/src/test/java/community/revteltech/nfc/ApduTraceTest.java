@@ -0,0 +1,83 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ApduTraceTest {
+    private static byte[] apdu(int i) {
+        return new byte[]{0x00, (byte) 0xB0, 0x00, (byte) i};
+    }
+
+    @Test
+    public void drainsInOrderAndCopiesResponses() {
+        ApduTrace trace = new ApduTrace(4);
+        byte[] response = {0x01, (byte) 0x90, 0x00};
+        trace.record(apdu(1), response);
+        response[0] = 0x02;
+        trace.record(apdu(2), response);
+
+        List<ApduTrace.Entry> drained = new ArrayList<>();
+        assertEquals(2, trace.drain(drained::add));
+        assertArrayEquals(apdu(1), drained.get(0).command);
+        assertArrayEquals(new byte[]{0x01, (byte) 0x90, 0x00}, drained.get(0).response);
+        assertArrayEquals(new byte[]{0x02, (byte) 0x90, 0x00}, drained.get(1).response);
+        assertEquals(0, trace.drain(drained::add));
+    }
+
+    @Test
+    public void dropsAndCountsEntriesWhenFull() {
+        ApduTrace trace = new ApduTrace(3);
+        for (int i = 0; i < 6; i++) {
+            trace.record(apdu(i), ApduUtil.A_OK);
+        }
+
+        List<ApduTrace.Entry> drained = new ArrayList<>();
+        // Capacity rounded up to 4
+        assertEquals(4, trace.drain(drained::add));
+        assertArrayEquals(apdu(3), drained.get(3).command);
+        assertEquals(2, trace.takeDropped());
+        assertEquals(0, trace.takeDropped());
+
+        trace.record(apdu(6), ApduUtil.A_OK);
+        drained.clear();
+        assertEquals(1, trace.drain(drained::add));
+        assertArrayEquals(apdu(6), drained.get(0).command);
+    }
+
+    private static int sequence(ApduTrace.Entry entry) {
+        return ByteBuffer.wrap(entry.command).getInt();
+    }
+
+    @Test
+    public void keepsRecordingOrderAcrossAConcurrentDrain() throws Exception {
+        ApduTrace trace = new ApduTrace(64);
+        int count = 100000;
+        AtomicBoolean done = new AtomicBoolean();
+        List<Integer> seen = new ArrayList<>();
+        Thread consumer = new Thread(() -> {
+            while (!done.get()) {
+                trace.drain(entry -> seen.add(sequence(entry)));
+            }
+            trace.drain(entry -> seen.add(sequence(entry)));
+        });
+        consumer.start();
+        for (int i = 0; i < count; i++) {
+            trace.record(ByteBuffer.allocate(4).putInt(i).array(), ApduUtil.A_OK);
+        }
+        done.set(true);
+        consumer.join(10000);
+
+        assertEquals(count, seen.size() + trace.takeDropped());
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue("entry " + seen.get(i) + " after " + seen.get(i - 1), seen.get(i) > seen.get(i - 1));
+        }
+    }
+}
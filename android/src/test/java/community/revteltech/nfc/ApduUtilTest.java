@@ -0,0 +1,52 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApduUtilTest {
+    @Test
+    public void capabilityContainerFollowsTheNdefFileSize() {
+        byte[] cc = ApduUtil.buildCapabilityContainer(100, false);
+        assertEquals(15, cc.length);
+        assertEquals(100, ApduUtil.getMaxNdefFileSize(cc));
+        assertEquals(100, ApduUtil.getMaxLe(cc));
+        assertEquals((byte) 0xFF, cc[14]);
+    }
+
+    @Test
+    public void capabilityContainerCapsTheDataSizeToTheApduMode() {
+        assertEquals(ApduUtil.SHORT_MAX_DATA_SIZE, ApduUtil.getMaxLe(ApduUtil.buildCapabilityContainer(4000, false)));
+        assertEquals(4000, ApduUtil.getMaxLe(ApduUtil.buildCapabilityContainer(4000, true)));
+    }
+
+    @Test
+    public void capabilityContainerStaysWithinTheSpecificationBounds() {
+        byte[] tiny = ApduUtil.buildCapabilityContainer(1, false);
+        assertEquals(0x0005, ApduUtil.getMaxNdefFileSize(tiny));
+        assertEquals(0x0F, ApduUtil.getMaxLe(tiny));
+        assertEquals(0xFFFE, ApduUtil.getMaxNdefFileSize(ApduUtil.buildCapabilityContainer(0x10000, true)));
+    }
+
+    @Test
+    public void writableCapabilityContainerGrantsRoomAndWriteAccess() {
+        byte[] cc = ApduUtil.buildCapabilityContainer(100, false, true);
+        assertEquals(ApduUtil.WRITABLE_NDEF_FILE_SIZE, ApduUtil.getMaxNdefFileSize(cc));
+        assertEquals((byte) 0x00, cc[14]);
+    }
+
+    @Test
+    public void validatesAids() {
+        assertTrue(ApduUtil.isValidAid(ApduUtil.NDEF_APP_AID));
+        assertTrue(ApduUtil.isValidAid("a0000000031010"));
+        assertTrue(ApduUtil.isValidAid("F000000001"));
+        assertTrue(ApduUtil.isValidAid("A0000000000000000000000000000001"));
+        assertFalse(ApduUtil.isValidAid(null));
+        assertFalse(ApduUtil.isValidAid("F0000001"));
+        assertFalse(ApduUtil.isValidAid("A000000000000000000000000000000001"));
+        assertFalse(ApduUtil.isValidAid("F00000000"));
+        assertFalse(ApduUtil.isValidAid("F00000000G"));
+    }
+}
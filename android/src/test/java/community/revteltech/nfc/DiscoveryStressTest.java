@@ -0,0 +1,125 @@
+package community.revteltech.nfc;
+
+import com.facebook.react.bridge.Callback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Discoveries, tag I/O and cancellations fired from different threads at once, as the reader mode
+ * binder thread, the JS thread and a cancelTechnologyRequest do. Every request and every I/O call
+ * must be settled exactly once, the NFC thread never runs two tasks at once, and cancelling a
+ * request never drops a discovered tag.
+ */
+public class DiscoveryStressTest {
+    private static final int REQUESTS = 2000;
+    private static final int IO_PER_REQUEST = 3;
+    private static final String CANCELLED = "cancelled";
+
+    private static Callback counting(AtomicInteger count) {
+        return args -> count.incrementAndGet();
+    }
+
+    @Test
+    public void settlesEveryCallbackExactlyOnce() throws Exception {
+        NfcExecutor executor = new NfcExecutor();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger discoveries = new AtomicInteger();
+
+        List<TagTechnologyRequest> requests = new ArrayList<>();
+        List<AtomicInteger> requestSettled = new ArrayList<>();
+        List<AtomicInteger> ioSettled = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            AtomicInteger settled = new AtomicInteger();
+            TagTechnologyRequest request = new TagTechnologyRequest(new ArrayList<Object>(), counting(settled));
+            request.mTransceiver = data -> new byte[]{(byte) 0x90, 0x00};
+            requests.add(request);
+            requestSettled.add(settled);
+            ioSettled.add(new AtomicInteger());
+        }
+
+        Runnable discovery = () -> {
+            for (TagTechnologyRequest request : requests) {
+                executor.execute(() -> {
+                    enter(inFlight, overlaps);
+                    discoveries.incrementAndGet();
+                    request.invokePendingCallback("NfcA");
+                    inFlight.decrementAndGet();
+                });
+            }
+        };
+        Runnable io = () -> {
+            for (int i = 0; i < REQUESTS; i++) {
+                TagTechnologyRequest request = requests.get(i);
+                Callback callback = counting(ioSettled.get(i));
+                for (int j = 0; j < IO_PER_REQUEST; j++) {
+                    executor.execute(request, () -> {
+                        enter(inFlight, overlaps);
+                        try {
+                            callback.invoke(null, request.transceive(new byte[]{0x30, 0x04}));
+                        } catch (Exception ex) {
+                            callback.invoke(ex.toString());
+                        }
+                        inFlight.decrementAndGet();
+                    }, () -> callback.invoke(CANCELLED));
+                }
+            }
+        };
+        Runnable cancel = () -> {
+            for (TagTechnologyRequest request : requests) {
+                executor.cancelPending(request);
+                request.invokePendingCallbackWithError(CANCELLED);
+            }
+        };
+
+        runConcurrently(discovery, io, cancel);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals("overlapping tasks", 0, overlaps.get());
+        assertEquals("discovered tags dropped", REQUESTS, discoveries.get());
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals("request " + i, 1, requestSettled.get(i).get());
+            assertEquals("I/O of request " + i, IO_PER_REQUEST, ioSettled.get(i).get());
+        }
+    }
+
+    private static void enter(AtomicInteger inFlight, AtomicInteger overlaps) {
+        if (inFlight.incrementAndGet() != 1) {
+            overlaps.incrementAndGet();
+        }
+    }
+
+    private static void runConcurrently(Runnable... tasks) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (Runnable task : tasks) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                task.run();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory MIFARE Classic 1K: keys and write access per sector, records the commands and can lose
+ * the tag after a number of them, as {@link FakeTagTechnology} does for transceive based techs.
+ */
+class FakeMifareClassic implements MifareUtil.ClassicTag {
+    static final int SECTOR_COUNT = 16;
+    static final int BLOCKS_PER_SECTOR = 4;
+
+    final List<String> commands = new ArrayList<>();
+    final byte[][] blocks = new byte[SECTOR_COUNT * BLOCKS_PER_SECTOR][16];
+    private final byte[][] keysA = new byte[SECTOR_COUNT][];
+    private final byte[][] keysB = new byte[SECTOR_COUNT][];
+    // Key type granted writes per sector, 'A', 'B' or '*' for both
+    private final char[] writeKey = new char[SECTOR_COUNT];
+    private final boolean[] readDenied = new boolean[SECTOR_COUNT];
+    private int remaining = Integer.MAX_VALUE;
+    private int authenticatedSector = -1;
+    private boolean authenticatedKeyA;
+    private Integer transferValue;
+
+    FakeMifareClassic() {
+        Arrays.fill(writeKey, '*');
+    }
+
+    FakeMifareClassic keys(int sector, byte[] keyA, byte[] keyB) {
+        keysA[sector] = keyA;
+        keysB[sector] = keyB;
+        return this;
+    }
+
+    FakeMifareClassic writeKey(int sector, char keyType) {
+        writeKey[sector] = keyType;
+        return this;
+    }
+
+    FakeMifareClassic denyReads(int sector) {
+        readDenied[sector] = true;
+        return this;
+    }
+
+    /** Commands after the next count throw a TagLostException */
+    FakeMifareClassic loseTagAfter(int count) {
+        remaining = count;
+        return this;
+    }
+
+    @Override
+    public int getBlockCountInSector(int sector) {
+        return BLOCKS_PER_SECTOR;
+    }
+
+    @Override
+    public int sectorToBlock(int sector) {
+        return sector * BLOCKS_PER_SECTOR;
+    }
+
+    @Override
+    public int blockToSector(int block) {
+        return block / BLOCKS_PER_SECTOR;
+    }
+
+    @Override
+    public boolean authenticateSectorWithKeyA(int sector, byte[] key) throws IOException {
+        return authenticate("authA", sector, keysA[sector], key, true);
+    }
+
+    @Override
+    public boolean authenticateSectorWithKeyB(int sector, byte[] key) throws IOException {
+        return authenticate("authB", sector, keysB[sector], key, false);
+    }
+
+    private boolean authenticate(String command, int sector, byte[] sectorKey, byte[] key, boolean keyA) throws IOException {
+        send(command + " " + sector);
+        if (sectorKey == null || !Arrays.equals(sectorKey, key)) {
+            authenticatedSector = -1;
+            return false;
+        }
+        authenticatedSector = sector;
+        authenticatedKeyA = keyA;
+        return true;
+    }
+
+    @Override
+    public byte[] readBlock(int block) throws IOException {
+        send("read " + block);
+        checkAuthenticated(block);
+        if (readDenied[blockToSector(block)]) {
+            throw new IOException("read denied");
+        }
+        return blocks[block].clone();
+    }
+
+    @Override
+    public void writeBlock(int block, byte[] data) throws IOException {
+        send("write " + block);
+        checkWritable(block);
+        blocks[block] = data.clone();
+    }
+
+    @Override
+    public void increment(int block, int value) throws IOException {
+        send("increment " + block);
+        transferValue = value(block) + value;
+    }
+
+    @Override
+    public void decrement(int block, int value) throws IOException {
+        send("decrement " + block);
+        transferValue = value(block) - value;
+    }
+
+    @Override
+    public void restore(int block) throws IOException {
+        send("restore " + block);
+        transferValue = value(block);
+    }
+
+    @Override
+    public void transfer(int block) throws IOException {
+        send("transfer " + block);
+        checkWritable(block);
+        if (transferValue == null) {
+            throw new IOException("nothing to transfer");
+        }
+        blocks[block] = valueBlock(transferValue, block);
+        transferValue = null;
+    }
+
+    static byte[] valueBlock(int value, int address) {
+        byte[] block = new byte[16];
+        for (int i = 0; i < 4; i++) {
+            block[i] = (byte) (value >> (8 * i));
+            block[i + 4] = (byte) ~block[i];
+            block[i + 8] = block[i];
+        }
+        block[12] = (byte) address;
+        block[13] = (byte) ~address;
+        block[14] = (byte) address;
+        block[15] = (byte) ~address;
+        return block;
+    }
+
+    private int value(int block) throws IOException {
+        checkAuthenticated(block);
+        Integer value = MifareUtil.parseValueBlock(blocks[block]);
+        if (value == null) {
+            throw new IOException("not a value block");
+        }
+        return value;
+    }
+
+    private void send(String command) throws TagLostException {
+        commands.add(command);
+        if (remaining-- <= 0) {
+            throw new TagLostException();
+        }
+    }
+
+    private void checkAuthenticated(int block) throws IOException {
+        if (authenticatedSector != blockToSector(block)) {
+            throw new IOException("sector not authenticated");
+        }
+    }
+
+    private void checkWritable(int block) throws IOException {
+        checkAuthenticated(block);
+        char keyType = writeKey[blockToSector(block)];
+        if (keyType != '*' && keyType != (authenticatedKeyA ? 'A' : 'B')) {
+            throw new IOException("write denied");
+        }
+    }
+}
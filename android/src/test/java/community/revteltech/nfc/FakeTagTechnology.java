@@ -0,0 +1,122 @@
+package community.revteltech.nfc;
+
+import android.nfc.Tag;
+import android.nfc.TagLostException;
+import android.nfc.tech.TagTechnology;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scripted tag technology: answers the queued responses in order, records the commands, and can
+ * block a transceive until it is closed, as the radio does with a slow tag.
+ *
+ * As a MIFARE Ultralight, READ and WRITE are sent as their raw commands.
+ */
+class FakeTagTechnology implements TagTechnology, MifareUltralightUtil.UltralightTag {
+    final List<byte[]> commands = new ArrayList<>();
+    int maxTransceiveLength = 253;
+    int reconnects = 0;
+    private final Deque<Object> responses = new ArrayDeque<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile boolean blocking = false;
+
+    FakeTagTechnology respond(int... bytes) {
+        byte[] response = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            response[i] = (byte) bytes[i];
+        }
+        responses.add(response);
+        return this;
+    }
+
+    /** The next transceive throws, a TagLostException for a lost tag */
+    FakeTagTechnology fail(IOException ex) {
+        responses.add(ex);
+        return this;
+    }
+
+    /** Transceives block until the tech is closed */
+    FakeTagTechnology blocking() {
+        blocking = true;
+        return this;
+    }
+
+    /** A tech request connected to this tech */
+    TagTechnologyRequest connectedRequest() {
+        TagTechnologyRequest request = new TagTechnologyRequest(new ArrayList<Object>(), null);
+        request.mTech = this;
+        request.mTechType = "NfcA";
+        request.mTransceiver = this;
+        return request;
+    }
+
+    @Override
+    public synchronized byte[] transceive(byte[] data) throws IOException {
+        commands.add(data.clone());
+        if (blocking) {
+            try {
+                closed.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new TagLostException();
+        }
+        Object response = responses.poll();
+        if (response == null) {
+            throw new TagLostException();
+        }
+        if (response instanceof IOException) {
+            throw (IOException) response;
+        }
+        return (byte[]) response;
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return maxTransceiveLength;
+    }
+
+    @Override
+    public byte[] readPages(int pageOffset) throws IOException {
+        return transceive(new byte[]{0x30, (byte) pageOffset});
+    }
+
+    @Override
+    public void writePage(int pageOffset, byte[] data) throws IOException {
+        byte[] command = new byte[2 + data.length];
+        command[0] = (byte) 0xA2;
+        command[1] = (byte) pageOffset;
+        System.arraycopy(data, 0, command, 2, data.length);
+        transceive(command);
+    }
+
+    @Override
+    public void reconnect() {
+        reconnects++;
+    }
+
+    @Override
+    public Tag getTag() {
+        return null;
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return closed.getCount() > 0;
+    }
+}
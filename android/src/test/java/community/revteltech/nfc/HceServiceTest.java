@@ -0,0 +1,73 @@
+package community.revteltech.nfc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HceServiceTest {
+    private static final int THREADS = 8;
+    private static final int URLS_PER_THREAD = 50;
+
+    @Before
+    public void setUp() {
+        HceService.clearAllData();
+    }
+
+    @After
+    public void tearDown() {
+        HceService.clearAllData();
+    }
+
+    @Test
+    public void concurrentUpdatesAreAppliedOnceAndNoneIsLost() throws Exception {
+        AtomicInteger applied = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < URLS_PER_THREAD; i++) {
+                    String url = "https://example.com/" + id + "/" + i;
+                    HceService.updateContent(current -> {
+                        applied.incrementAndGet();
+                        return current.withSimpleUrl(url);
+                    });
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+
+        assertEquals(THREADS * URLS_PER_THREAD, applied.get());
+        HceContent content = HceService.getContent();
+        assertEquals(THREADS * URLS_PER_THREAD, new HashSet<>(content.simpleUrls).size());
+        assertTrue(content.active);
+    }
+
+    @Test
+    public void clearingReplacesTheWholeContent() {
+        HceService.updateContent(current -> current.withSimpleUrl("https://example.com"));
+        HceService.clearAllData();
+
+        assertTrue(HceService.getContent().simpleUrls.isEmpty());
+        assertEquals(false, HceService.getContent().active);
+    }
+}
@@ -0,0 +1,117 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class IsoDepUtilTest {
+    private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, 0x3F, 0x00, 0x00};
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void followsGetResponse() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology()
+                .respond(0x01, 0x02, 0x61, 0x02)
+                .respond(0x03, 0x04, 0x61, 0x01)
+                .respond(0x05, 0x90, 0x00);
+
+        byte[] response = IsoDepUtil.transceive(tech, SELECT, 261, true, true);
+
+        assertArrayEquals(bytes(0x01, 0x02, 0x03, 0x04, 0x05, 0x90, 0x00), response);
+        assertEquals(3, tech.commands.size());
+        assertArrayEquals(bytes(0x00, 0xC0, 0x00, 0x00, 0x02), tech.commands.get(1));
+        assertArrayEquals(bytes(0x00, 0xC0, 0x00, 0x00, 0x01), tech.commands.get(2));
+    }
+
+    @Test
+    public void sendsGetResponseOnTheLogicalChannelOfTheCommand() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x61, 0x01).respond(0x01, 0x90, 0x00);
+        byte[] apdu = SELECT.clone();
+        apdu[0] = 0x02;
+
+        IsoDepUtil.transceive(tech, apdu, 261, true, true);
+
+        assertEquals(0x02, tech.commands.get(1)[0]);
+    }
+
+    @Test
+    public void retriesWithTheExpectedLe() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x6C, 0x10).respond(0x01, 0x90, 0x00);
+
+        byte[] response = IsoDepUtil.transceive(tech, SELECT, 261, true, true);
+
+        assertArrayEquals(bytes(0x01, 0x90, 0x00), response);
+        byte[] retried = SELECT.clone();
+        retried[retried.length - 1] = 0x10;
+        assertArrayEquals(retried, tech.commands.get(1));
+    }
+
+    @Test
+    public void appendsLeToACommandWithoutOne() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x6C, 0x08).respond(0x90, 0x00);
+
+        IsoDepUtil.transceive(tech, bytes(0x00, 0xA4, 0x04, 0x00, 0x01, 0x3F), 261, true, true);
+
+        assertArrayEquals(bytes(0x00, 0xA4, 0x04, 0x00, 0x01, 0x3F, 0x08), tech.commands.get(1));
+    }
+
+    @Test
+    public void returnsRawResponsesWithoutGetResponse() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x61, 0x10);
+
+        assertArrayEquals(bytes(0x61, 0x10), IsoDepUtil.transceive(tech, SELECT, 261, true, false));
+        assertEquals(1, tech.commands.size());
+    }
+
+    @Test
+    public void chainsCommandsLongerThanTheTransceiveLimit() throws Exception {
+        byte[] apdu = new byte[5 + 30 + 1];
+        apdu[1] = (byte) 0xDA;
+        apdu[4] = 30;
+        for (int i = 0; i < 30; i++) {
+            apdu[5 + i] = (byte) i;
+        }
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00).respond(0x90, 0x00).respond(0x90, 0x00);
+
+        IsoDepUtil.transceive(tech, apdu, 16, true, true);
+
+        // 10 data bytes per command: header, Lc and Le take 6 of the 16
+        assertEquals(3, tech.commands.size());
+        assertEquals(0x10, tech.commands.get(0)[0]);
+        assertEquals(10, tech.commands.get(0)[4]);
+        assertEquals(0x10, tech.commands.get(1)[0]);
+        assertEquals(0x00, tech.commands.get(2)[0]);
+        byte[] last = tech.commands.get(2);
+        assertEquals(5 + 10 + 1, last.length);
+        assertEquals(20, last[5]);
+    }
+
+    @Test
+    public void stopsTheChainWhenTheCardRefusesIt() throws Exception {
+        byte[] apdu = new byte[5 + 30];
+        apdu[4] = 30;
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x68, 0x84);
+
+        assertArrayEquals(bytes(0x68, 0x84), IsoDepUtil.transceive(tech, apdu, 16, true, true));
+        assertEquals(1, tech.commands.size());
+    }
+
+    @Test
+    public void sendsLongCommandsAsIsWithoutChaining() throws Exception {
+        byte[] apdu = new byte[5 + 30];
+        apdu[4] = 30;
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00);
+
+        IsoDepUtil.transceive(tech, apdu, 16, false, true);
+
+        assertArrayEquals(apdu, tech.commands.get(0));
+    }
+}
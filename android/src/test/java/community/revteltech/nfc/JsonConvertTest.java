@@ -0,0 +1,187 @@
+package community.revteltech.nfc;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonConvertTest {
+    // Numbers arrive from JS as doubles
+    private static JavaOnlyMap sample() {
+        JavaOnlyArray array = JavaOnlyArray.of(1.0, -7.0, "seven", true, null,
+                JavaOnlyMap.of("inner", 3.0), JavaOnlyArray.of(0.0, -0.0));
+        return JavaOnlyMap.of(
+                "zero", 0.0,
+                "negativeZero", -0.0,
+                "int", 42.0,
+                "negative", -42.0,
+                "max", (double) Integer.MAX_VALUE,
+                "min", (double) Integer.MIN_VALUE,
+                "string", "42",
+                "true", true,
+                "false", false,
+                "null", null,
+                "map", JavaOnlyMap.of("nested", 5.0, "array", JavaOnlyArray.of(6.0)),
+                "array", array);
+    }
+
+    @Test
+    public void convertsLikeTheBaselineImplementation() throws Exception {
+        JavaOnlyMap map = sample();
+        assertSameJson(Baseline.reactToJSON(map), JsonConvert.reactToJSON(map));
+
+        ReadableArray array = map.getArray("array");
+        assertSameJson(Baseline.reactToJSON(array), JsonConvert.reactToJSON(array));
+    }
+
+    @Test
+    public void keepsNaNAndInfinitiesAsBefore() throws Exception {
+        JavaOnlyMap map = JavaOnlyMap.of("nan", Double.NaN, "infinity", Double.POSITIVE_INFINITY,
+                "negativeInfinity", Double.NEGATIVE_INFINITY);
+        JSONObject json = JsonConvert.reactToJSON(map);
+        assertSameJson(Baseline.reactToJSON(map), json);
+        assertEquals(0, json.get("nan"));
+
+        JavaOnlyArray array = JavaOnlyArray.of(Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        assertSameJson(Baseline.reactToJSON(array), JsonConvert.reactToJSON(array));
+    }
+
+    @Test
+    public void keepsFractionsAndLargeNumbersAsDoubles() throws Exception {
+        // The baseline truncated them to an int
+        JSONObject json = JsonConvert.reactToJSON(JavaOnlyMap.of("fraction", 1.5, "large", 3e9, "negative", -0.25));
+        assertEquals(1.5, json.get("fraction"));
+        assertEquals(3e9, json.get("large"));
+        assertEquals(-0.25, json.get("negative"));
+
+        JSONArray array = JsonConvert.reactToJSON(JavaOnlyArray.of(2.5, -3e10));
+        assertEquals(2.5, array.get(0));
+        assertEquals(-3e10, array.get(1));
+    }
+
+    @Test
+    public void dispatchesJsonNumbersLikeTheBaseline() {
+        // The baseline sent Float and Double as doubles and any other Number as an int
+        Number[] ints = {0, 42, -1, (short) 7, (byte) -3, 5L, (long) Integer.MIN_VALUE};
+        for (Number number : ints) {
+            assertTrue(String.valueOf(number), JsonConvert.isInt(number));
+        }
+        Number[] doubles = {0.0, 2.0, 1.5, 2.5f, Double.MAX_VALUE};
+        for (Number number : doubles) {
+            assertFalse(String.valueOf(number), JsonConvert.isInt(number));
+        }
+        // The baseline wrapped longs past the int range around
+        assertFalse(JsonConvert.isInt(1L << 40));
+    }
+
+    private static void assertSameJson(Object expected, Object actual) throws JSONException {
+        if (expected instanceof JSONObject) {
+            JSONObject expectedObject = (JSONObject) expected;
+            JSONObject actualObject = (JSONObject) actual;
+            assertEquals(keys(expectedObject), keys(actualObject));
+            for (String key : keys(expectedObject)) {
+                assertSameJson(expectedObject.get(key), actualObject.get(key));
+            }
+        } else if (expected instanceof JSONArray) {
+            JSONArray expectedArray = (JSONArray) expected;
+            JSONArray actualArray = (JSONArray) actual;
+            assertEquals(expectedArray.length(), actualArray.length());
+            for (int i = 0; i < expectedArray.length(); i++) {
+                assertSameJson(expectedArray.get(i), actualArray.get(i));
+            }
+        } else {
+            // Integer and Double are never equal, so the types are compared too
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static List<String> keys(JSONObject object) {
+        List<String> keys = new ArrayList<>();
+        Iterator<String> iterator = object.keys();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+        }
+        return keys;
+    }
+
+    /** reactToJSON as it was before the typed dispatch, with getInt truncating as the bridge does */
+    private static final class Baseline {
+        static JSONObject reactToJSON(ReadableMap readableMap) throws JSONException {
+            JSONObject jsonObject = new JSONObject();
+            ReadableMapKeySetIterator iterator = readableMap.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String key = iterator.nextKey();
+                switch (readableMap.getType(key)) {
+                    case Null:
+                        jsonObject.put(key, JSONObject.NULL);
+                        break;
+                    case Boolean:
+                        jsonObject.put(key, readableMap.getBoolean(key));
+                        break;
+                    case Number:
+                        try {
+                            jsonObject.put(key, readableMap.getInt(key));
+                        } catch (Exception e) {
+                            jsonObject.put(key, readableMap.getDouble(key));
+                        }
+                        break;
+                    case String:
+                        jsonObject.put(key, readableMap.getString(key));
+                        break;
+                    case Map:
+                        jsonObject.put(key, reactToJSON(readableMap.getMap(key)));
+                        break;
+                    case Array:
+                        jsonObject.put(key, reactToJSON(readableMap.getArray(key)));
+                        break;
+                }
+            }
+            return jsonObject;
+        }
+
+        static JSONArray reactToJSON(ReadableArray readableArray) throws JSONException {
+            JSONArray jsonArray = new JSONArray();
+            for (int i = 0; i < readableArray.size(); i++) {
+                switch (readableArray.getType(i)) {
+                    case Null:
+                        jsonArray.put(JSONObject.NULL);
+                        break;
+                    case Boolean:
+                        jsonArray.put(readableArray.getBoolean(i));
+                        break;
+                    case Number:
+                        try {
+                            jsonArray.put(readableArray.getInt(i));
+                        } catch (Exception e) {
+                            jsonArray.put(readableArray.getDouble(i));
+                        }
+                        break;
+                    case String:
+                        jsonArray.put(readableArray.getString(i));
+                        break;
+                    case Map:
+                        jsonArray.put(reactToJSON(readableArray.getMap(i)));
+                        break;
+                    case Array:
+                        jsonArray.put(reactToJSON(readableArray.getArray(i)));
+                        break;
+                }
+            }
+            return jsonArray;
+        }
+    }
+}
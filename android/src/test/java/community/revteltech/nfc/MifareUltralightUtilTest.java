@@ -0,0 +1,165 @@
+package community.revteltech.nfc;
+
+import android.nfc.TagLostException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MifareUltralightUtilTest {
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    // Pages whose 4 bytes are all the page number
+    private static int[] pages(int first, int count) {
+        int[] bytes = new int[count * 4];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = first + i / 4;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void fastReadsInChunksOfTheMaxTransceiveLength() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(pages(4, 4)).respond(pages(8, 4)).respond(pages(12, 2));
+        tech.maxTransceiveLength = 16;
+
+        byte[] data = MifareUltralightUtil.readRange(tech, 4, 13);
+
+        assertEquals(3, tech.commands.size());
+        assertArrayEquals(bytes(0x3A, 4, 7), tech.commands.get(0));
+        assertArrayEquals(bytes(0x3A, 8, 11), tech.commands.get(1));
+        assertArrayEquals(bytes(0x3A, 12, 13), tech.commands.get(2));
+        assertArrayEquals(bytes(pages(4, 10)), data);
+        assertEquals(0, tech.reconnects);
+    }
+
+    @Test
+    public void fallsBackToReadAfterAFastReadNak() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology()
+                .fail(new IOException("Transceive failed"))
+                .respond(pages(4, 4))
+                // READ rolls over, only the first 2 pages are in the range
+                .respond(pages(8, 4));
+
+        byte[] data = MifareUltralightUtil.readRange(tech, 4, 9);
+
+        assertEquals(1, tech.reconnects);
+        assertEquals(3, tech.commands.size());
+        assertArrayEquals(bytes(0x3A, 4, 9), tech.commands.get(0));
+        assertArrayEquals(bytes(0x30, 4), tech.commands.get(1));
+        assertArrayEquals(bytes(0x30, 8), tech.commands.get(2));
+        assertArrayEquals(bytes(pages(4, 6)), data);
+    }
+
+    @Test
+    public void fallsBackToReadAfterAShortFastReadResponse() throws Exception {
+        // A 4-bit NAK reported as a response
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x00).respond(pages(4, 4));
+
+        byte[] data = MifareUltralightUtil.readRange(tech, 4, 5);
+
+        assertEquals(1, tech.reconnects);
+        assertArrayEquals(bytes(0x30, 4), tech.commands.get(1));
+        assertArrayEquals(bytes(pages(4, 2)), data);
+    }
+
+    @Test
+    public void doesNotFallBackWhenTheTagIsLost() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().fail(new TagLostException());
+
+        try {
+            MifareUltralightUtil.readRange(tech, 4, 9);
+            fail("tag lost");
+        } catch (TagLostException ex) {
+            assertEquals(0, tech.reconnects);
+            assertEquals(1, tech.commands.size());
+        }
+    }
+
+    @Test
+    public void readsAWholeNtag215InFewerRoundTripsThanRead() throws Exception {
+        // 135 pages, 63 pages per FAST_READ with the usual 253 bytes transceive limit
+        FakeTagTechnology fastRead = new FakeTagTechnology().respond(pages(0, 63)).respond(pages(63, 63)).respond(pages(126, 9));
+        MifareUltralightUtil.readRange(fastRead, 0, 134);
+
+        FakeTagTechnology read = new FakeTagTechnology().fail(new IOException("Transceive failed"));
+        for (int page = 0; page < 135; page += 4) {
+            read.respond(pages(page, 4));
+        }
+        MifareUltralightUtil.readRange(read, 0, 134);
+
+        assertEquals(3, fastRead.commands.size());
+        assertEquals(1 + 34, read.commands.size());
+    }
+
+    private static final byte[] DATA = bytes(pages(4, 3));
+
+    @Test
+    public void reportsWhereToResumeAfterATagLoss() {
+        // WRITE of page 4 acknowledged, the tag is gone for page 5
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x0A);
+
+        MifareUltralightUtil.WriteRangeResult result = MifareUltralightUtil.writeRange(tech, 4, DATA, false, false);
+
+        assertEquals(MifareUltralightUtil.STATUS_TAG_LOST, result.status);
+        assertEquals(4, result.written);
+        assertArrayEquals(bytes(0xA2, 4, 4, 4, 4, 4), tech.commands.get(0));
+        assertArrayEquals(bytes(0xA2, 5, 5, 5, 5, 5), tech.commands.get(1));
+
+        FakeTagTechnology resumed = new FakeTagTechnology().respond(0x0A).respond(0x0A);
+        int nextPage = 4 + result.written / 4;
+        result = MifareUltralightUtil.writeRange(resumed, nextPage, Arrays.copyOfRange(DATA, result.written, DATA.length), false, false);
+
+        assertEquals(MifareUltralightUtil.STATUS_OK, result.status);
+        assertArrayEquals(bytes(0xA2, 5, 5, 5, 5, 5), resumed.commands.get(0));
+        assertArrayEquals(bytes(0xA2, 6, 6, 6, 6, 6), resumed.commands.get(1));
+    }
+
+    @Test
+    public void reportsTheFirstMismatchedPageOnVerify() {
+        int[] readBack = pages(4, 3);
+        readBack[9] = 0xFF;
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x0A).respond(0x0A).respond(0x0A).respond(readBack);
+
+        MifareUltralightUtil.WriteRangeResult result = MifareUltralightUtil.writeRange(tech, 4, DATA, false, true);
+
+        assertEquals(MifareUltralightUtil.STATUS_VERIFY_FAILED, result.status);
+        assertEquals(8, result.written);
+        assertEquals("page 6 mismatch", result.error);
+        assertArrayEquals(bytes(0x3A, 4, 6), tech.commands.get(3));
+    }
+
+    @Test
+    public void reportsEverythingWrittenWhenTheTagIsLostDuringVerify() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x0A).respond(0x0A).respond(0x0A);
+
+        MifareUltralightUtil.WriteRangeResult result = MifareUltralightUtil.writeRange(tech, 4, DATA, false, true);
+
+        assertEquals(MifareUltralightUtil.STATUS_TAG_LOST, result.status);
+        assertEquals(DATA.length, result.written);
+    }
+
+    @Test
+    public void sendsCompatibilityWritesInTwoSteps() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x0A).respond(0x0A).respond(0x0A).respond(0x00);
+
+        MifareUltralightUtil.WriteRangeResult result = MifareUltralightUtil.writeRange(tech, 4, Arrays.copyOf(DATA, 8), true, false);
+
+        assertEquals(MifareUltralightUtil.STATUS_FAILED, result.status);
+        assertEquals(4, result.written);
+        assertArrayEquals(bytes(0xA0, 4), tech.commands.get(0));
+        assertArrayEquals(bytes(4, 4, 4, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0), tech.commands.get(1));
+        assertArrayEquals(bytes(0xA0, 5), tech.commands.get(2));
+    }
+}
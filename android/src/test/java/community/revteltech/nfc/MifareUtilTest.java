@@ -0,0 +1,185 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MifareUtilTest {
+    private static final String UID = "04A1B2C3";
+    private static final byte[] KEY_A = {(byte) 0xA0, (byte) 0xA1, (byte) 0xA2, (byte) 0xA3, (byte) 0xA4, (byte) 0xA5};
+    private static final byte[] KEY_B = {(byte) 0xB0, (byte) 0xB1, (byte) 0xB2, (byte) 0xB3, (byte) 0xB4, (byte) 0xB5};
+    private static final byte[] OTHER_KEY = {0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+
+    @SuppressWarnings("unchecked")
+    private static List<byte[]>[] keys(byte[]... candidates) {
+        List<byte[]>[] keys = new List[FakeMifareClassic.SECTOR_COUNT];
+        for (int sector = 0; sector < keys.length; sector++) {
+            keys[sector] = Arrays.asList(candidates);
+        }
+        return keys;
+    }
+
+    private static MifareUtil.BlockOperation write(int block, int fill) {
+        byte[] data = new byte[16];
+        Arrays.fill(data, (byte) fill);
+        return new MifareUtil.BlockOperation(MifareUtil.OP_WRITE, block, data, 0, block);
+    }
+
+    private static List<String> authentications(List<String> commands) {
+        List<String> authentications = new ArrayList<>();
+        for (String command : commands) {
+            if (command.startsWith("auth")) {
+                authentications.add(command);
+            }
+        }
+        return authentications;
+    }
+
+    @Test
+    public void readsWithKeyAThenWritesWithKeyB() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, KEY_B).writeKey(1, 'B');
+        MifareUtil.KeyCache cache = new MifareUtil.KeyCache();
+        List<byte[]>[] keys = keys(KEY_B, KEY_A);
+
+        MifareUtil.ReadAllResult read = MifareUtil.readAll(tag, cache, UID, new int[]{1}, keys, true, true);
+        assertEquals(MifareUtil.SECTOR_OK, read.sectors[0].status);
+        assertTrue(read.sectors[0].key.keyA);
+
+        tag.commands.clear();
+        String[] statuses = MifareUtil.writeAll(tag, cache, UID, new MifareUtil.BlockOperation[]{write(4, 0x11)},
+                keys, true, true, false, true);
+
+        assertArrayEquals(new String[]{MifareUtil.OP_COMMITTED}, statuses);
+        // The cached key A is not tried first on the write path
+        assertEquals(Arrays.asList("authB 1", "write 4"), tag.commands);
+        assertEquals(0x11, tag.blocks[4][0]);
+    }
+
+    @Test
+    public void skipsCachedKeysOfTypesNotAllowed() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, KEY_B);
+        MifareUtil.KeyCache cache = new MifareUtil.KeyCache();
+        List<byte[]>[] keys = keys(KEY_A, KEY_B);
+        MifareUtil.readAll(tag, cache, UID, new int[]{1}, keys, true, false);
+
+        tag.commands.clear();
+        MifareUtil.ReadAllResult read = MifareUtil.readAll(tag, cache, UID, new int[]{1}, keys, false, true);
+
+        assertFalse(read.sectors[0].key.keyA);
+        assertEquals(Arrays.asList("authB 1", "authB 1"), authentications(tag.commands));
+    }
+
+    @Test
+    public void retriesAWriteWithKeyAWhenKeyBIsNotGrantedWrites() throws Exception {
+        // Transport configuration, key B is readable and cannot write
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, KEY_B).writeKey(1, 'A');
+
+        String[] statuses = MifareUtil.writeAll(tag, new MifareUtil.KeyCache(), UID,
+                new MifareUtil.BlockOperation[]{write(4, 0x22), write(5, 0x33)}, keys(KEY_B, KEY_A), true, true, true, true);
+
+        assertArrayEquals(new String[]{MifareUtil.OP_COMMITTED, MifareUtil.OP_COMMITTED}, statuses);
+        assertEquals(Arrays.asList("authB 1", "write 4", "authA 1", "authA 1", "write 4", "read 4", "write 5", "read 5"), tag.commands);
+    }
+
+    @Test
+    public void reportsOperationsAroundATagLoss() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, null, KEY_B).keys(2, null, KEY_B).loseTagAfter(3);
+
+        String[] statuses = MifareUtil.writeAll(tag, new MifareUtil.KeyCache(), UID,
+                new MifareUtil.BlockOperation[]{write(4, 0x11), write(5, 0x22), write(8, 0x33)},
+                keys(KEY_B), true, true, true, false);
+
+        // Written and read back, lost while writing, never sent
+        assertArrayEquals(new String[]{MifareUtil.OP_COMMITTED, MifareUtil.OP_UNKNOWN, MifareUtil.OP_SKIPPED}, statuses);
+        assertEquals(Arrays.asList("authB 1", "write 4", "read 4", "write 5"), tag.commands);
+    }
+
+    @Test
+    public void reportsAValueOperationLostBeforeTheTransferAsUnknown() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, null).loseTagAfter(3);
+        tag.blocks[4] = FakeMifareClassic.valueBlock(10, 4);
+
+        String[] statuses = MifareUtil.writeAll(tag, new MifareUtil.KeyCache(), UID, new MifareUtil.BlockOperation[]{
+                new MifareUtil.BlockOperation(MifareUtil.OP_INCREMENT, 4, null, 5, 4),
+                new MifareUtil.BlockOperation(MifareUtil.OP_DECREMENT, 4, null, 1, 4)}, keys(KEY_A), true, false, true, false);
+
+        assertArrayEquals(new String[]{MifareUtil.OP_UNKNOWN, MifareUtil.OP_SKIPPED}, statuses);
+        assertEquals(Arrays.asList("authA 1", "read 4", "increment 4", "transfer 4"), tag.commands);
+        assertEquals(Integer.valueOf(10), MifareUtil.parseValueBlock(tag.blocks[4]));
+    }
+
+    @Test
+    public void verifiesValueOperations() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, null);
+        tag.blocks[4] = FakeMifareClassic.valueBlock(10, 4);
+
+        String[] statuses = MifareUtil.writeAll(tag, new MifareUtil.KeyCache(), UID, new MifareUtil.BlockOperation[]{
+                new MifareUtil.BlockOperation(MifareUtil.OP_INCREMENT, 4, null, 5, 5),
+                new MifareUtil.BlockOperation(MifareUtil.OP_DECREMENT, 5, null, 3, 5)}, keys(KEY_A), true, false, true, true);
+
+        assertArrayEquals(new String[]{MifareUtil.OP_COMMITTED, MifareUtil.OP_COMMITTED}, statuses);
+        assertEquals(Integer.valueOf(12), MifareUtil.parseValueBlock(tag.blocks[5]));
+    }
+
+    @Test
+    public void stopsAtTheFirstSectorWhichCannotBeAuthenticated() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(2, KEY_A, null);
+
+        String[] statuses = MifareUtil.writeAll(tag, new MifareUtil.KeyCache(), UID,
+                new MifareUtil.BlockOperation[]{write(4, 0x11), write(8, 0x22)}, keys(KEY_A), true, true, false, true);
+
+        assertArrayEquals(new String[]{MifareUtil.OP_AUTH_FAILED, MifareUtil.OP_SKIPPED}, statuses);
+    }
+
+    @Test
+    public void readAllTriesCachedThenPreviousThenCandidateKeys() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic()
+                .keys(0, KEY_A, null)
+                .keys(1, KEY_A, null)
+                .keys(2, OTHER_KEY, null)
+                .keys(3, KEY_A, null).denyReads(3);
+        MifareUtil.KeyCache cache = new MifareUtil.KeyCache();
+        List<byte[]>[] keys = keys(KEY_B, KEY_A);
+
+        MifareUtil.ReadAllResult read = MifareUtil.readAll(tag, cache, UID, new int[]{0, 1, 2, 3}, keys, true, true);
+
+        assertEquals(MifareUtil.SECTOR_OK, read.sectors[0].status);
+        assertEquals(MifareUtil.SECTOR_OK, read.sectors[1].status);
+        assertEquals(MifareUtil.SECTOR_AUTH_FAILED, read.sectors[2].status);
+        assertNull(read.sectors[2].key);
+        assertEquals(MifareUtil.SECTOR_READ_FAILED, read.sectors[3].status);
+        assertEquals(2 * FakeMifareClassic.BLOCKS_PER_SECTOR * 16, read.sectors[2].offset);
+        assertEquals(Arrays.asList(
+                // Candidates in order
+                "authA 0", "authA 0",
+                // The key of the previous sector
+                "authA 1",
+                // Previous, then the candidates not tried yet, with key A then key B
+                "authA 2", "authA 2", "authB 2", "authB 2",
+                "authA 3"), authentications(tag.commands));
+
+        tag.commands.clear();
+        MifareUtil.readAll(tag, cache, UID, new int[]{0}, keys, true, true);
+        assertEquals(Arrays.asList("authA 0"), authentications(tag.commands));
+    }
+
+    @Test
+    public void keysAreNotSharedAcrossCaches() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(0, KEY_A, null);
+        List<byte[]>[] keys = keys(KEY_B, KEY_A);
+        MifareUtil.readAll(tag, new MifareUtil.KeyCache(), UID, new int[]{0}, keys, true, false);
+
+        tag.commands.clear();
+        MifareUtil.readAll(tag, new MifareUtil.KeyCache(), UID, new int[]{0}, keys, true, false);
+
+        assertEquals(Arrays.asList("authA 0", "authA 0"), authentications(tag.commands));
+    }
+}
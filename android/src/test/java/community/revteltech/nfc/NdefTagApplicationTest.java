@@ -0,0 +1,136 @@
+package community.revteltech.nfc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NdefTagApplicationTest {
+    private static final byte[] SELECT_APPLICATION = {0x00, (byte) 0xA4, 0x04, 0x00, 0x07,
+            (byte) 0xD2, 0x76, 0x00, 0x00, (byte) 0x85, 0x01, 0x01, 0x00};
+    private static final byte[] SELECT_NDEF_FILE = {0x00, (byte) 0xA4, 0x00, 0x0C, 0x02, (byte) 0xE1, 0x04};
+    // Chunk size of the UPDATE BINARY sent by readers, the short MLc
+    private static final int CHUNK = ApduUtil.SHORT_MAX_DATA_SIZE;
+
+    private NdefTagApplication application;
+
+    @Before
+    public void setUp() {
+        HceService.clearAllData();
+        application = new NdefTagApplication();
+    }
+
+    @After
+    public void tearDown() {
+        HceService.clearAllData();
+    }
+
+    // Share a URL served with the given image as a writable NDEF file
+    private void serve(byte[] image) {
+        NdefFile file = NdefFile.fromImage(image, false, true);
+        HceService.updateContent(current -> current.withSimpleUrl("https://example.com").withNdefFile(file));
+        assertSame(ApduUtil.A_OK, application.onSelect(SELECT_APPLICATION));
+        assertSame(ApduUtil.A_OK, application.dispatch(SELECT_NDEF_FILE));
+    }
+
+    private byte[] updateBinary(int offset, byte[] data, int from, int length) {
+        byte[] command = new byte[5 + length];
+        command[1] = (byte) 0xD6;
+        command[2] = (byte) (offset >> 8);
+        command[3] = (byte) offset;
+        command[4] = (byte) length;
+        System.arraycopy(data, from, command, 5, length);
+        return application.dispatch(command);
+    }
+
+    // NFC Forum write procedure: NLEN cleared, message written in chunks, then NLEN set
+    private void write(byte[] message) {
+        assertSame(ApduUtil.A_OK, updateBinary(0, new byte[2], 0, 2));
+        for (int from = 0; from < message.length; from += CHUNK) {
+            int length = Math.min(CHUNK, message.length - from);
+            assertSame(ApduUtil.A_OK, updateBinary(2 + from, message, from, length));
+        }
+        byte[] nlen = {(byte) (message.length >> 8), (byte) message.length};
+        assertSame(ApduUtil.A_OK, updateBinary(0, nlen, 0, 2));
+    }
+
+    private static byte[] image(byte[] message) {
+        byte[] image = new byte[2 + message.length];
+        image[0] = (byte) (message.length >> 8);
+        image[1] = (byte) message.length;
+        System.arraycopy(message, 0, image, 2, message.length);
+        return image;
+    }
+
+    private static byte[] message(int length) {
+        byte[] message = new byte[length];
+        for (int i = 0; i < length; i++) {
+            message[i] = (byte) (i * 31);
+        }
+        return message;
+    }
+
+    @Test
+    public void commitsA4KbWrite() {
+        serve(image(message(10)));
+        byte[] message = message(4096);
+
+        // Repeated so the per-write cost stays visible next to the transfer time of the 18 APDUs
+        int writes = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            write(message);
+        }
+        long perWriteMicros = (System.nanoTime() - start) / 1000 / writes;
+
+        assertArrayEquals(image(message), HceService.getContent().ndefFile.image);
+        assertTrue("4 KB write took " + perWriteMicros + " us", perWriteMicros < 20000);
+    }
+
+    @Test
+    public void keepsTheServedImageUntilNlenIsWritten() {
+        byte[] served = image(message(10));
+        serve(served);
+        assertSame(ApduUtil.A_OK, updateBinary(0, new byte[2], 0, 2));
+        assertSame(ApduUtil.A_OK, updateBinary(2, message(4), 0, 4));
+
+        assertArrayEquals(served, HceService.getContent().ndefFile.image);
+    }
+
+    @Test
+    public void writesOverAnImageLongerThanTheCapacity() {
+        // Largest image a 2-byte NLEN allows, past the 0xFFFE bytes advertised as capacity
+        serve(image(message(0xFFFF)));
+        byte[] message = message(300);
+        write(message);
+
+        assertArrayEquals(image(message), HceService.getContent().ndefFile.image);
+    }
+
+    @Test
+    public void rejectsWritesPastTheCapacity() {
+        serve(image(message(10)));
+        byte[] data = message(4);
+        assertSame(ApduUtil.A_WRONG_PARAMETERS, updateBinary(ApduUtil.WRITABLE_NDEF_FILE_SIZE - 2, data, 0, 4));
+        assertTrue(Arrays.equals(image(message(10)), HceService.getContent().ndefFile.image));
+    }
+
+    @Test
+    public void rejectsClassesOtherThanTheInterindustryOne() {
+        serve(image(message(10)));
+        byte[] data = message(4);
+        // Logical channel 1, secure messaging, proprietary
+        for (int cla : new int[]{0x01, 0x0C, 0x10, 0x7F, 0x80}) {
+            byte[] readBinary = {(byte) cla, (byte) 0xB0, 0x00, 0x00, 0x02};
+            assertSame(ApduUtil.A_CLA_NOT_SUPPORTED, application.dispatch(readBinary));
+            byte[] updateBinary = {(byte) cla, (byte) 0xD6, 0x00, 0x02, 0x04, data[0], data[1], data[2], data[3]};
+            assertSame(ApduUtil.A_CLA_NOT_SUPPORTED, application.dispatch(updateBinary));
+        }
+        assertTrue(Arrays.equals(image(message(10)), HceService.getContent().ndefFile.image));
+    }
+}
@@ -0,0 +1,143 @@
+package community.revteltech.nfc;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NfcExecutorTest {
+    private final NfcExecutor executor = new NfcExecutor();
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    // Occupy the NFC thread until the returned latch is released
+    private CountDownLatch block() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private void execute(Object owner, String name) {
+        executor.execute(owner, () -> events.add("run " + name), () -> events.add("cancel " + name));
+    }
+
+    private void drain() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void runsTasksInSubmissionOrder() throws InterruptedException {
+        Object owner = new Object();
+        for (int i = 0; i < 5; i++) {
+            execute(owner, String.valueOf(i));
+        }
+        drain();
+        assertEquals("[run 0, run 1, run 2, run 3, run 4]", events.toString());
+    }
+
+    @Test
+    public void cancelPendingOnlyCancelsTheTasksOfTheOwner() throws InterruptedException {
+        Object cancelled = new Object();
+        Object other = new Object();
+        CountDownLatch release = block();
+        execute(cancelled, "a1");
+        executor.execute(() -> events.add("run discovery"));
+        execute(other, "b1");
+        execute(cancelled, "a2");
+
+        assertEquals(2, executor.cancelPending(cancelled));
+        release.countDown();
+        drain();
+        assertEquals("[cancel a1, cancel a2, run discovery, run b1]", events.toString());
+    }
+
+    @Test
+    public void cancelPendingWithoutOwnerCancelsNothing() throws InterruptedException {
+        CountDownLatch release = block();
+        execute(null, "unowned");
+        assertEquals(0, executor.cancelPending(null));
+        release.countDown();
+        drain();
+        assertEquals("[run unowned]", events.toString());
+    }
+
+    @Test
+    public void keepsRunningAfterAFailingTask() throws InterruptedException {
+        executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        execute(new Object(), "next");
+        drain();
+        assertEquals("[run next]", events.toString());
+    }
+
+    @Test
+    public void shutdownCancelsEveryPendingTask() throws InterruptedException {
+        CountDownLatch release = block();
+        execute(new Object(), "a");
+        execute(null, "b");
+        executor.shutdown();
+        release.countDown();
+        assertEquals("[cancel a, cancel b]", events.toString());
+    }
+
+    /**
+     * Same sequence as cancelTechnologyRequest: the queued I/O of the request is cancelled and the
+     * transceive in progress is interrupted by closing the tech, instead of waiting for the radio.
+     */
+    @Test
+    public void cancelReturnsPromptlyDuringASlowTransceive() throws InterruptedException {
+        FakeTagTechnology tech = new FakeTagTechnology().blocking();
+        TagTechnologyRequest request = tech.connectedRequest();
+        CountDownLatch transceiving = new CountDownLatch(1);
+        CountDownLatch failed = new CountDownLatch(1);
+        executor.execute(request, () -> {
+            transceiving.countDown();
+            try {
+                request.transceive(new byte[]{0x30, 0x00});
+            } catch (Exception ex) {
+                failed.countDown();
+            }
+        }, null);
+        for (int i = 0; i < 3; i++) {
+            execute(request, "queued " + i);
+        }
+        assertTrue(transceiving.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        int cancelled = executor.cancelPending(request);
+        request.close();
+        long cancelMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3, cancelled);
+        assertTrue("cancel took " + cancelMs + " ms", cancelMs < 500);
+        assertEquals("[cancel queued 0, cancel queued 1, cancel queued 2]", events.toString());
+        // The slow transceive fails right away once the tech is closed
+        assertTrue(failed.await(1, TimeUnit.SECONDS));
+    }
+}
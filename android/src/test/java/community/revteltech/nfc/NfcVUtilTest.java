@@ -0,0 +1,155 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NfcVUtilTest {
+    // As returned by Tag.getId(), LSB first
+    private static final byte[] UID = bytes(0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0xE0);
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    // Response flags, then blocks whose bytes are all the block number
+    private static int[] blocks(int first, int count, int blockSize) {
+        int[] response = new int[1 + count * blockSize];
+        for (int i = 1; i < response.length; i++) {
+            response[i] = first + (i - 1) / blockSize;
+        }
+        return response;
+    }
+
+    @Test
+    public void framesAddressedAndUnaddressedCommands() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(blocks(5, 1, 4)).respond(blocks(5, 1, 4));
+
+        NfcVUtil.readBlocks(tech, tech.getMaxTransceiveLength(), UID, 5, 1, 4);
+        NfcVUtil.readBlocks(tech, tech.getMaxTransceiveLength(), null, 5, 1, 4);
+
+        assertArrayEquals(bytes(0x22, 0x20, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0xE0, 5), tech.commands.get(0));
+        assertArrayEquals(bytes(0x02, 0x20, 5), tech.commands.get(1));
+    }
+
+    @Test
+    public void readsMultipleBlocksPerTransceive() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(blocks(0, 4, 4)).respond(blocks(4, 2, 4));
+        // 4 blocks of 4 bytes after the response flags
+        tech.maxTransceiveLength = 17;
+
+        byte[] data = NfcVUtil.readBlocks(tech, tech.getMaxTransceiveLength(), null, 0, 6, 4);
+
+        assertArrayEquals(bytes(0x02, 0x23, 0, 3), tech.commands.get(0));
+        assertArrayEquals(bytes(0x02, 0x23, 4, 1), tech.commands.get(1));
+        assertEquals(4, data[16]);
+        assertEquals(5, data[23]);
+    }
+
+    @Test
+    public void readsBlockByBlockWhenReadMultipleIsNotSupported() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology()
+                .respond(0x01, NfcVUtil.ERROR_NOT_SUPPORTED)
+                .respond(blocks(0, 1, 4)).respond(blocks(1, 1, 4)).respond(blocks(2, 1, 4));
+
+        byte[] data = NfcVUtil.readBlocks(tech, tech.getMaxTransceiveLength(), null, 0, 3, 4);
+
+        assertEquals(4, tech.commands.size());
+        assertArrayEquals(bytes(0x02, 0x20, 0), tech.commands.get(1));
+        assertArrayEquals(bytes(0x02, 0x20, 2), tech.commands.get(3));
+        assertArrayEquals(bytes(0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2), data);
+    }
+
+    @Test
+    public void reportsOtherErrorsOfReadMultiple() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x01, NfcVUtil.ERROR_BLOCK_NOT_AVAILABLE);
+
+        try {
+            NfcVUtil.readBlocks(tech, tech.getMaxTransceiveLength(), null, 0, 3, 4);
+            fail("error response");
+        } catch (NfcVUtil.NfcVException ex) {
+            assertEquals(NfcVUtil.ERROR_BLOCK_NOT_AVAILABLE, ex.errorCode);
+            assertEquals("ISO15693 error 0x10 BLOCK_NOT_AVAILABLE", ex.getMessage());
+            assertEquals(1, tech.commands.size());
+        }
+    }
+
+    @Test
+    public void namesErrorCodes() {
+        assertEquals("BLOCK_LOCKED", NfcVUtil.errorName(0x12));
+        assertEquals("CUSTOM", NfcVUtil.errorName(0xA5));
+        assertEquals("UNKNOWN", NfcVUtil.errorName(0x50));
+    }
+
+    @Test
+    public void parsesAnErrorWithoutItsCode() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x01);
+
+        try {
+            NfcVUtil.writeBlock(tech, UID, 0, new byte[4]);
+            fail("error response");
+        } catch (NfcVUtil.NfcVException ex) {
+            assertEquals(0, ex.errorCode);
+        }
+    }
+
+    @Test
+    public void stopsWritingAtTheFirstError() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x00).respond(0x01, NfcVUtil.ERROR_BLOCK_LOCKED);
+
+        NfcVUtil.WriteBlocksResult result = NfcVUtil.writeBlocks(tech, UID, 10, new byte[12], 4);
+
+        assertEquals(NfcVUtil.STATUS_FAILED, result.status);
+        assertEquals(1, result.written);
+        assertEquals(NfcVUtil.ERROR_BLOCK_LOCKED, result.errorCode);
+        assertEquals(2, tech.commands.size());
+        assertArrayEquals(bytes(0x22, 0x21, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0xE0, 11, 0, 0, 0, 0), tech.commands.get(1));
+    }
+
+    @Test
+    public void reportsATagLostWhileWriting() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x00);
+
+        NfcVUtil.WriteBlocksResult result = NfcVUtil.writeBlocks(tech, null, 0, new byte[8], 4);
+
+        assertEquals(NfcVUtil.STATUS_TAG_LOST, result.status);
+        assertEquals(1, result.written);
+        assertEquals(-1, result.errorCode);
+    }
+
+    @Test
+    public void readsTheMemorySizeFromTheSystemInfo() throws Exception {
+        // Flags, information flags (DSFID, AFI, memory size, IC reference), UID, DSFID, AFI, blocks - 1, block size - 1, IC reference
+        FakeTagTechnology tech = new FakeTagTechnology()
+                .respond(0x00, 0x0F, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0xE0, 0x00, 0x00, 0x3F, 0x03, 0x01);
+
+        NfcVUtil.MemorySize size = NfcVUtil.getMemorySize(tech, UID);
+
+        assertEquals(64, size.blockCount);
+        assertEquals(4, size.blockSize);
+        assertArrayEquals(bytes(0x22, 0x2B, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0xE0), tech.commands.get(0));
+    }
+
+    @Test
+    public void readsTheLockStateWithTheOptionFlagWhenSecurityStatusIsNotSupported() throws Exception {
+        FakeTagTechnology tech = new FakeTagTechnology()
+                .respond(0x01, NfcVUtil.ERROR_NOT_RECOGNIZED)
+                .respond(0x00, 0x01, 0, 0, 0, 0)
+                .respond(0x00, 0x00, 0, 0, 0, 0);
+
+        boolean[] locked = NfcVUtil.getLockedBlocks(tech, tech.getMaxTransceiveLength(), null, 7, 2);
+
+        assertArrayEquals(bytes(0x02, 0x2C, 7, 1), tech.commands.get(0));
+        assertArrayEquals(bytes(0x42, 0x20, 7), tech.commands.get(1));
+        assertTrue(locked[0]);
+        assertFalse(locked[1]);
+    }
+}
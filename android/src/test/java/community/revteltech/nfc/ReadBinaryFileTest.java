@@ -0,0 +1,78 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ReadBinaryFileTest {
+    private static byte[] file(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static byte[] readBinary(int offset, int le) {
+        return new byte[]{0x00, (byte) 0xB0, (byte) (offset >> 8), (byte) offset, (byte) le};
+    }
+
+    private static byte[] expected(byte[] data, int offset, int length) {
+        byte[] response = new byte[length + 2];
+        System.arraycopy(data, offset, response, 0, length);
+        response[length] = (byte) 0x90;
+        return response;
+    }
+
+    @Test
+    public void parsesShortAndExtendedLe() {
+        assertEquals(16, ApduUtil.parseLe(readBinary(0, 16)));
+        assertEquals(256, ApduUtil.parseLe(readBinary(0, 0)));
+        assertEquals(0x1234, ApduUtil.parseLe(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x00, 0x12, 0x34}));
+        assertEquals(65536, ApduUtil.parseLe(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x00, 0x00, 0x00}));
+    }
+
+    @Test
+    public void parsesShortAndExtendedLc() {
+        assertEquals(2, ApduUtil.parseLc(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x02, 0x01, 0x02}));
+        assertEquals(5, ApduUtil.getDataOffset(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x02, 0x01, 0x02}));
+        assertEquals(1, ApduUtil.parseLc(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x00, 0x00, 0x01, 0x05}));
+        assertEquals(7, ApduUtil.getDataOffset(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x00, 0x00, 0x01, 0x05}));
+        // Announces 3 bytes, carries 2
+        assertEquals(-1, ApduUtil.parseLc(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x03, 0x01, 0x02}));
+        assertEquals(-1, ApduUtil.parseLc(new byte[]{0x00, (byte) 0xD6, 0x00, 0x00, 0x01}));
+    }
+
+    @Test
+    public void reusesTheWholeFileAndNlenResponses() {
+        byte[] data = file(40);
+        ReadBinaryFile file = new ReadBinaryFile(data, 0xF6);
+
+        byte[] whole = file.read(readBinary(0, 0));
+        assertArrayEquals(expected(data, 0, 40), whole);
+        assertSame(whole, file.read(readBinary(0, 40)));
+        byte[] nlen = file.read(readBinary(0, 2));
+        assertArrayEquals(expected(data, 0, 2), nlen);
+        assertSame(nlen, file.read(readBinary(0, 2)));
+    }
+
+    @Test
+    public void readsChunksCappedToTheFileAndMaxReadLength() {
+        byte[] data = file(600);
+        ReadBinaryFile file = new ReadBinaryFile(data, 0xF6);
+
+        assertArrayEquals(expected(data, 0, 0xF6), file.read(readBinary(0, 0)));
+        assertArrayEquals(expected(data, 0xF6, 0xF6), file.read(readBinary(0xF6, 0)));
+        assertArrayEquals(expected(data, 590, 10), file.read(readBinary(590, 0)));
+        assertArrayEquals(expected(data, 10, 5), file.read(readBinary(10, 5)));
+    }
+
+    @Test
+    public void rejectsOffsetsPastTheFileAndShortCommands() {
+        ReadBinaryFile file = new ReadBinaryFile(file(10), 0xF6);
+        assertSame(ApduUtil.A_ERROR, file.read(readBinary(10, 1)));
+        assertSame(ApduUtil.A_WRONG_LENGTH, file.read(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00}));
+    }
+}
@@ -0,0 +1,182 @@
+package community.revteltech.nfc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestQueueTest {
+    private static final List<String> ISO_DEP_TAG = Arrays.asList("android.nfc.tech.IsoDep", "android.nfc.tech.NfcA");
+    private static final List<String> ULTRALIGHT_TAG = Arrays.asList("android.nfc.tech.MifareUltralight", "android.nfc.tech.NfcA");
+    private static final List<String> NFCV_TAG = Collections.singletonList("android.nfc.tech.NfcV");
+
+    private final RequestQueue queue = new RequestQueue();
+    private final AtomicReference<TagTechnologyRequest> current = new AtomicReference<>();
+
+    @Before
+    public void setUp() {
+        queue.setCapacity(8);
+    }
+
+    private static RequestQueue.Entry entry(String tech, int priority, boolean waitForCompatibleTag) {
+        ArrayList<Object> techs = new ArrayList<>();
+        techs.add(tech);
+        return new RequestQueue.Entry(new TagTechnologyRequest(techs, null), null, priority, waitForCompatibleTag);
+    }
+
+    // Take the next tag and release it, as closeTechnology does
+    private RequestQueue.Entry takeAndClose(List<String> techList) {
+        RequestQueue.Entry entry = queue.take(techList, current);
+        current.set(null);
+        return entry;
+    }
+
+    @Test
+    public void servesHigherPrioritiesFirstThenInArrivalOrder() {
+        RequestQueue.Entry low = entry("NfcA", 0, false);
+        RequestQueue.Entry first = entry("NfcA", 1, false);
+        RequestQueue.Entry second = entry("NfcA", 1, false);
+        RequestQueue.Entry high = entry("NfcA", 5, false);
+        assertTrue(queue.offer(low, false, current));
+        assertTrue(queue.offer(first, false, current));
+        assertTrue(queue.offer(second, false, current));
+        assertTrue(queue.offer(high, false, current));
+
+        assertSame(high, takeAndClose(ISO_DEP_TAG));
+        assertSame(first, takeAndClose(ISO_DEP_TAG));
+        assertSame(second, takeAndClose(ISO_DEP_TAG));
+        assertSame(low, takeAndClose(ISO_DEP_TAG));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void countsTheActiveRequestAgainstTheCapacity() {
+        queue.setCapacity(2);
+        current.set(entry("NfcA", 0, false).techRequest);
+        assertTrue(queue.offer(entry("NfcA", 0, false), false, current));
+        assertFalse(queue.offer(entry("NfcA", 0, false), false, current));
+        current.set(null);
+        assertTrue(queue.offer(entry("NfcA", 0, false), false, current));
+        assertFalse(queue.offer(entry("NfcA", 0, false), false, current));
+    }
+
+    @Test
+    public void defaultCapacityHoldsASingleRequest() {
+        RequestQueue queue = new RequestQueue();
+        current.set(entry("NfcA", 0, false).techRequest);
+        assertFalse(queue.offer(entry("NfcA", 0, false), false, current));
+        current.set(null);
+        assertTrue(queue.offer(entry("NfcA", 0, false), false, current));
+        assertFalse(queue.offer(entry("NfcA", 0, false), false, current));
+    }
+
+    @Test
+    public void rejectsRequestsWhileASessionIsActive() {
+        assertFalse(queue.offer(entry("NfcA", 0, false), true, current));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void wantsTheTagsOfARunningSessionWhoseTagWasReleased() {
+        // closeTechnology released the session tag, the next one still goes to the session
+        assertTrue(queue.wantsTag(true, current));
+        assertFalse(queue.wantsTag(false, current));
+    }
+
+    @Test
+    public void wantsTheTagsOfQueuedAndCurrentRequests() {
+        RequestQueue.Entry entry = entry("NfcA", 0, false);
+        queue.offer(entry, false, current);
+        assertTrue(queue.wantsTag(false, current));
+
+        queue.take(ISO_DEP_TAG, current);
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.wantsTag(false, current));
+
+        current.set(null);
+        assertFalse(queue.wantsTag(false, current));
+    }
+
+    @Test
+    public void countsARequestTakenConcurrentlyAgainstTheCapacity() throws Exception {
+        RequestQueue queue = new RequestQueue();
+        for (int i = 0; i < 1000; i++) {
+            current.set(null);
+            RequestQueue.Entry queued = entry("NfcA", 0, false);
+            assertTrue(queue.offer(queued, false, current));
+
+            // A tag handed to the queued request while another one is offered
+            Thread discovery = new Thread(() -> queue.take(ISO_DEP_TAG, current));
+            discovery.start();
+            boolean offered = queue.offer(entry("NfcA", 0, false), false, current);
+            discovery.join();
+
+            // Either the offer saw the queued request or the current one, never neither
+            assertFalse(offered);
+            assertSame(queued.techRequest, current.get());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void skipsRequestsTheTagDoesNotSupport() {
+        RequestQueue.Entry isoDep = entry("IsoDep", 1, false);
+        RequestQueue.Entry ultralight = entry("MifareUltralight", 0, false);
+        queue.offer(isoDep, false, current);
+        queue.offer(ultralight, false, current);
+
+        assertSame(ultralight, takeAndClose(ULTRALIGHT_TAG));
+        assertSame(isoDep, takeAndClose(ISO_DEP_TAG));
+    }
+
+    @Test
+    public void incompatibleTagGoesToTheFirstRequestNotWaitingForOne() {
+        RequestQueue.Entry waiting = entry("IsoDep", 1, true);
+        RequestQueue.Entry legacy = entry("MifareUltralight", 0, false);
+        queue.offer(waiting, false, current);
+        queue.offer(legacy, false, current);
+
+        // Resolved with null by the module, as a single pending request always was
+        assertSame(legacy, takeAndClose(NFCV_TAG));
+        assertNull(takeAndClose(NFCV_TAG));
+        assertSame(waiting, takeAndClose(ISO_DEP_TAG));
+    }
+
+    @Test
+    public void publishesTheTakenRequestAsCurrent() {
+        RequestQueue.Entry first = entry("NfcA", 0, false);
+        RequestQueue.Entry second = entry("NfcA", 0, false);
+        queue.offer(first, false, current);
+        queue.offer(second, false, current);
+
+        assertSame(first, queue.take(ISO_DEP_TAG, current));
+        assertSame(first.techRequest, current.get());
+        // The current request keeps its tag, the next one waits
+        assertNull(queue.take(ISO_DEP_TAG, current));
+        current.set(null);
+        assertSame(second, queue.take(ISO_DEP_TAG, current));
+    }
+
+    @Test
+    public void removesTechOrNdefRequests() {
+        RequestQueue.Entry tech = entry("NfcA", 0, false);
+        RequestQueue.Entry write = new RequestQueue.Entry(null,
+                new NfcManager.WriteNdefRequest(null, null, false, false), 0, false);
+        queue.offer(tech, false, current);
+        queue.offer(write, false, current);
+
+        assertEquals(Collections.singletonList(write), queue.removeAll(false));
+        assertEquals(Collections.singletonList(tech), queue.removeAll(true));
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,72 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TagDumperTest {
+    private static final String UID = "04A1B2C3";
+    private static final byte[] KEY_A = {(byte) 0xA0, (byte) 0xA1, (byte) 0xA2, (byte) 0xA3, (byte) 0xA4, (byte) 0xA5};
+    private static final byte[] KEY_B = {(byte) 0xB0, (byte) 0xB1, (byte) 0xB2, (byte) 0xB3, (byte) 0xB4, (byte) 0xB5};
+
+    @SuppressWarnings("unchecked")
+    private static List<byte[]>[] keys(byte[]... candidates) {
+        List<byte[]>[] keys = new List[FakeMifareClassic.SECTOR_COUNT];
+        for (int sector = 0; sector < keys.length; sector++) {
+            keys[sector] = Arrays.asList(candidates);
+        }
+        return keys;
+    }
+
+    private static TagSnapshot snapshot(int fill) {
+        int blocks = FakeMifareClassic.SECTOR_COUNT * FakeMifareClassic.BLOCKS_PER_SECTOR;
+        byte[] access = new byte[blocks];
+        Arrays.fill(access, (byte) (TagSnapshot.UNIT_READ | TagSnapshot.UNIT_WRITABLE));
+        byte[] memory = new byte[blocks * 16];
+        Arrays.fill(memory, (byte) fill);
+        return new TagSnapshot(TagSnapshot.TECH_MIFARE_CLASSIC, new byte[]{0x04, (byte) 0xA1, (byte) 0xB2, (byte) 0xC3}, 16, access, memory);
+    }
+
+    @Test
+    public void restoresWithKeyBAfterReadingWithKeyA() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, KEY_B).writeKey(1, 'B');
+        MifareUtil.KeyCache cache = new MifareUtil.KeyCache();
+        List<byte[]>[] keys = keys(KEY_A, KEY_B);
+        // The dump before the restore leaves key A in the cache
+        MifareUtil.readAll(tag, cache, UID, new int[]{1}, keys, true, true);
+
+        TagDumper.RestoreResult result = TagDumper.restoreClassic(tag, cache, UID, snapshot(0x5A), Arrays.asList(4, 5, 6),
+                keys, true, true);
+
+        assertEquals(TagDumper.STATUS_OK, result.status);
+        assertEquals(3, result.written);
+        assertEquals(0x5A, tag.blocks[6][0]);
+    }
+
+    @Test
+    public void reportsATagLostDuringTheRestore() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, KEY_B).loseTagAfter(2);
+
+        TagDumper.RestoreResult result = TagDumper.restoreClassic(tag, new MifareUtil.KeyCache(), UID, snapshot(0x5A),
+                Arrays.asList(4, 5, 6), keys(KEY_B), true, true);
+
+        assertEquals(TagDumper.STATUS_TAG_LOST, result.status);
+        assertEquals(3, result.differing);
+        assertEquals(1, result.written);
+    }
+
+    @Test
+    public void reportsTheFirstFailedBlock() throws Exception {
+        FakeMifareClassic tag = new FakeMifareClassic().keys(1, KEY_A, null).keys(2, null, null);
+
+        TagDumper.RestoreResult result = TagDumper.restoreClassic(tag, new MifareUtil.KeyCache(), UID, snapshot(0x5A),
+                Arrays.asList(4, 8, 9), keys(KEY_A), true, true);
+
+        assertEquals(TagDumper.STATUS_FAILED, result.status);
+        assertEquals(1, result.written);
+        assertEquals("block 8: " + MifareUtil.OP_AUTH_FAILED, result.error);
+    }
+}
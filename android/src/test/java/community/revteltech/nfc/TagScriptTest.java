@@ -0,0 +1,187 @@
+package community.revteltech.nfc;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TagScriptTest {
+    private static JavaOnlyMap step(Object... keysAndValues) {
+        return JavaOnlyMap.of(keysAndValues);
+    }
+
+    private static JavaOnlyArray bytes(int... values) {
+        JavaOnlyArray array = new JavaOnlyArray();
+        for (int value : values) {
+            array.pushInt(value);
+        }
+        return array;
+    }
+
+    private static TagScript.Result run(FakeTagTechnology tech, JavaOnlyMap... steps) {
+        return TagScript.compile(JavaOnlyArray.of((Object[]) steps)).run(tech.connectedRequest());
+    }
+
+    private static void assertRejected(String message, JavaOnlyMap... steps) {
+        try {
+            TagScript.compile(JavaOnlyArray.of((Object[]) steps));
+            fail("compiled: " + message);
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+        }
+    }
+
+    // SELECT, then READ BINARY only when the SELECT succeeded
+    private static final JavaOnlyMap[] SELECT_THEN_READ = {
+            step("op", "transceive", "bytes", bytes(0x00, 0xA4, 0x04, 0x00, 0x00)),
+            step("op", "checkSw", "sw", 0x9000),
+            step("op", "jumpIf", "to", "read"),
+            step("op", "end", "status", "not_selected"),
+            step("op", "transceive", "bytes", bytes(0x00, 0xB0, 0x00, 0x00, 0x00), "label", "read"),
+            step("op", "capture", "name", "data", "offset", 0, "length", 2),
+    };
+
+    @Test
+    public void jumpsToLabelsOnTheCondition() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00).respond(0x01, 0x02, 0x90, 0x00);
+        TagScript.Result result = run(tech, SELECT_THEN_READ);
+
+        assertEquals(TagScript.STATUS_OK, result.status);
+        assertEquals(6, result.step);
+        assertArrayEquals(new byte[]{0x01, 0x02}, result.captures.get("data"));
+        assertNull(result.error);
+        assertEquals(2, tech.commands.size());
+    }
+
+    @Test
+    public void fallsThroughWhenTheConditionDoesNotHold() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x6A, 0x82);
+        TagScript.Result result = run(tech, SELECT_THEN_READ);
+
+        assertEquals("not_selected", result.status);
+        assertEquals(3, result.step);
+        assertEquals(1, tech.commands.size());
+    }
+
+    @Test
+    public void jumpIfMatchesFalse() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x6A, 0x82);
+        TagScript.Result result = run(tech,
+                step("op", "transceive", "bytes", bytes(0x00)),
+                step("op", "checkSw", "sw", 0x9000),
+                step("op", "jumpIf", "to", "failed", "match", false),
+                step("op", "end"),
+                step("op", "end", "status", "sw_error", "label", "failed"));
+
+        assertEquals("sw_error", result.status);
+    }
+
+    @Test
+    public void checkSwComparesTheMaskedBits() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x61, 0x10).respond(0x62, 0x10);
+        JavaOnlyMap[] steps = {
+                step("op", "transceive", "bytes", bytes(0x00)),
+                step("op", "checkSw", "sw", 0x6100, "mask", 0xFF00),
+                step("op", "jumpIf", "to", "match"),
+                step("op", "end", "status", "no_match"),
+                step("op", "end", "status", "match", "label", "match"),
+        };
+        TagScript script = TagScript.compile(JavaOnlyArray.of((Object[]) steps));
+        TagTechnologyRequest request = tech.connectedRequest();
+
+        assertEquals("match", script.run(request).status);
+        assertEquals("no_match", script.run(request).status);
+    }
+
+    @Test
+    public void capturesTheRestOfTheResponse() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x01, 0x02, 0x03, 0x90, 0x00);
+        TagScript.Result result = run(tech,
+                step("op", "transceive", "bytes", bytes(0x00)),
+                step("op", "capture", "name", "all"),
+                step("op", "capture", "name", "tail", "offset", 3));
+
+        assertArrayEquals(new byte[]{0x01, 0x02, 0x03, (byte) 0x90, 0x00}, result.captures.get("all"));
+        assertArrayEquals(new byte[]{(byte) 0x90, 0x00}, result.captures.get("tail"));
+    }
+
+    @Test
+    public void failsOnACaptureOutOfTheResponse() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x01, 0x90, 0x00);
+        TagScript.Result result = run(tech,
+                step("op", "transceive", "bytes", bytes(0x00)),
+                step("op", "capture", "name", "first", "length", 1),
+                step("op", "capture", "name", "past", "offset", 2, "length", 2));
+
+        assertEquals(TagScript.STATUS_FAILED, result.status);
+        assertEquals(2, result.step);
+        // Captures made before the failure are kept
+        assertArrayEquals(new byte[]{0x01}, result.captures.get("first"));
+        assertEquals(1, result.captures.size());
+    }
+
+    @Test
+    public void failsOnACaptureBeforeAnyResponse() {
+        TagScript.Result result = run(new FakeTagTechnology(), step("op", "capture", "name", "data"));
+        assertEquals(TagScript.STATUS_FAILED, result.status);
+        assertEquals(0, result.step);
+    }
+
+    @Test
+    public void stopsLoopsAtTheStepLimit() {
+        TagScript.Result result = run(new FakeTagTechnology(), step("op", "jump", "to", "loop", "label", "loop"));
+
+        assertEquals(TagScript.STATUS_FAILED, result.status);
+        assertEquals("step limit reached", result.error);
+    }
+
+    @Test
+    public void reportsALostTag() {
+        // No response left, the fake answers as a tag which left the field
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x01, 0x90, 0x00);
+        TagScript.Result result = run(tech,
+                step("op", "transceive", "bytes", bytes(0x00)),
+                step("op", "capture", "name", "first"),
+                step("op", "transceive", "bytes", bytes(0x00)));
+
+        assertEquals(TagScript.STATUS_TAG_LOST, result.status);
+        assertEquals(2, result.step);
+        assertEquals(1, result.captures.size());
+    }
+
+    @Test
+    public void failsTagOperationsOfAnotherTech() {
+        TagScript.Result result = run(new FakeTagTechnology(), step("op", "readPages", "start", 0, "end", 3));
+        assertEquals(TagScript.STATUS_FAILED, result.status);
+        assertTrue(result.error, result.error.contains("MifareUltralight"));
+    }
+
+    @Test
+    public void rejectsInvalidScripts() {
+        assertRejected("missing op", step("label", "x"));
+        assertRejected("unknown op", step("op", "sleep"));
+        assertRejected("duplicate label", step("op", "end", "label", "x"), step("op", "end", "label", "x"));
+        assertRejected("unknown label", step("op", "jump", "to", "nowhere"));
+        assertRejected("invalid page range", step("op", "readPages", "start", 4, "end", 3));
+        assertRejected("invalid block range", step("op", "readBlocks", "first", 0, "count", 0));
+    }
+
+    @Test
+    public void rejectsWritesOutOfRange() {
+        assertRejected("multiple of 4", step("op", "write", "start", 4, "bytes", bytes(1, 2, 3)));
+        assertRejected("invalid write range", step("op", "write", "start", -1, "bytes", bytes(1, 2, 3, 4)));
+        // Pages 254 to 256
+        assertRejected("invalid write range", step("op", "write", "start", 254, "bytes", bytes(new int[12])));
+        // NfcV blocks 250 to 257
+        assertRejected("invalid write range",
+                step("op", "write", "start", 250, "blockSize", 8, "bytes", bytes(new int[64])));
+
+        TagScript.compile(JavaOnlyArray.of(step("op", "write", "start", 252, "bytes", bytes(new int[16]))));
+    }
+}
@@ -0,0 +1,173 @@
+package community.revteltech.nfc;
+
+import android.nfc.NdefMessage;
+import android.nfc.NdefRecord;
+import android.nfc.Tag;
+import android.nfc.TagLostException;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TagSessionTest {
+    /** Connects each tag to the next fake, as a MIFARE Ultralight, or to none when the fake is null */
+    private static final class FakeSessionRequest extends TagTechnologyRequest {
+        final LinkedList<FakeTagTechnology> techs = new LinkedList<>();
+        final LinkedList<NdefMessage> messages = new LinkedList<>();
+        private NdefMessage message;
+
+        FakeSessionRequest() {
+            super(new ArrayList<Object>(), null);
+        }
+
+        FakeSessionRequest tag(FakeTagTechnology tech, NdefMessage message) {
+            techs.add(tech);
+            messages.add(message);
+            return this;
+        }
+
+        @Override
+        boolean connect(Tag tag) {
+            FakeTagTechnology tech = techs.poll();
+            message = messages.poll();
+            mTech = tech;
+            mTechType = tech != null ? "MifareUltralight" : null;
+            mTransceiver = tech;
+            mUltralight = tech;
+            return tech != null;
+        }
+
+        @Override
+        NdefMessage readNdefMessage() {
+            return message;
+        }
+    }
+
+    private static final List<TagSession.Command> COMMANDS = Arrays.asList(
+            new TagSession.Command(TagSession.CMD_READ_NDEF, 0, 0, null),
+            new TagSession.Command(TagSession.CMD_READ_PAGES, 0, 3, null),
+            new TagSession.Command(TagSession.CMD_TRANSCEIVE, 0, 0, new byte[]{0x60}));
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    // Pages 0 to 3, then the GET_VERSION response
+    private static FakeTagTechnology ultralight(int fill) {
+        int[] pages = new int[16];
+        Arrays.fill(pages, fill);
+        return new FakeTagTechnology().respond(pages).respond(0x00, 0x04, 0x03, fill);
+    }
+
+    private static NdefMessage message() {
+        return new NdefMessage(new NdefRecord[0]);
+    }
+
+    @Test
+    public void runsTheCommandsOnEachTag() {
+        FakeTagTechnology first = ultralight(1);
+        FakeTagTechnology second = ultralight(2);
+        NdefMessage firstMessage = message();
+        NdefMessage secondMessage = message();
+        FakeSessionRequest request = new FakeSessionRequest().tag(first, firstMessage).tag(second, secondMessage);
+        TagSession session = new TagSession(request, COMMANDS);
+
+        TagSession.TagResult firstResult = session.process(null, null);
+        TagSession.TagResult secondResult = session.process(null, null);
+
+        assertEquals(1, firstResult.count);
+        assertEquals(2, secondResult.count);
+        // The previous tag is released when the next one is connected
+        assertFalse(first.isConnected());
+        assertTrue(second.isConnected());
+
+        for (TagSession.TagResult result : Arrays.asList(firstResult, secondResult)) {
+            assertEquals("MifareUltralight", result.tech);
+            assertNull(result.error);
+            assertEquals(3, result.results.size());
+            assertEquals(TagSession.CMD_READ_NDEF, result.results.get(0).type);
+            assertEquals(TagSession.CMD_READ_PAGES, result.results.get(1).type);
+            assertEquals(TagSession.CMD_TRANSCEIVE, result.results.get(2).type);
+            for (TagSession.CommandResult commandResult : result.results) {
+                assertNull(commandResult.error);
+            }
+            assertNull(result.script);
+        }
+        assertSame(firstMessage, firstResult.results.get(0).ndefMessage);
+        assertSame(secondMessage, secondResult.results.get(0).ndefMessage);
+        assertEquals(16, secondResult.results.get(1).data.length);
+        assertEquals(2, secondResult.results.get(1).data[15]);
+        assertArrayEquals(bytes(0x00, 0x04, 0x03, 2), secondResult.results.get(2).data);
+
+        assertArrayEquals(bytes(0x3A, 0, 3), second.commands.get(0));
+        assertArrayEquals(bytes(0x60), second.commands.get(1));
+    }
+
+    @Test
+    public void stopsTheCommandsOfATagLostAndTakesTheNextOne() {
+        FakeTagTechnology lost = new FakeTagTechnology().fail(new TagLostException());
+        FakeSessionRequest request = new FakeSessionRequest().tag(lost, message()).tag(ultralight(3), message());
+        TagSession session = new TagSession(request, COMMANDS);
+
+        TagSession.TagResult lostResult = session.process(null, null);
+        TagSession.TagResult nextResult = session.process(null, null);
+
+        // readNdef, then readPages lost, transceive never sent
+        assertEquals(2, lostResult.results.size());
+        assertNull(lostResult.results.get(0).error);
+        assertEquals("TAG_LOST", lostResult.results.get(1).error);
+        assertNull(lostResult.results.get(1).data);
+        assertEquals(1, lost.commands.size());
+
+        assertEquals(3, nextResult.results.size());
+        assertNull(nextResult.results.get(2).error);
+    }
+
+    @Test
+    public void reportsATagWithoutARequestedTech() {
+        FakeSessionRequest request = new FakeSessionRequest().tag(null, null).tag(ultralight(4), message());
+        TagSession session = new TagSession(request, COMMANDS);
+
+        TagSession.TagResult unsupported = session.process(null, null);
+        TagSession.TagResult next = session.process(null, null);
+
+        assertEquals(1, unsupported.count);
+        assertNull(unsupported.tech);
+        assertEquals("no requested tech supported by the tag", unsupported.error);
+        assertTrue(unsupported.results.isEmpty());
+        assertEquals(2, next.count);
+        assertEquals(3, next.results.size());
+    }
+
+    @Test
+    public void runsTheScriptAfterTheCommands() {
+        FakeTagTechnology tech = ultralight(5).respond(0x90, 0x00);
+        FakeSessionRequest request = new FakeSessionRequest().tag(tech, message());
+        TagScript script = TagScript.compile(JavaOnlyArray.of(
+                JavaOnlyMap.of("op", "transceive", "bytes", JavaOnlyArray.of(0x1B)),
+                JavaOnlyMap.of("op", "capture", "name", "ack")));
+
+        TagSession.TagResult result = new TagSession(request, COMMANDS).process(null, script);
+
+        assertEquals(TagScript.STATUS_OK, result.script.status);
+        assertArrayEquals(bytes(0x90, 0x00), result.script.captures.get("ack"));
+        assertArrayEquals(bytes(0x1B), tech.commands.get(2));
+    }
+}
@@ -0,0 +1,57 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TagSnapshotTest {
+    private static TagSnapshot snapshot(byte tech) {
+        byte[] access = {TagSnapshot.UNIT_READ, TagSnapshot.UNIT_READ | TagSnapshot.UNIT_WRITABLE, 0};
+        byte[] memory = {1, 2, 3, 4, 5, 6, 7, 8, 0, 0, 0, 0};
+        return new TagSnapshot(tech, new byte[]{(byte) 0xE0, 0x04, 0x01, 0x02}, 4, access, memory);
+    }
+
+    @Test
+    public void roundTrips() {
+        TagSnapshot snapshot = TagSnapshot.fromByteArray(snapshot(TagSnapshot.TECH_NFCV).toByteArray());
+
+        assertEquals(TagSnapshot.TECH_NFCV, snapshot.tech);
+        assertArrayEquals(new byte[]{(byte) 0xE0, 0x04, 0x01, 0x02}, snapshot.uid);
+        assertEquals(4, snapshot.unitSize);
+        assertEquals(3, snapshot.getUnitCount());
+        assertArrayEquals(new byte[]{5, 6, 7, 8}, snapshot.getUnit(1));
+        assertTrue(snapshot.hasAccess(1, TagSnapshot.UNIT_WRITABLE));
+        assertFalse(snapshot.hasAccess(0, TagSnapshot.UNIT_WRITABLE));
+    }
+
+    @Test
+    public void comparesOnlyReadUnits() {
+        TagSnapshot snapshot = snapshot(TagSnapshot.TECH_NFCV);
+        TagSnapshot other = snapshot(TagSnapshot.TECH_NFCV);
+        assertTrue(snapshot.sameUnit(other, 0));
+        assertFalse(snapshot.sameUnit(other, 2));
+        other.memory[4] = 9;
+        assertFalse(snapshot.sameUnit(other, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUnknownTech() {
+        TagSnapshot.fromByteArray(snapshot((byte) 7).toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsATruncatedSnapshot() {
+        byte[] bytes = snapshot(TagSnapshot.TECH_MIFARE_ULTRALIGHT).toByteArray();
+        TagSnapshot.fromByteArray(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherData() {
+        TagSnapshot.fromByteArray(new byte[]{'N', 'D', 'E', 'F', 1, 1, 0});
+    }
+}
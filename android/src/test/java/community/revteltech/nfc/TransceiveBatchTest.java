@@ -0,0 +1,103 @@
+package community.revteltech.nfc;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransceiveBatchTest {
+    private static final byte[][] COMMANDS = {{0x00, (byte) 0xA4}, {0x00, (byte) 0xB0}, {0x00, (byte) 0xB2}};
+
+    @Test
+    public void sendsEveryCommand() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00).respond(0x01, 0x90, 0x00).respond(0x90, 0x00);
+
+        TransceiveBatch.Result result = TransceiveBatch.run(tech, COMMANDS, null, new int[]{0x9000});
+
+        assertEquals(TransceiveBatch.STATUS_OK, result.status);
+        assertEquals(-1, result.stoppedAt);
+        assertTrue(result.completed);
+        assertEquals(3, result.responses.size());
+        assertArrayEquals(new byte[]{0x01, (byte) 0x90, 0x00}, result.responses.get(1));
+    }
+
+    @Test
+    public void stopsOnAListedStatusWord() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00).respond(0x6A, 0x82).respond(0x90, 0x00);
+
+        TransceiveBatch.Result result = TransceiveBatch.run(tech, COMMANDS, new int[]{0x6A82}, null);
+
+        assertEquals(TransceiveBatch.STATUS_STOPPED, result.status);
+        assertEquals(1, result.stoppedAt);
+        assertFalse(result.completed);
+        assertEquals(2, result.responses.size());
+        assertEquals(2, tech.commands.size());
+    }
+
+    @Test
+    public void stopsOnAnUnexpectedStatusWord() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x62, 0x83).respond(0x90, 0x00);
+
+        TransceiveBatch.Result result = TransceiveBatch.run(tech, COMMANDS, null, new int[]{0x9000, 0x6284});
+
+        assertEquals(0, result.stoppedAt);
+        assertEquals(1, tech.commands.size());
+    }
+
+    @Test
+    public void isCompletedWhenTheLastCommandStopsIt() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00).respond(0x90, 0x00).respond(0x6A, 0x82);
+
+        TransceiveBatch.Result result = TransceiveBatch.run(tech, COMMANDS, new int[]{0x6A82}, null);
+
+        assertEquals(2, result.stoppedAt);
+        assertTrue(result.completed);
+    }
+
+    @Test
+    public void neverStopsOnResponsesWithoutAStatusWord() {
+        assertFalse(TransceiveBatch.shouldStop(new byte[]{0x0A}, null, new int[]{0x9000}));
+        assertFalse(TransceiveBatch.shouldStop(new byte[0], new int[]{0x0000}, null));
+        assertFalse(TransceiveBatch.shouldStop(new byte[]{0x6A, (byte) 0x82}, null, null));
+    }
+
+    @Test
+    public void keepsTheResponsesReceivedBeforeATagLoss() {
+        // Runs out of responses on the second command
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x01, 0x90, 0x00);
+
+        TransceiveBatch.Result result = TransceiveBatch.run(tech, COMMANDS, null, null);
+
+        assertEquals(TransceiveBatch.STATUS_TAG_LOST, result.status);
+        assertEquals(1, result.stoppedAt);
+        assertFalse(result.completed);
+        assertEquals(1, result.responses.size());
+        assertNotNull(result.error);
+    }
+
+    @Test
+    public void keepsTheResponsesReceivedBeforeAFailedCommand() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x90, 0x00).respond(0x90, 0x00)
+                .fail(new IOException("Transceive failed"));
+
+        TransceiveBatch.Result result = TransceiveBatch.run(tech, COMMANDS, null, null);
+
+        assertEquals(TransceiveBatch.STATUS_FAILED, result.status);
+        assertEquals(2, result.stoppedAt);
+        assertEquals(2, result.responses.size());
+        assertTrue(result.error.contains("Transceive failed"));
+    }
+
+    @Test
+    public void reportsNoErrorWhenStoppedByAStatusWord() {
+        FakeTagTechnology tech = new FakeTagTechnology().respond(0x6A, 0x82);
+
+        assertNull(TransceiveBatch.run(tech, COMMANDS, new int[]{0x6A82}, null).error);
+    }
+}
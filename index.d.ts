@@ -8,6 +8,10 @@ declare module 'react-native-nfc-manager' {
     DiscoverBackgroundTag = 'NfcManagerDiscoverBackgroundTag',
     SessionClosed = 'NfcManagerSessionClosed',
     StateChanged = 'NfcManagerStateChanged',
+    HceNdefWritten = 'NfcManagerHceNdefWritten',
+    HceApduTrace = 'NfcManagerHceApduTrace',
+    TagSessionResult = 'NfcManagerTagSessionResult',
+    TagScriptResult = 'NfcManagerTagScriptResult',
   }
 
   export enum NfcTech {
@@ -86,6 +90,152 @@ declare module 'react-native-nfc-manager' {
     readerModeDelay?: number;
   }
 
+  export type TagSessionCommand =
+    | {type: 'readNdef'}
+    /** MifareUltralight pages, both included */
+    | {type: 'readPages'; start: number; end: number}
+    | {type: 'transceive'; bytes: number[] | string};
+
+  export interface TagSessionOpts extends RegisterTagEventOpts {
+    /** run on each tag right after it is connected, stopping at the first one failing */
+    commands?: TagSessionCommand[];
+  }
+
+  export interface TagSessionResult {
+    /** tags seen since the session started */
+    count: number;
+    tag: TagEvent;
+    /** the connected tech, missing when the tag supports none of the requested ones */
+    tech?: NfcTech;
+    results?: {
+      type: TagSessionCommand['type'];
+      data?: number[] | string;
+      ndefMessage?: NdefRecord[];
+      error?: string;
+    }[];
+    /** result of the registered tag script */
+    script?: TagScriptResult;
+    error?: string;
+  }
+
+  type TagScriptBytes = number[] | string;
+
+  /** a step can carry a label, the target of jump and jumpIf */
+  export type TagScriptStep = {label?: string} & (
+    | {op: 'transceive'; bytes: TagScriptBytes}
+    /** MifareUltralight pages, both included */
+    | {op: 'readPages'; start: number; end: number}
+    /** NfcV blocks, blockSize 4 by default */
+    | {op: 'readBlocks'; first: number; count: number; blockSize?: number}
+    /** MifareUltralight pages or NfcV blocks from start */
+    | {op: 'write'; start: number; bytes: TagScriptBytes; blockSize?: number}
+    /** set the condition when (status word & mask) === sw */
+    | {op: 'checkSw'; sw: number; mask?: number}
+    /** jump when the condition is match, true by default */
+    | {op: 'jumpIf'; to: string; match?: boolean}
+    | {op: 'jump'; to: string}
+    /** keep a slice of the last response, to its end without length */
+    | {op: 'capture'; name: string; offset?: number; length?: number}
+    | {op: 'end'; status?: string}
+  );
+
+  export interface TagScriptResult {
+    /** 'ok', 'tag_lost', 'failed' or the status of the end step */
+    status: string;
+    /** index of the step which ended the run */
+    step: number;
+    captures: {[name: string]: number[] | string};
+    error?: string;
+  }
+
+  export interface RequestTechOpts extends RegisterTagEventOpts {
+    /** queued requests of a higher priority get the next compatible tag first, 0 by default */
+    priorityAndroid?: number;
+    /** fail the request with a Timeout error when no compatible tag came in time, 0 waits forever */
+    timeoutMsAndroid?: number;
+    /** keep waiting when a tag without the requested tech comes, instead of resolving with null, false by default */
+    waitForCompatibleTagAndroid?: boolean;
+  }
+
+  export interface HceOptions {
+    /** log every APDU and response (hex dump), off by default as it is costly on the APDU path */
+    debugLogging?: boolean;
+    /**
+     * advertise extended-length APDUs in the capability container, so large NDEF files are read in
+     * fewer round trips. Only enable it when the readers (and the device NFC controller) support it.
+     */
+    extendedLengthApdu?: boolean;
+    /**
+     * let other devices write the emulated NDEF tag. The written message is then shared in place of
+     * the current content (until it changes) and reported through NfcEvents.HceNdefWritten.
+     */
+    writableNdef?: boolean;
+  }
+
+  export interface HceApduTraceOptions {
+    /** maximum number of APDUs buffered between two events, further ones are dropped (default 256) */
+    capacity?: number;
+    /** delay between two trace events (default 100ms) */
+    intervalMs?: number;
+  }
+
+  export interface HceApduTraceEntry {
+    timestamp: number;
+    command: number[] | string;
+    response: number[] | string;
+  }
+
+  /**
+   * How bytes cross the bridge on Android: arrays of numbers (default), or base64 / hex strings.
+   * In string modes, byte results and NDEF record payloads are strings, and byte parameters can be
+   * given either as arrays or as strings in the same encoding.
+   */
+  export type ByteEncoding = 'array' | 'base64' | 'hex';
+
+  export interface TransceiveBatchOptions {
+    /** stop after a response ending with one of these status words, e.g. 0x6a82 */
+    stopOnStatusWords?: number[];
+    /** stop after a response not ending with one of these status words, e.g. [0x9000] */
+    expectedStatusWords?: number[];
+  }
+
+  export interface TransceiveBatchResult {
+    responses: (number[] | string)[];
+    /** whether every command was sent */
+    completed: boolean;
+    /** index of the command which stopped the batch or failed, -1 if none did */
+    stoppedAt: number;
+    /** 'stopped' when a status word stopped the batch, 'tag_lost' or 'failed' when a command failed */
+    status: 'ok' | 'stopped' | 'tag_lost' | 'failed';
+    error?: string;
+  }
+
+  export interface TagDumpOptions {
+    /** MIFARE Classic keys, see mifareClassicReadAll */
+    keys?: MifareClassicKeyMap;
+    /** MIFARE Classic key types to try with each key, ['A', 'B'] by default */
+    keyTypes?: ('A' | 'B')[];
+  }
+
+  export interface TagDumpResult {
+    /** binary snapshot of the tag memory, to pass to restoreTag */
+    snapshot: number[] | string;
+    /** size of a page or block */
+    unitSize: number;
+    unitCount: number;
+    /** pages or blocks which could not be read */
+    unreadable: number;
+  }
+
+  export interface TagRestoreResult {
+    status: 'ok' | 'tag_lost' | 'failed';
+    /** pages or blocks which differed from the snapshot */
+    differing: number;
+    /** pages or blocks written */
+    written: number;
+    error?: string;
+  }
+
   export interface CancelTechReqOpts {
     throwOnError?: boolean = false;
     delayMsAndroid?: number = 1000;
@@ -108,10 +258,54 @@ declare module 'react-native-nfc-manager' {
 
   interface NfcVHandler {
     transceive: (bytes: number[]) => Promise<number[]>;
+    /** [Android ONLY] */
+    nfcVReadBlocks: (
+      firstBlock: number,
+      blockCount: number,
+      options?: NfcVBlockOptions,
+    ) => Promise<ArrayLike<number> | string>;
+    /** [Android ONLY] data.length should be a multiple of the block size */
+    nfcVWriteBlocks: (
+      firstBlock: number,
+      data: number[] | string,
+      options?: NfcVBlockOptions,
+    ) => Promise<NfcVWriteBlocksResult>;
+  }
+
+  interface NfcVBlockOptions {
+    /** address the commands to the tag UID (default true) */
+    addressed?: boolean;
+    /** block size in bytes, asked to the tag with GET SYSTEM INFO when omitted */
+    blockSize?: number;
+  }
+
+  interface NfcVWriteBlocksResult {
+    status: 'ok' | 'tag_lost' | 'failed';
+    /** number of blocks written */
+    written: number;
+    /** block to resume the write from */
+    nextBlock: number;
+    /** ISO 15693 error code reported by the tag */
+    errorCode?: number;
+    /** e.g. 'BLOCK_LOCKED', 'BLOCK_NOT_AVAILABLE' */
+    errorName?: string;
+    error?: string;
   }
 
   interface IsoDepHandler {
     transceive: (bytes: number[]) => Promise<number[]>;
+    /** [Android ONLY] */
+    transceiveApdu: (
+      bytes: number[] | string,
+      options?: IsoDepTransceiveApduOptions,
+    ) => Promise<number[] | string>;
+  }
+
+  interface IsoDepTransceiveApduOptions {
+    /** split commands over the transceive limit with CLA chaining (default true) */
+    chaining?: boolean;
+    /** follow 61xx with GET RESPONSE and resend on 6Cxx (default true) */
+    getResponse?: boolean;
   }
 
   interface MifareClassicHandlerAndroid {
@@ -143,14 +337,111 @@ declare module 'react-native-nfc-manager' {
       sector: number,
       keys: number[],
     ) => Promise<void>;
+    mifareClassicReadAll: (
+      keyMap: MifareClassicKeyMap,
+      options?: MifareClassicReadAllOptions,
+    ) => Promise<MifareClassicReadAllResult>;
+    mifareClassicWriteAll: (
+      operations: MifareClassicBlockOperation[],
+      keyMap: MifareClassicKeyMap,
+      options?: MifareClassicWriteAllOptions,
+    ) => Promise<MifareClassicWriteAllResult>;
+  }
+
+  /** candidate keys by sector index, keys under "default" are tried for every sector */
+  type MifareClassicKeyMap = {[sector: string]: (number[] | string)[]};
+
+  interface MifareClassicReadAllOptions {
+    /** sectors to read, all by default */
+    sectors?: number[];
+    /** key types to try with each key, ['A', 'B'] by default */
+    keyTypes?: ('A' | 'B')[];
+  }
+
+  interface MifareClassicSectorResult {
+    sector: number;
+    status: 'ok' | 'auth_failed' | 'read_failed';
+    /** position of the sector in data */
+    offset: number;
+    length: number;
+    keyType?: 'A' | 'B';
+    key?: number[] | string;
+  }
+
+  /**
+   * a block write, or a value operation followed by the transfer of its result
+   * to transferBlock (the same block by default, must be in the same sector)
+   */
+  type MifareClassicBlockOperation =
+    | {type?: 'write'; block: number; data: number[] | string}
+    | {
+        type: 'increment' | 'decrement' | 'restore';
+        block: number;
+        value?: number;
+        transferBlock?: number;
+      };
+
+  interface MifareClassicWriteAllOptions {
+    /** key types to try with each key, ['A', 'B'] by default */
+    keyTypes?: ('A' | 'B')[];
+    /** read every written block back (default false) */
+    verify?: boolean;
+    /** stop at the first operation that does not commit (default true) */
+    stopOnError?: boolean;
+  }
+
+  interface MifareClassicWriteAllResult {
+    /** status of each operation, "unknown" when the tag was lost while it was sent */
+    statuses: (
+      | 'committed'
+      | 'verify_failed'
+      | 'auth_failed'
+      | 'failed'
+      | 'unknown'
+      | 'skipped'
+    )[];
+    committed: number;
+  }
+
+  interface MifareClassicReadAllResult {
+    /** the requested sectors back to back, zero-filled where they could not be read */
+    data: number[] | string;
+    sectors: MifareClassicSectorResult[];
   }
 
   interface MifareUltralightHandlerAndroid {
     mifareUltralightReadPages: (offset: number) => Promise<ArrayLike<number>>;
+    /** reads the pages from startPage to endPage (inclusive) */
+    mifareUltralightReadRange: (
+      startPage: number,
+      endPage: number,
+    ) => Promise<ArrayLike<number> | string>;
     mifareUltralightWritePage: (
       offset: number,
       data: number[],
     ) => Promise<void>;
+    /** writes consecutive pages from startPage, data.length should be a multiple of 4 */
+    mifareUltralightWriteRange: (
+      startPage: number,
+      data: number[] | string,
+      options?: MifareUltralightWriteRangeOptions,
+    ) => Promise<MifareUltralightWriteRangeResult>;
+  }
+
+  interface MifareUltralightWriteRangeOptions {
+    /** use COMPATIBILITY_WRITE (0xA0) instead of WRITE (0xA2) (default false) */
+    compatibilityWrite?: boolean;
+    /** read the pages back once written (default false) */
+    verify?: boolean;
+  }
+
+  interface MifareUltralightWriteRangeResult {
+    status: 'ok' | 'tag_lost' | 'failed' | 'verify_failed';
+    /** number of bytes written */
+    written: number;
+    /** page to resume the write from */
+    nextPage: number;
+    error?: string;
   }
 
   interface NdefFormatableHandlerAndroid {
@@ -223,7 +514,21 @@ declare module 'react-native-nfc-manager' {
   type OnDiscoverTag = (evt: TagEvent) => void;
   type OnSessionClosed = (error?: NfcError.NfcErrorBase) => void;
   type OnStateChanged = (evt: {state: string}) => void;
-  type OnNfcEvents = OnDiscoverTag | OnSessionClosed | OnStateChanged;
+  type OnHceNdefWritten = (evt: {
+    bytes: number[] | string;
+    ndefMessage: NdefRecord[];
+  }) => void;
+  type OnHceApduTrace = (evt: {entries: HceApduTraceEntry[]; dropped: number}) => void;
+  type OnTagSessionResult = (evt: TagSessionResult) => void;
+  type OnTagScriptResult = (evt: TagScriptResult) => void;
+  type OnNfcEvents =
+    | OnDiscoverTag
+    | OnSessionClosed
+    | OnStateChanged
+    | OnHceNdefWritten
+    | OnHceApduTrace
+    | OnTagSessionResult
+    | OnTagScriptResult;
 
   interface NfcManager {
     start(): Promise<void>;
@@ -234,7 +539,7 @@ declare module 'react-native-nfc-manager' {
     setEventListener(name: NfcEvents, callback: OnNfcEvents | null): void;
     requestTechnology(
       tech: NfcTech | NfcTech[],
-      options?: RegisterTagEventOpts,
+      options?: RequestTechOpts,
     ): Promise<NfcTech | null>;
     cancelTechnologyRequest: (options?: CancelTechReqOpts) => Promise<void>;
     getTag: () => Promise<TagEvent | null>;
@@ -282,7 +587,26 @@ declare module 'react-native-nfc-manager' {
     goToNfcSetting(): Promise<boolean>;
     getLaunchTagEvent(): Promise<TagEvent | null>;
     transceive(bytes: number[]): Promise<number[]>;
+    transceiveBatch(
+      commands: number[][],
+      options?: TransceiveBatchOptions,
+    ): Promise<TransceiveBatchResult>;
     getMaxTransceiveLength(): Promise<number>;
+    setByteEncoding(encoding: ByteEncoding): Promise<boolean>;
+    /** number of tech and NDEF write requests queued or holding a tag, 1 by default */
+    setRequestQueueCapacity(capacity: number): Promise<void>;
+    /** connect every discovered tag, results are reported through NfcEvents.TagSessionResult */
+    startTagSession(tech: NfcTech | NfcTech[], options?: TagSessionOpts): Promise<void>;
+    stopTagSession(): Promise<void>;
+    /** run on each tag right after it is connected, results are reported through NfcEvents.TagScriptResult */
+    registerTagScript(steps: TagScriptStep[]): Promise<void>;
+    clearTagScript(): Promise<void>;
+    /** MifareUltralight, MifareClassic and NfcV */
+    dumpTag(options?: TagDumpOptions): Promise<TagDumpResult>;
+    restoreTag(
+      snapshot: number[] | string,
+      options?: TagDumpOptions,
+    ): Promise<TagRestoreResult>;
     setTimeout(timeout: number): Promise<void>;
     connect: (techs: NfcTech[]) => Promise<void>;
     close: () => Promise<void>;
@@ -296,6 +620,9 @@ declare module 'react-native-nfc-manager' {
     isHceSupported(): Promise<boolean>;
     startHCE(): Promise<string>;
     stopHCE(): Promise<string>;
+    setHceOptions(options: HceOptions): Promise<boolean>;
+    startHceApduTrace(options?: HceApduTraceOptions): Promise<boolean>;
+    stopHceApduTrace(): Promise<boolean>;
     setSimpleUrl(url: string): Promise<void>;
     clearContent(): Promise<void>;
     /**
@@ -139,6 +139,8 @@ export function buildNfcExceptionIOS(error) {
 export function buildNfcExceptionAndroid(error) {
   if (error === 'cancelled') {
     return new UserCancel();
+  } else if (error === 'timeout') {
+    return new Timeout();
   }
 
   return new NfcErrorBase(error);
@@ -20,6 +20,10 @@ const NfcEvents = {
   DiscoverBackgroundTag: 'NfcManagerDiscoverBackgroundTag',
   SessionClosed: 'NfcManagerSessionClosed',
   StateChanged: 'NfcManagerStateChanged',
+  HceNdefWritten: 'NfcManagerHceNdefWritten',
+  HceApduTrace: 'NfcManagerHceApduTrace',
+  TagSessionResult: 'NfcManagerTagSessionResult',
+  TagScriptResult: 'NfcManagerTagScriptResult',
 };
 
 const NfcTech = {
@@ -187,6 +191,34 @@ class NfcManagerBase {
     }
   };
 
+  _onHceNdefWrittenAndroid = (written) => {
+    const callback = this._clientListeners[NfcEvents.HceNdefWritten];
+    if (callback) {
+      callback(written);
+    }
+  };
+
+  _onHceApduTraceAndroid = (trace) => {
+    const callback = this._clientListeners[NfcEvents.HceApduTrace];
+    if (callback) {
+      callback(trace);
+    }
+  };
+
+  _onTagSessionResultAndroid = (result) => {
+    const callback = this._clientListeners[NfcEvents.TagSessionResult];
+    if (callback) {
+      callback(result);
+    }
+  };
+
+  _onTagScriptResultAndroid = (result) => {
+    const callback = this._clientListeners[NfcEvents.TagScriptResult];
+    if (callback) {
+      callback(result);
+    }
+  };
+
   _subscribeNativeEvents = () => {
     this._subscriptions = {};
     this._clientListeners = {};
@@ -216,9 +248,43 @@ class NfcManagerBase {
         NfcEvents.StateChanged,
         this._onStateChangedAndroid,
       );
+
+      this._subscriptions[
+        NfcEvents.HceNdefWritten
+      ] = NfcManagerEmitter.addListener(
+        NfcEvents.HceNdefWritten,
+        this._onHceNdefWrittenAndroid,
+      );
+
+      this._subscriptions[
+        NfcEvents.HceApduTrace
+      ] = NfcManagerEmitter.addListener(
+        NfcEvents.HceApduTrace,
+        this._onHceApduTraceAndroid,
+      );
+
+      this._subscriptions[
+        NfcEvents.TagSessionResult
+      ] = NfcManagerEmitter.addListener(
+        NfcEvents.TagSessionResult,
+        this._onTagSessionResultAndroid,
+      );
+
+      this._subscriptions[
+        NfcEvents.TagScriptResult
+      ] = NfcManagerEmitter.addListener(
+        NfcEvents.TagScriptResult,
+        this._onTagScriptResultAndroid,
+      );
     }
   };
 
+  setHceOptions = NotImpl;
+
+  startHceApduTrace = NotImpl;
+
+  stopHceApduTrace = NotImpl;
+
   setSimpleUrl = NotImpl;
 
   clearContent = NotImpl;
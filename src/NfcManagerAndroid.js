@@ -37,12 +37,54 @@ class NfcManagerAndroid extends NfcManagerBase {
         this.cleanUpTagRegistration = true;
       }
 
-      return await callNative('requestTechnology', [tech]);
+      const {
+        priorityAndroid = 0,
+        timeoutMsAndroid = 0,
+        waitForCompatibleTagAndroid = false,
+      } = options;
+      return await callNative('requestTechnology', [
+        tech,
+        {
+          priority: priorityAndroid,
+          timeout: timeoutMsAndroid,
+          waitForCompatibleTag: waitForCompatibleTagAndroid,
+        },
+      ]);
     } catch (ex) {
       throw buildNfcExceptionAndroid(ex);
     }
   };
 
+  startTagSession = async (tech, options = {}) => {
+    try {
+      if (typeof tech === 'string') {
+        tech = [tech];
+      }
+
+      const sessionAvailable = await this._hasTagEventRegistrationAndroid();
+
+      // make sure we do register for tag event
+      if (!sessionAvailable) {
+        await this.registerTagEvent(options);
+        this.cleanUpTagRegistration = true;
+      }
+
+      const {commands = []} = options;
+      return await callNative('startTagSession', [tech, {commands}]);
+    } catch (ex) {
+      throw buildNfcExceptionAndroid(ex);
+    }
+  };
+
+  stopTagSession = async () => {
+    await handleNativeException(callNative('stopTagSession'));
+
+    if (this.cleanUpTagRegistration) {
+      await this.unregisterTagEvent();
+      this.cleanUpTagRegistration = false;
+    }
+  };
+
   cancelTechnologyRequest = async (options = {}) => {
     const {throwOnError = false, delayMsAndroid = 1000} = options;
 
@@ -91,9 +133,29 @@ class NfcManagerAndroid extends NfcManagerBase {
   transceive = (bytes) =>
     handleNativeException(callNative('transceive', [bytes]));
 
+  transceiveBatch = (commands, options = {}) =>
+    handleNativeException(callNative('transceiveBatch', [commands, options]));
+
+  setByteEncoding = (encoding) =>
+    handleNativeException(callNative('setByteEncoding', [encoding]));
+
   getMaxTransceiveLength = () =>
     handleNativeException(callNative('getMaxTransceiveLength'));
 
+  setRequestQueueCapacity = (capacity) =>
+    handleNativeException(callNative('setRequestQueueCapacity', [capacity]));
+
+  registerTagScript = (steps) =>
+    handleNativeException(callNative('registerTagScript', [steps]));
+
+  clearTagScript = () => handleNativeException(callNative('clearTagScript'));
+
+  dumpTag = (options = {}) =>
+    handleNativeException(callNative('dumpTag', [options]));
+
+  restoreTag = (snapshot, options = {}) =>
+    handleNativeException(callNative('restoreTag', [snapshot, options]));
+
   // -------------------------------------
   // HCE (Host Card Emulation) API
   // -------------------------------------
@@ -127,6 +189,15 @@ class NfcManagerAndroid extends NfcManagerBase {
     }
   };
 
+  setHceOptions = (options = {}) =>
+    handleNativeException(callNative('setHceOptions', [options]));
+
+  startHceApduTrace = (options = {}) =>
+    handleNativeException(callNative('startHceApduTrace', [options]));
+
+  stopHceApduTrace = () =>
+    handleNativeException(callNative('stopHceApduTrace'));
+
   setSimpleUrl = (url) =>
     handleNativeException(callNative('setSimpleUrl', [url]));
 
@@ -4,7 +4,11 @@ import {handleNativeException} from '../NfcError';
 
 class IsoDepHandler {
   async transceive(bytes) {
-    if (!Array.isArray(bytes)) {
+    // Android also takes bytes encoded as a string, see setByteEncoding
+    if (
+      !Array.isArray(bytes) &&
+      !(Platform.OS === 'android' && typeof bytes === 'string')
+    ) {
       throw new Error(
         'IsoDepHandler.transceive only takes input as a byte array',
       );
@@ -30,6 +34,22 @@ class IsoDepHandler {
 
     return handleNativeException(callNative('transceive', [bytes]));
   }
+
+  // [Android ONLY] resolves with the complete response, following 61xx / 6Cxx and chaining long commands
+  async transceiveApdu(bytes, options = {}) {
+    if (Platform.OS !== 'android') {
+      throw new Error('transceiveApdu is only available on Android');
+    }
+    if (!Array.isArray(bytes) && typeof bytes !== 'string') {
+      throw new Error(
+        'IsoDepHandler.transceiveApdu only takes input as a byte array',
+      );
+    }
+
+    return handleNativeException(
+      callNative('isoDepTransceiveApdu', [bytes, options]),
+    );
+  }
 }
 
 export {IsoDepHandler};
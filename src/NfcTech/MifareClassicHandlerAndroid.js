@@ -7,7 +7,10 @@ class MifareClassicHandlerAndroid {
   }
 
   async mifareClassicAuthenticateA(sector, key) {
-    if (!key || !Array.isArray(key) || key.length !== 6) {
+    if (
+      !key ||
+      (typeof key !== 'string' && (!Array.isArray(key) || key.length !== 6))
+    ) {
       throw new Error('key should be an Array[6] of integers (0 - 255)');
     }
 
@@ -17,7 +20,10 @@ class MifareClassicHandlerAndroid {
   }
 
   async mifareClassicAuthenticateB(sector, key) {
-    if (!key || !Array.isArray(key) || key.length !== 6) {
+    if (
+      !key ||
+      (typeof key !== 'string' && (!Array.isArray(key) || key.length !== 6))
+    ) {
       throw new Error('key should be an Array[6] of integers (0 - 255)');
     }
 
@@ -55,8 +61,9 @@ class MifareClassicHandlerAndroid {
   async mifareClassicWriteBlock(block, data) {
     if (
       !data ||
-      !Array.isArray(data) ||
-      data.length !== this.nfcManager.MIFARE_BLOCK_SIZE
+      (typeof data !== 'string' &&
+        (!Array.isArray(data) ||
+          data.length !== this.nfcManager.MIFARE_BLOCK_SIZE))
     ) {
       throw new Error(
         `data should be a non-empty Array[${this.nfcManager.MIFARE_BLOCK_SIZE}] of integers (0 - 255)`,
@@ -109,6 +116,33 @@ class MifareClassicHandlerAndroid {
     );
   }
 
+  async mifareClassicReadAll(keyMap, options = {}) {
+    if (!keyMap || typeof keyMap !== 'object') {
+      throw new Error(
+        'keyMap should map sector indexes (or "default") to arrays of keys',
+      );
+    }
+
+    return handleNativeException(
+      callNative('mifareClassicReadAll', [keyMap, options]),
+    );
+  }
+
+  async mifareClassicWriteAll(operations, keyMap, options = {}) {
+    if (!Array.isArray(operations)) {
+      throw new Error('operations should be an array');
+    }
+    if (!keyMap || typeof keyMap !== 'object') {
+      throw new Error(
+        'keyMap should map sector indexes (or "default") to arrays of keys',
+      );
+    }
+
+    return handleNativeException(
+      callNative('mifareClassicWriteAll', [operations, keyMap, options]),
+    );
+  }
+
 }
 
 export {MifareClassicHandlerAndroid};
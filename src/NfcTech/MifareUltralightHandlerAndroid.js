@@ -12,11 +12,36 @@ class MifareUltralightHandlerAndroid {
     );
   }
 
+  async mifareUltralightReadRange(startPage, endPage) {
+    return handleNativeException(
+      callNative('mifareUltralightReadRange', [startPage, endPage]),
+    );
+  }
+
+  async mifareUltralightWriteRange(startPage, data, options = {}) {
+    if (
+      !data ||
+      (typeof data !== 'string' &&
+        (!Array.isArray(data) ||
+          data.length === 0 ||
+          data.length % this.nfcManager.MIFARE_ULTRALIGHT_PAGE_SIZE !== 0))
+    ) {
+      throw new Error(
+        `data should be a non-empty Array of integers (0 - 255), its length a multiple of ${this.nfcManager.MIFARE_ULTRALIGHT_PAGE_SIZE}`,
+      );
+    }
+
+    return handleNativeException(
+      callNative('mifareUltralightWriteRange', [startPage, data, options]),
+    );
+  }
+
   async mifareUltralightWritePage(pageOffset, data) {
     if (
       !data ||
-      !Array.isArray(data) ||
-      data.length !== this.nfcManager.MIFARE_ULTRALIGHT_PAGE_SIZE
+      (typeof data !== 'string' &&
+        (!Array.isArray(data) ||
+          data.length !== this.nfcManager.MIFARE_ULTRALIGHT_PAGE_SIZE))
     ) {
       throw new Error(
         `data should be a non-empty Array[${this.nfcManager.MIFARE_ULTRALIGHT_PAGE_SIZE}] of integers (0 - 255)`,
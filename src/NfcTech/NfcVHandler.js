@@ -4,7 +4,11 @@ import {handleNativeException} from '../NfcError';
 
 class NfcVHandler {
   async transceive(bytes) {
-    if (!Array.isArray(bytes)) {
+    // Android also takes bytes encoded as a string, see setByteEncoding
+    if (
+      !Array.isArray(bytes) &&
+      !(Platform.OS === 'android' && typeof bytes === 'string')
+    ) {
       throw new Error(
         'IsoDepHandler.transceive only takes input as a byte array',
       );
@@ -34,6 +38,31 @@ class NfcVHandler {
 
     return handleNativeException(callNative('transceive', [bytes]));
   }
+
+  // [Android ONLY] READ MULTIPLE BLOCKS, addressed to the tag UID unless options.addressed is false
+  async nfcVReadBlocks(firstBlock, blockCount, options = {}) {
+    if (Platform.OS !== 'android') {
+      throw new Error('nfcVReadBlocks is only available on Android');
+    }
+
+    return handleNativeException(
+      callNative('nfcVReadBlocks', [firstBlock, blockCount, options]),
+    );
+  }
+
+  // [Android ONLY]
+  async nfcVWriteBlocks(firstBlock, data, options = {}) {
+    if (Platform.OS !== 'android') {
+      throw new Error('nfcVWriteBlocks is only available on Android');
+    }
+    if (!data || (typeof data !== 'string' && !Array.isArray(data))) {
+      throw new Error('data should be a non-empty Array of integers (0 - 255)');
+    }
+
+    return handleNativeException(
+      callNative('nfcVWriteBlocks', [firstBlock, data, options]),
+    );
+  }
 }
 
 export {NfcVHandler};